@@ -17,6 +17,7 @@ import com.denizenscript.denizen.scripts.triggers.TriggerRegistry;
 import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizen.tags.core.ServerTagBase;
 import com.denizenscript.denizen.utilities.*;
+import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizen.utilities.blocks.OldMaterialsHelper;
 import com.denizenscript.denizen.utilities.command.DenizenCommandHandler;
 import com.denizenscript.denizen.utilities.command.ExCommandHandler;
@@ -468,6 +469,8 @@ public class Denizen extends JavaPlugin {
                         public void run() {
                             Debug.outputThisTick = 0;
                             DenizenCore.tick(50); // Sadly, minecraft has no delta timing, so a tick is always 50ms.
+                            flagManager.tickExpirations();
+                            FakeBlock.tick();
                         }
                     }, 1, 1);
                     InventoryTag.setupInventoryTracker();
@@ -571,6 +574,7 @@ public class Denizen extends JavaPlugin {
         }
 
         saveSaves();
+        flagManager.finishSaving();
     }
 
     @Override
@@ -599,6 +603,8 @@ public class Denizen extends JavaPlugin {
             savesConfigFile = new File(getDataFolder(), "saves.yml");
         }
         savesConfig = YamlConfiguration.loadConfiguration(savesConfigFile);
+        // Load flags into the flag store
+        flagManager.loadFlags();
 
         if (scoreboardsConfigFile == null) {
             scoreboardsConfigFile = new File(getDataFolder(), "scoreboards.yml");
@@ -641,6 +647,24 @@ public class Denizen extends JavaPlugin {
         return entityConfig;
     }
 
+    /**
+     * Writes saves.yml alone, without first saving the notables, flags, etc. that are kept in memory.
+     * Returns false if the file could not be written.
+     */
+    public boolean saveSavesFile() {
+        if (savesConfig == null || savesConfigFile == null) {
+            return false;
+        }
+        try {
+            savesConfig.save(savesConfigFile);
+            return true;
+        }
+        catch (IOException ex) {
+            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save to " + savesConfigFile, ex);
+            return false;
+        }
+    }
+
     public void saveSaves() {
         if (savesConfig == null || savesConfigFile == null) {
             return;
@@ -653,12 +677,9 @@ public class Denizen extends JavaPlugin {
         EntityScriptHelper.saveEntities();
         // Save maps to maps.yml
         DenizenMapManager.saveMaps();
-        try {
-            savesConfig.save(savesConfigFile);
-        }
-        catch (IOException ex) {
-            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save to " + savesConfigFile, ex);
-        }
+        // Save changed flags, in the background
+        flagManager.saveFlags(true);
+        saveSavesFile();
         try {
             scoreboardsConfig.save(scoreboardsConfigFile);
         }
@@ -3,6 +3,7 @@ package com.denizenscript.denizen.events.core;
 import com.denizenscript.denizen.objects.CuboidTag;
 import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.objects.notable.NotableManager;
 import com.denizenscript.denizen.scripts.containers.core.BukkitWorldScriptHelper;
 import com.denizenscript.denizen.utilities.DenizenAPI;
 import com.denizenscript.denizen.utilities.debugging.Debug;
@@ -91,7 +92,10 @@ public class CuboidEnterExitSmartEvent implements OldSmartEvent, Listener {
     ///////////
 
     private boolean broad_detection = false;
-    private Map<String, List<CuboidTag>> player_cuboids = new HashMap<>();
+    private Map<UUID, List<CuboidTag>> player_cuboids = new HashMap<>();
+
+    // Reused for the cuboid lookup on each move, to avoid allocating when nothing changed
+    private final ArrayList<CuboidTag> scratchCuboids = new ArrayList<>();
 
     // <--[event]
     // @Events
@@ -134,6 +138,7 @@ public class CuboidEnterExitSmartEvent implements OldSmartEvent, Listener {
         PlayerMoveEvent pme = new PlayerMoveEvent(event.getPlayer(), event.getPlayer().getLocation(),
                 new Location(event.getPlayer().getWorld(), pos, pos, pos));
         internalRun(pme, "leave");
+        player_cuboids.remove(event.getPlayer().getUniqueId());
     }
 
     @EventHandler
@@ -183,23 +188,41 @@ public class CuboidEnterExitSmartEvent implements OldSmartEvent, Listener {
             return;
         }
 
+        UUID id = event.getPlayer().getUniqueId();
+        List<CuboidTag> match = player_cuboids.get(id);
+        Location to = event.getTo();
+
+        // Fast path: the player isn't in any cuboid, and there are no cuboids in the chunk they're moving to
+        if ((match == null || match.isEmpty()) && (to.getWorld() == null
+                || !NotableManager.cuboidIndex.hasAnyInChunk(to.getWorld().getName(), to.getBlockX() >> 4, to.getBlockZ() >> 4))) {
+            return;
+        }
+
         // Look for cuboids that contain the block's location
-        List<CuboidTag> cuboids = CuboidTag.getNotableCuboidsContaining(event.getTo());
-        List<CuboidTag> match = new ArrayList<>();
-        String namelow = CoreUtilities.toLowerCase(event.getPlayer().getName()); // TODO: UUID?
-        if (player_cuboids.containsKey(namelow)) // TODO: Clear on quit?
-        {
-            match = player_cuboids.get(namelow);
+        scratchCuboids.clear();
+        NotableManager.cuboidIndex.findContaining(to, CuboidTag::isInsideCuboid, scratchCuboids);
+        if (match == null) {
+            match = Collections.emptyList();
+        }
+        if (sameCuboids(match, scratchCuboids)) {
+            return;
         }
 
-        List<CuboidTag> exits = new ArrayList<>(match);
-        exits.removeAll(cuboids);
+        // Copy out of the scratch list, as firing events can cause a nested move
+        List<CuboidTag> cuboids = new ArrayList<>(scratchCuboids);
 
-        List<CuboidTag> enters = new ArrayList<>(cuboids);
-        enters.removeAll(match);
+        List<CuboidTag> exits = new ArrayList<>();
+        for (CuboidTag cuboid : match) {
+            if (!containsCuboid(cuboids, cuboid)) {
+                exits.add(cuboid);
+            }
+        }
 
-        if (exits.isEmpty() && enters.isEmpty()) {
-            return;
+        List<CuboidTag> enters = new ArrayList<>();
+        for (CuboidTag cuboid : cuboids) {
+            if (!containsCuboid(match, cuboid)) {
+                enters.add(cuboid);
+            }
         }
 
         if (!exits.isEmpty()) {
@@ -236,7 +259,28 @@ public class CuboidEnterExitSmartEvent implements OldSmartEvent, Listener {
             }
         }
 
-        player_cuboids.put(namelow, cuboids);
+        player_cuboids.put(id, cuboids);
+    }
+
+    private static boolean containsCuboid(List<CuboidTag> list, CuboidTag cuboid) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == cuboid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameCuboids(List<CuboidTag> a, List<CuboidTag> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < b.size(); i++) {
+            if (!containsCuboid(a, b.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -6,6 +6,7 @@ import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.NPCTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.DenizenAPI;
+import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.implementation.BukkitScriptEntryData;
 import com.denizenscript.denizencore.DenizenCore;
@@ -20,9 +21,9 @@ import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.debugging.SlowWarning;
 import com.denizenscript.denizencore.utilities.debugging.Warning;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.MemorySection;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 public class FlagManager {
@@ -38,54 +39,256 @@ public class FlagManager {
     // Constructor
     private Denizen denizen;
 
+    public final FlagStore store = new FlagStore();
+
+    public FlagPersistence persistence;
+
     public FlagManager(Denizen denizen) {
         this.denizen = denizen;
     }
 
+    // Whether flags loaded from the legacy saves.yml layout have not yet been safely written to flag segment files
+    private boolean migrating = false;
+
+    // Whether a failed conversion has already been retried by a save since the flags were loaded
+    private boolean migrationRetried = false;
+
+    /**
+     * Reloads all flags from disk into the flag store.
+     * Flags found in the legacy saves.yml layout are converted to flag segment files. The legacy flags are only removed
+     * from saves.yml (after writing a backup of it) once every segment file has been written and verified, so if the
+     * conversion fails or is interrupted, it is retried from the legacy data (plus any segment files already written).
+     * Once the conversion has completed, flags are loaded from the segment files alone, and any legacy flags left in
+     * saves.yml are discarded.
+     */
+    public void loadFlags() {
+        if (persistence == null) {
+            persistence = new FlagPersistence(new File(denizen.getDataFolder(), "flags"));
+        }
+        store.clear();
+        migrationRetried = false;
+        if (persistence.isMigrated()) {
+            migrating = false;
+            if (FlagStore.hasLegacy(denizen.getSaves())) {
+                FlagStore.stripLegacy(denizen.getSaves());
+                denizen.saveSavesFile();
+                Debug.log("Removed stale flags from saves.yml, as flags have already been converted to the 'flags' folder.");
+            }
+            persistence.load(store);
+            return;
+        }
+        migrating = FlagStore.hasLegacy(denizen.getSaves());
+        if (migrating) {
+            store.loadLegacy(denizen.getSaves());
+        }
+        if (persistence.hasData()) {
+            persistence.load(store);
+        }
+        if (migrating) {
+            finishMigration();
+        }
+    }
+
+    private void finishMigration() {
+        try {
+            persistence.saveAllVerified(store);
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to convert flags from saves.yml to the 'flags' folder. Flags will stay in saves.yml until the conversion succeeds.");
+            Debug.echoError(ex);
+            return;
+        }
+        File backup = new File(denizen.getDataFolder(), "saves-flags-backup-" + System.currentTimeMillis() + ".yml");
+        try {
+            denizen.getSaves().save(backup);
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to back up saves.yml before removing the converted flags from it. Flags will stay in saves.yml until the backup succeeds.");
+            Debug.echoError(ex);
+            return;
+        }
+        try {
+            persistence.markMigrated();
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to record that flags were converted from saves.yml. Flags will stay in saves.yml until this succeeds.");
+            Debug.echoError(ex);
+            return;
+        }
+        FlagStore.stripLegacy(denizen.getSaves());
+        denizen.saveSavesFile();
+        migrating = false;
+        Debug.log("Converted flags from saves.yml to the 'flags' folder. The old saves.yml was backed up to " + backup.getName() + ".");
+    }
+
+    /**
+     * Saves all flags that changed since the last save.
+     * If 'async' is true, the files are written on a background thread.
+     */
+    public void saveFlags(boolean async) {
+        if (persistence == null) {
+            return;
+        }
+        if (migrating && !migrationRetried) {
+            // Retry a failed conversion once, rather than blocking every save on it
+            migrationRetried = true;
+            finishMigration();
+            if (!migrating) {
+                return;
+            }
+            Debug.echoError("Flags will be saved to the 'flags' folder without removing them from saves.yml. The conversion will be retried when the server next starts.");
+        }
+        try {
+            persistence.save(store, async);
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to save flags. They will be saved again with the next save.");
+            Debug.echoError(ex);
+        }
+    }
+
+    /**
+     * Blocks until any background flag saves have completed.
+     */
+    public void finishSaving() {
+        if (persistence != null) {
+            persistence.waitForWrites();
+        }
+    }
+
+    /**
+     * Removes all flags whose expiration has passed, firing the relevant 'flag expires' events.
+     * Called once per tick.
+     */
+    public void tickExpirations() {
+        FlagStore.ExpirationEntry entry;
+        while ((entry = store.pollExpired(DenizenCore.currentTimeMillis)) != null) {
+            new Flag(entry.holder, entry.name, entry.holder.ownerIdentity).checkExpired();
+        }
+    }
+
     // Static methods
     public static boolean playerHasFlag(PlayerTag player, String flagName) {
         if (player == null || flagName == null) {
             return false;
         }
-        return DenizenAPI.getCurrentInstance().flagManager().getPlayerFlag(player, flagName).size() > 0;
+        FlagManager manager = DenizenAPI.getCurrentInstance().flagManager();
+        return manager.hasFlag(manager.getPlayerFlags(player, false), flagName);
     }
 
     public static boolean entityHasFlag(EntityTag entity, String flagName) {
         if (entity == null || flagName == null) {
             return false;
         }
-        return DenizenAPI.getCurrentInstance().flagManager().getEntityFlag(entity, flagName).size() > 0;
+        FlagManager manager = DenizenAPI.getCurrentInstance().flagManager();
+        return manager.hasFlag(manager.getEntityFlags(entity, false), flagName);
     }
 
     public static boolean npcHasFlag(NPCTag npc, String flagName) {
         if (npc == null || flagName == null) {
             return false;
         }
-        return DenizenAPI.getCurrentInstance().flagManager().getNPCFlag(npc.getId(), flagName).size() > 0;
+        FlagManager manager = DenizenAPI.getCurrentInstance().flagManager();
+        return manager.hasFlag(manager.store.getNPC(npc.getId(), false), flagName);
     }
 
     public static boolean serverHasFlag(String flagName) {
         if (flagName == null) {
             return false;
         }
-        return DenizenAPI.getCurrentInstance().flagManager().getGlobalFlag(flagName).size() > 0;
+        FlagManager manager = DenizenAPI.getCurrentInstance().flagManager();
+        return manager.hasFlag(manager.store.global, flagName);
     }
 
     public static void clearNPCFlags(int npcid) {
+        DenizenAPI.getCurrentInstance().flagManager().store.removeNPC(npcid);
         DenizenAPI.getCurrentInstance().getSaves().set("NPCs." + npcid, null);
     }
 
     public static void clearEntityFlags(EntityTag entity) {
+        if (entity.getUUID() != null) {
+            DenizenAPI.getCurrentInstance().flagManager().store.removeEntity(entity.getUUID());
+        }
         DenizenAPI.getCurrentInstance().getSaves().set("Entities." + entity.getSaveName(), null);
     }
 
+    public static void clearPlayerFlags(PlayerTag player) {
+        if (player.getOfflinePlayer() != null) {
+            DenizenAPI.getCurrentInstance().flagManager().store.removePlayer(player.getOfflinePlayer().getUniqueId());
+        }
+    }
+
+    /**
+     * Checks whether the given holder has a non-empty, unexpired flag of the given name.
+     * This is a pair of hash lookups, and only builds a Flag object when an expired flag needs cleaning up.
+     */
+    private boolean hasFlag(FlagStore.FlagHolder holder, String flagName) {
+        if (holder == null) {
+            return false;
+        }
+        FlagStore.FlagValue value = holder.get(store.internName(flagName));
+        if (value == null) {
+            return false;
+        }
+        if (value.isExpired()) {
+            new Flag(holder, flagName, holder.ownerIdentity).checkExpired();
+            return false;
+        }
+        return value.size() > 0;
+    }
+
+    /**
+     * Returns the UUIDs of all players that have the given flag (sorted, for a stable order), using the flag store's reverse index.
+     */
+    public List<UUID> getPlayersFlagged(String flagName) {
+        return getFlagged(store.playersByFlag, flagName);
+    }
+
+    /**
+     * Returns the IDs of all NPCs that have the given flag (sorted, for a stable order), using the flag store's reverse index.
+     */
+    public List<Integer> getNPCsFlagged(String flagName) {
+        return getFlagged(store.npcsByFlag, flagName);
+    }
+
+    private <T extends Comparable<T>> List<T> getFlagged(HashMap<String, HashSet<FlagStore.FlagHolder>> index, String flagName) {
+        String key = store.internName(flagName);
+        HashSet<FlagStore.FlagHolder> owners = index.get(key);
+        if (owners == null) {
+            return Collections.emptyList();
+        }
+        List<T> result = new ArrayList<>(owners.size());
+        for (FlagStore.FlagHolder holder : owners) {
+            FlagStore.FlagValue value = holder.get(key);
+            if (value != null && !value.isExpired() && value.size() > 0) {
+                result.add((T) holder.ownerKey);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    public FlagStore.FlagHolder getPlayerFlags(PlayerTag player, boolean create) {
+        if (player == null || player.getOfflinePlayer() == null) {
+            return create ? new FlagStore.FlagHolder("p@null") : null;
+        }
+        return store.getPlayer(player.getOfflinePlayer().getUniqueId(), create);
+    }
+
+    public FlagStore.FlagHolder getEntityFlags(EntityTag entity, boolean create) {
+        if (entity == null || entity.getUUID() == null) {
+            return create ? new FlagStore.FlagHolder("e@null") : null;
+        }
+        return store.getEntity(entity.getUUID(), create);
+    }
+
     /**
      * Returns a NPC Flag object. If this flag currently exists
      * it will be populated with the current values. If the flag does NOT exist,
      * it will be created with blank values.
      */
     public Flag getNPCFlag(int npcid, String flagName) {
-        return new Flag("NPCs." + npcid + ".Flags." + flagName.toUpperCase(), flagName, "n@" + npcid);
+        return new Flag(store.getNPC(npcid, true), flagName, "n@" + npcid);
     }
 
     /**
@@ -94,7 +297,7 @@ public class FlagManager {
      * it will be created with blank values.
      */
     public Flag getGlobalFlag(String flagName) {
-        return new Flag("Global.Flags." + flagName.toUpperCase(), flagName, "SERVER");
+        return new Flag(store.global, flagName, "SERVER");
     }
 
     /**
@@ -104,24 +307,23 @@ public class FlagManager {
      */
     public Flag getPlayerFlag(PlayerTag player, String flagName) {
         if (player == null) {
-            return new Flag("players.00.UNKNOWN.Flags." + flagName.toUpperCase(), flagName, "p@null");
+            return new Flag(getPlayerFlags(null, true), flagName, "p@null");
         }
-        return new Flag("Players." + player.getSaveName() + ".Flags." + flagName.toUpperCase(), flagName, player.identify());
+        return new Flag(getPlayerFlags(player, true), flagName, player.identify());
     }
 
     public Flag getEntityFlag(EntityTag entity, String flagName) {
         if (entity == null) {
-            return new Flag("Entities.00.UNKNOWN.Flags." + flagName.toUpperCase(), flagName, "e@null");
+            return new Flag(getEntityFlags(null, true), flagName, "e@null");
         }
-        return new Flag("Entities." + entity.getSaveName() + ".Flags." + flagName.toUpperCase(), flagName, entity.identify());
+        return new Flag(getEntityFlags(entity, true), flagName, entity.identify());
     }
 
     /**
      * Returns a list of flag names currently attached to an NPC.
      */
     public Set<String> listNPCFlags(int npcid) {
-        ConfigurationSection section = denizen.getSaves().getConfigurationSection("NPCs." + npcid + ".Flags");
-        return section != null ? _filterExpirations(section.getValues(true).keySet()) : null;
+        return listFlags(store.getNPC(npcid, false));
     }
 
     public void shrinkGlobalFlags(Collection<String> set) {
@@ -152,43 +354,40 @@ public class FlagManager {
      * Returns a list of flag names currently attached to the server.
      */
     public Set<String> listGlobalFlags() {
-        ConfigurationSection section = denizen.getSaves().getConfigurationSection("Global.Flags");
-        return section != null ? _filterExpirations(section.getValues(true).keySet()) : null;
+        return listFlags(store.global);
     }
 
     /**
      * Returns a list of flag names currently attached to a player.
      */
     public Set<String> listPlayerFlags(PlayerTag player) {
-        ConfigurationSection section = denizen.getSaves().getConfigurationSection("Players." + player.getSaveName() + ".Flags");
-        return section != null ? _filterExpirations(section.getValues(true).keySet()) : null;
+        return listFlags(getPlayerFlags(player, false));
     }
 
     public Set<String> listEntityFlags(EntityTag entity) {
-        ConfigurationSection section = denizen.getSaves().getConfigurationSection("Entities." + entity.getSaveName() + ".Flags");
-        return section != null ? _filterExpirations(section.getValues(true).keySet()) : null;
+        return listFlags(getEntityFlags(entity, false));
     }
 
-    public Set<String> _filterExpirations(Set<String> flagKeys) {
-        for (Iterator<String> iter = flagKeys.iterator(); iter.hasNext(); ) {
-            if (iter.next().endsWith("-expiration")) {
-                iter.remove();
-            }
+    private Set<String> listFlags(FlagStore.FlagHolder holder) {
+        if (holder == null || holder.flags.isEmpty()) {
+            return null;
         }
-        return flagKeys;
+        return new HashSet<>(holder.flags.keySet());
     }
 
     public class Flag {
 
         private Value value;
-        private String flagPath;
+        private FlagStore.FlagHolder holder;
+        private String flagKey;
         private String flagName;
         private String flagOwner;
         private long expiration = -1L;
         private boolean valid = true;
 
-        Flag(String flagPath, String flagName, String flagOwner) {
-            this.flagPath = flagPath;
+        Flag(FlagStore.FlagHolder holder, String flagName, String flagOwner) {
+            this.holder = holder;
+            this.flagKey = store.internName(flagName);
             this.flagName = flagName;
             this.flagOwner = flagOwner;
             rebuild();
@@ -234,8 +433,7 @@ public class FlagManager {
                     ? value.asList()
                     : value.size() == 1 ? new ElementTag(value.get(0).asString()) : new ElementTag("null")) : null;
 
-            denizen.getSaves().set(flagPath, null);
-            denizen.getSaves().set(flagPath + "-expiration", null);
+            holder.remove(flagKey);
             valid = false;
             rebuild();
 
@@ -486,13 +684,23 @@ public class FlagManager {
                         : oldValueList.size() == 1 ? new ElementTag(oldValueList.get(0)) : new ElementTag("null");
             }
 
+            FlagStore.FlagValue stored = new FlagStore.FlagValue();
             if (value.values != null) {
-                denizen.getSaves().set(flagPath, value.values);
+                if (!value.values.isEmpty()) {
+                    stored.list = new ListTag(value.values);
+                }
+            }
+            else if (value.size != 0 && value.firstValue != null && value.firstValue.length() > 0) {
+                stored.element = new ElementTag(value.firstValue);
+            }
+            if (stored.size() == 0) {
+                holder.remove(flagKey);
             }
             else {
-                denizen.getSaves().set(flagPath, value.size == 0 ? null : value.firstValue);
+                stored.expiration = expiration > 0 ? expiration : -1L;
+                holder.put(flagKey, stored);
+                store.scheduleExpiration(holder, flagKey, flagName, stored);
             }
-            denizen.getSaves().set(flagPath + "-expiration", (expiration > 0 ? expiration : null));
 
             if (FlagSmartEvent.isActive()) {
                 List<String> world_script_events = new ArrayList<>();
@@ -547,24 +755,24 @@ public class FlagManager {
         }
 
         /**
-         * Removes flag if expiration is found to be up. This is called when an action
-         * is done on the flag, such as get() or put(). If expired, the flag will be
-         * erased before moving on.
+         * Removes flag if expiration is found to be up. Expired flags are normally removed
+         * by the expiration queue (see FlagManager.tickExpirations), this covers the
+         * remainder of the tick in which a flag expires.
          */
         public boolean checkExpired() {
-            rebuild();
-            if (denizen.getSaves().contains(flagPath + "-expiration")) {
-                if (expiration > 1 && expiration < DenizenCore.currentTimeMillis) {
+            FlagStore.FlagValue stored = holder.get(flagKey);
+            if (stored != null) {
+                if (stored.isExpired()) {
+                    rebuild();
                     String oldOwner = flagOwner;
                     String oldName = flagName;
                     ObjectTag oldValue = FlagSmartEvent.isActive() ? (value.size() > 1
                             ? value.asList()
                             : value.size() == 1 ? new ElementTag(value.get(0).asString()) : new ElementTag("null")) : null;
-                    denizen.getSaves().set(flagPath + "-expiration", null);
-                    denizen.getSaves().set(flagPath, null);
+                    holder.remove(flagKey);
                     valid = false;
                     rebuild();
-                    //dB.log('\'' + flagName + "' has expired! " + flagPath);
+                    //dB.log('\'' + flagName + "' has expired! " + flagKey);
                     if (FlagSmartEvent.isActive()) {
                         List<String> world_script_events = new ArrayList<>();
 
@@ -654,31 +862,24 @@ public class FlagManager {
         }
 
         /**
-         * Rebuilds the flag object with data from the saves.yml (in Memory)
+         * Rebuilds the flag object with data from the flag store
          * to ensure that data is current if updated outside of the scope
-         * of the plugin.
+         * of this object.
          */
         public Flag rebuild() {
-            if (denizen.getSaves().contains(flagPath + "-expiration")) {
-                this.expiration = (denizen.getSaves().getLong(flagPath + "-expiration"));
-            }
-            Object obj = denizen.getSaves().get(flagPath);
-            if (obj instanceof Map || obj instanceof MemorySection) {
-                valid = false;
+            FlagStore.FlagValue stored = holder.get(flagKey);
+            if (stored == null) {
                 value = new Value();
+                return this;
             }
-            else if (obj instanceof List) {
-                ArrayList<String> val = new ArrayList<>(((List) obj).size());
-                for (Object subObj : (List) obj) {
-                    val.add(String.valueOf(subObj));
-                }
-                value = new Value(val);
+            if (stored.expiration > 0) {
+                this.expiration = stored.expiration;
             }
-            else if (obj == null || obj.toString().length() == 0) {
-                value = new Value();
+            if (stored.list != null) {
+                value = new Value(new ArrayList<>(stored.list));
             }
             else {
-                value = new Value(obj.toString());
+                value = new Value(stored.element.asString());
             }
             return this;
         }
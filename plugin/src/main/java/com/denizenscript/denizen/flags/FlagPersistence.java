@@ -0,0 +1,288 @@
+package com.denizenscript.denizen.flags;
+
+import com.denizenscript.denizen.utilities.debugging.Debug;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the flag store as a folder of segment files (eg 'flags/players/AB.yml').
+ * Only segments that changed since the last save are written. The main thread only takes a
+ * snapshot of the changed segments, and the YAML serialization and file writes happen on a
+ * dedicated background thread, each file being written to a temporary file and then moved into place.
+ */
+public class FlagPersistence {
+
+    public final File folder;
+
+    private ExecutorService writer;
+
+    // Segments that failed to write in the background, to be retried by the next save
+    private final Set<String> failedSegments = ConcurrentHashMap.newKeySet();
+
+    public FlagPersistence(File folder) {
+        this.folder = folder;
+    }
+
+    private ExecutorService getWriter() {
+        if (writer == null || writer.isShutdown()) {
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Denizen Flag Saver");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return writer;
+    }
+
+    /**
+     * Returns true if flags have been fully converted from the legacy saves.yml layout, meaning the segment files are the
+     * only source of flags and any legacy flags still in saves.yml are stale.
+     */
+    public boolean isMigrated() {
+        return new File(folder, "migrated").isFile();
+    }
+
+    /**
+     * Records that flags have been fully converted from the legacy saves.yml layout.
+     */
+    public void markMigrated() throws IOException {
+        folder.mkdirs();
+        Files.write(new File(folder, "migrated").toPath(), new byte[0]);
+    }
+
+    /**
+     * Returns true if any flag segment files exist.
+     */
+    public boolean hasData() {
+        if (new File(folder, "global.yml").isFile()) {
+            return true;
+        }
+        for (String type : new String[] {"players", "entities", "npcs"}) {
+            File[] files = new File(folder, type).listFiles((dir, name) -> name.endsWith(".yml"));
+            if (files != null && files.length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads all segment files into the (already cleared) store.
+     */
+    public void load(FlagStore store) {
+        waitForWrites();
+        store.loading = true;
+        try {
+            loadSegment(store, "global", new File(folder, "global.yml"));
+            for (String type : new String[] {"players", "entities", "npcs"}) {
+                File[] files = new File(folder, type).listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File file : files) {
+                    String name = file.getName();
+                    if (!name.endsWith(".yml")) {
+                        continue;
+                    }
+                    loadSegment(store, type + "/" + name.substring(0, name.length() - ".yml".length()), file);
+                }
+            }
+            store.removeEmptyHolders();
+        }
+        finally {
+            store.loading = false;
+        }
+    }
+
+    private void loadSegment(FlagStore store, String segment, File file) {
+        if (!file.exists()) {
+            return;
+        }
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        for (String saveId : config.getKeys(false)) {
+            FlagStore.FlagHolder holder = store.getBySaveId(segment, saveId);
+            if (holder != null) {
+                store.loadHolder(config.getConfigurationSection(saveId), holder);
+            }
+        }
+    }
+
+    /**
+     * Copies the current contents of a segment into plain maps and lists that can safely be serialized off-thread.
+     */
+    private static Map<String, Map<String, Object>> snapshotSegment(FlagStore store, String segment) {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        HashSet<FlagStore.FlagHolder> holders = store.segments.get(segment);
+        if (holders == null) {
+            return result;
+        }
+        for (FlagStore.FlagHolder holder : holders) {
+            if (holder.flags.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Map.Entry<String, FlagStore.FlagValue> entry : holder.flags.entrySet()) {
+                FlagStore.FlagValue value = entry.getValue();
+                values.put(entry.getKey(), value.list != null ? new ArrayList<>(value.list) : value.element.asString());
+                if (value.expiration > 0) {
+                    values.put(entry.getKey() + "-expiration", value.expiration);
+                }
+            }
+            result.put(holder.saveId, values);
+        }
+        return result;
+    }
+
+    /**
+     * Saves all changed segments of the store. If 'async' is true, only the snapshot is taken on the calling
+     * thread, and the files are written in the background (write failures are reported, and the segment is
+     * retried by the next save). Otherwise, a failed write is thrown, and the failed segments stay marked as changed.
+     */
+    public void save(FlagStore store, boolean async) throws IOException {
+        if (!failedSegments.isEmpty()) {
+            for (Iterator<String> iter = failedSegments.iterator(); iter.hasNext(); ) {
+                store.dirtySegments.add(iter.next());
+                iter.remove();
+            }
+        }
+        if (store.dirtySegments.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, Map<String, Object>>> snapshots = new HashMap<>();
+        for (String segment : store.dirtySegments) {
+            snapshots.put(segment, snapshotSegment(store, segment));
+        }
+        store.dirtySegments.clear();
+        if (async) {
+            getWriter().execute(() -> {
+                for (Map.Entry<String, Map<String, Map<String, Object>>> entry : snapshots.entrySet()) {
+                    try {
+                        writeSegment(entry.getKey(), entry.getValue(), false);
+                    }
+                    catch (IOException ex) {
+                        failedSegments.add(entry.getKey());
+                        Debug.echoError("Failed to save flags to " + new File(folder, entry.getKey() + ".yml"));
+                        Debug.echoError(ex);
+                    }
+                }
+            });
+        }
+        else {
+            waitForWrites();
+            writeAll(store, snapshots, false);
+        }
+    }
+
+    /**
+     * Writes every segment of the store, then reads each file back to check that it holds exactly what was written.
+     * Any failure is thrown, and leaves every unconfirmed segment marked as changed.
+     */
+    public void saveAllVerified(FlagStore store) throws IOException {
+        store.dirtySegments.addAll(store.segments.keySet());
+        Map<String, Map<String, Map<String, Object>>> snapshots = new HashMap<>();
+        for (String segment : store.dirtySegments) {
+            snapshots.put(segment, snapshotSegment(store, segment));
+        }
+        store.dirtySegments.clear();
+        waitForWrites();
+        writeAll(store, snapshots, true);
+    }
+
+    private void writeAll(FlagStore store, Map<String, Map<String, Map<String, Object>>> snapshots, boolean verify) throws IOException {
+        Set<String> remaining = new HashSet<>(snapshots.keySet());
+        try {
+            for (Map.Entry<String, Map<String, Map<String, Object>>> entry : snapshots.entrySet()) {
+                writeSegment(entry.getKey(), entry.getValue(), verify);
+                remaining.remove(entry.getKey());
+            }
+        }
+        finally {
+            store.dirtySegments.addAll(remaining);
+        }
+    }
+
+    private void writeSegment(String segment, Map<String, Map<String, Object>> data, boolean verify) throws IOException {
+        File file = new File(folder, segment + ".yml");
+        if (data.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        for (Map.Entry<String, Map<String, Object>> owner : data.entrySet()) {
+            ConfigurationSection section = config.createSection(owner.getKey());
+            for (Map.Entry<String, Object> value : owner.getValue().entrySet()) {
+                section.set(value.getKey(), value.getValue());
+            }
+        }
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), config.saveToString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (verify) {
+            verifySegment(file, data);
+        }
+    }
+
+    private static void verifySegment(File file, Map<String, Map<String, Object>> data) throws IOException {
+        YamlConfiguration written = new YamlConfiguration();
+        try {
+            written.load(file);
+        }
+        catch (InvalidConfigurationException ex) {
+            throw new IOException("Saved flag file " + file + " cannot be read back", ex);
+        }
+        for (Map.Entry<String, Map<String, Object>> owner : data.entrySet()) {
+            ConfigurationSection section = written.getConfigurationSection(owner.getKey());
+            if (section == null) {
+                throw new IOException("Saved flag file " + file + " is missing the flags of " + owner.getKey());
+            }
+            for (Map.Entry<String, Object> value : owner.getValue().entrySet()) {
+                Object read = section.get(value.getKey());
+                Object expected = value.getValue();
+                boolean matches = expected instanceof List
+                        ? read instanceof List && ((List) read).size() == ((List) expected).size()
+                        : read != null && String.valueOf(read).equals(String.valueOf(expected));
+                if (!matches) {
+                    throw new IOException("Saved flag file " + file + " does not match flag '" + value.getKey() + "' of " + owner.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until all pending background writes are complete.
+     */
+    public void waitForWrites() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                Debug.echoError("Timed out waiting for flag saves to complete.");
+            }
+        }
+        catch (InterruptedException ex) {
+            Debug.echoError(ex);
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,532 @@
+package com.denizenscript.denizen.flags;
+
+import com.denizenscript.denizencore.DenizenCore;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.*;
+
+/**
+ * In-memory store of all flags, keyed by owner and then by (uppercased, interned) flag name.
+ * Owners are grouped into segments, which are the unit of persistence (see FlagPersistence).
+ */
+public class FlagStore {
+
+    /**
+     * A single stored flag value: either a single element or a list, plus an optional expiration time.
+     */
+    public static class FlagValue {
+
+        public ElementTag element;
+
+        public ListTag list;
+
+        public long expiration = -1L;
+
+        public boolean isList() {
+            return list != null;
+        }
+
+        public int size() {
+            if (list != null) {
+                return list.size();
+            }
+            return element == null ? 0 : 1;
+        }
+
+        public boolean isExpired() {
+            return expiration > 1 && expiration < DenizenCore.currentTimeMillis;
+        }
+    }
+
+    /**
+     * All flags belonging to a single owner (a player, NPC, entity, or the server).
+     */
+    public static class FlagHolder {
+
+        // The store this holder belongs to, or null for a temporary holder that is never saved
+        private final FlagStore store;
+
+        // The persistence segment this holder is saved in (eg "players/AB"), and its key within that segment
+        public final String segment;
+
+        public final String saveId;
+
+        // The identity of the owner, as used in flag events, eg "p@<uuid>"
+        public final String ownerIdentity;
+
+        // The key of the owner in its type map (a UUID for players and entities, an Integer for NPCs), or null
+        public final Object ownerKey;
+
+        // The flag name -> owners index this holder is tracked in, or null if not indexed
+        private final HashMap<String, HashSet<FlagHolder>> index;
+
+        public final HashMap<String, FlagValue> flags = new HashMap<>();
+
+        // Whether any flag name in this holder contains a '.', which requires extra bookkeeping to mirror YAML nesting
+        public boolean hasDotted = false;
+
+        public FlagHolder(String ownerIdentity) {
+            this(null, null, null, ownerIdentity, null, null);
+        }
+
+        public FlagHolder(FlagStore store, String segment, String saveId, String ownerIdentity, Object ownerKey, HashMap<String, HashSet<FlagHolder>> index) {
+            this.store = store;
+            this.segment = segment;
+            this.saveId = saveId;
+            if (store != null) {
+                store.segments.computeIfAbsent(segment, k -> new HashSet<>()).add(this);
+            }
+            this.ownerIdentity = ownerIdentity;
+            this.ownerKey = ownerKey;
+            this.index = index;
+        }
+
+        public FlagValue get(String key) {
+            return flags.get(key);
+        }
+
+        public void markDirty() {
+            if (store != null && !store.loading) {
+                store.dirtySegments.add(segment);
+            }
+        }
+
+        private void indexAdd(String key) {
+            if (index != null) {
+                index.computeIfAbsent(key, k -> new HashSet<>()).add(this);
+            }
+        }
+
+        private void indexRemove(String key) {
+            if (index != null) {
+                HashSet<FlagHolder> owners = index.get(key);
+                if (owners != null) {
+                    owners.remove(this);
+                    if (owners.isEmpty()) {
+                        index.remove(key);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes all flags from this holder (and from the index).
+         */
+        public void clearAll() {
+            for (String key : flags.keySet()) {
+                indexRemove(key);
+            }
+            flags.clear();
+            markDirty();
+        }
+
+        /**
+         * Stores a value, removing any flags that would conflict with it in the YAML tree
+         * (eg setting 'A' removes 'A.B', and setting 'A.B' removes 'A').
+         */
+        public void put(String key, FlagValue value) {
+            if (key.indexOf('.') != -1) {
+                hasDotted = true;
+                int dot = key.indexOf('.');
+                while (dot != -1) {
+                    remove(key.substring(0, dot));
+                    dot = key.indexOf('.', dot + 1);
+                }
+            }
+            if (hasDotted) {
+                String prefix = key + ".";
+                for (Iterator<String> iter = flags.keySet().iterator(); iter.hasNext(); ) {
+                    String name = iter.next();
+                    if (name.startsWith(prefix)) {
+                        iter.remove();
+                        indexRemove(name);
+                    }
+                }
+            }
+            if (flags.put(key, value) == null) {
+                indexAdd(key);
+            }
+            markDirty();
+        }
+
+        public FlagValue remove(String key) {
+            FlagValue removed = flags.remove(key);
+            if (removed != null) {
+                indexRemove(key);
+                markDirty();
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * A scheduled expiration. Entries are never removed when a flag changes; instead, an entry is
+     * considered stale (and skipped) if the holder no longer contains the exact value it was scheduled for.
+     */
+    public static class ExpirationEntry {
+
+        public final FlagHolder holder;
+
+        public final String key;
+
+        // The flag name as the script that set it wrote it, for the 'flag expires' event
+        public final String name;
+
+        public final FlagValue value;
+
+        public final long expiration;
+
+        public ExpirationEntry(FlagHolder holder, String key, String name, FlagValue value) {
+            this.holder = holder;
+            this.key = key;
+            this.name = name;
+            this.value = value;
+            this.expiration = value.expiration;
+        }
+
+        public boolean isStale() {
+            return holder.get(key) != value || value.expiration != expiration;
+        }
+    }
+
+    public final PriorityQueue<ExpirationEntry> expirations = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.expiration));
+
+    private int compactThreshold = 1024;
+
+    public final HashMap<UUID, FlagHolder> players = new HashMap<>();
+
+    public final HashMap<UUID, FlagHolder> entities = new HashMap<>();
+
+    public final HashMap<Integer, FlagHolder> npcs = new HashMap<>();
+
+    // Reverse indices of flag name -> holders that have that flag, for the 'list_..._flagged' tags
+    public final HashMap<String, HashSet<FlagHolder>> playersByFlag = new HashMap<>();
+
+    public final HashMap<String, HashSet<FlagHolder>> npcsByFlag = new HashMap<>();
+
+    // All holders, grouped by persistence segment
+    public final HashMap<String, HashSet<FlagHolder>> segments = new HashMap<>();
+
+    // Segments that changed since they were last persisted
+    public final HashSet<String> dirtySegments = new HashSet<>();
+
+    // True while loading, to avoid marking freshly loaded data as changed
+    public boolean loading = false;
+
+    public FlagHolder global = new FlagHolder(this, "global", "server", "SERVER", null, null);
+
+    private final HashMap<String, String> nameCache = new HashMap<>();
+
+    /**
+     * Returns the stored key for a flag name: uppercased and interned, cached so repeated lookups of
+     * the same name don't need to rebuild the string.
+     */
+    public String internName(String name) {
+        String key = nameCache.get(name);
+        if (key == null) {
+            if (nameCache.size() > 8192) {
+                nameCache.clear();
+            }
+            key = name.toUpperCase().intern();
+            nameCache.put(name, key);
+        }
+        return key;
+    }
+
+    public static String saveId(UUID uuid) {
+        return uuid.toString().toUpperCase().replace("-", "");
+    }
+
+    public static UUID parseSaveId(String id) {
+        if (id.length() != 32) {
+            return null;
+        }
+        try {
+            return new UUID(Long.parseUnsignedLong(id.substring(0, 16), 16), Long.parseUnsignedLong(id.substring(16), 16));
+        }
+        catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    public FlagHolder getPlayer(UUID uuid, boolean create) {
+        FlagHolder holder = players.get(uuid);
+        if (holder == null && create) {
+            String saveId = saveId(uuid);
+            holder = new FlagHolder(this, "players/" + saveId.substring(0, 2), saveId, "p@" + uuid, uuid, playersByFlag);
+            players.put(uuid, holder);
+        }
+        return holder;
+    }
+
+    public FlagHolder getEntity(UUID uuid, boolean create) {
+        FlagHolder holder = entities.get(uuid);
+        if (holder == null && create) {
+            String saveId = saveId(uuid);
+            holder = new FlagHolder(this, "entities/" + saveId.substring(0, 2), saveId, "e@" + uuid, uuid, null);
+            entities.put(uuid, holder);
+        }
+        return holder;
+    }
+
+    public FlagHolder getNPC(int id, boolean create) {
+        FlagHolder holder = npcs.get(id);
+        if (holder == null && create) {
+            holder = new FlagHolder(this, "npcs/" + (id >> 8), String.valueOf(id), "n@" + id, id, npcsByFlag);
+            npcs.put(id, holder);
+        }
+        return holder;
+    }
+
+    public void scheduleExpiration(FlagHolder holder, String key, String name, FlagValue value) {
+        if (value.expiration <= 1) {
+            return;
+        }
+        expirations.add(new ExpirationEntry(holder, key, name, value));
+        if (expirations.size() > compactThreshold) {
+            expirations.removeIf(ExpirationEntry::isStale);
+            compactThreshold = Math.max(1024, expirations.size() * 2);
+        }
+    }
+
+    /**
+     * Returns the next flag that has expired as of the given time, or null if there are none.
+     * Stale entries are discarded along the way.
+     */
+    public ExpirationEntry pollExpired(long now) {
+        while (!expirations.isEmpty() && expirations.peek().expiration < now) {
+            ExpirationEntry entry = expirations.poll();
+            if (!entry.isStale()) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void removeHolder(FlagHolder holder) {
+        if (holder == null) {
+            return;
+        }
+        holder.clearAll();
+        HashSet<FlagHolder> segment = segments.get(holder.segment);
+        if (segment != null) {
+            segment.remove(holder);
+        }
+    }
+
+    public void removePlayer(UUID uuid) {
+        removeHolder(players.remove(uuid));
+    }
+
+    public void removeEntity(UUID uuid) {
+        removeHolder(entities.remove(uuid));
+    }
+
+    public void removeNPC(int id) {
+        removeHolder(npcs.remove(id));
+    }
+
+    public void removeEmptyHolders() {
+        for (Iterator<FlagHolder> iter = players.values().iterator(); iter.hasNext(); ) {
+            FlagHolder holder = iter.next();
+            if (holder.flags.isEmpty()) {
+                iter.remove();
+                removeHolder(holder);
+            }
+        }
+        for (Iterator<FlagHolder> iter = entities.values().iterator(); iter.hasNext(); ) {
+            FlagHolder holder = iter.next();
+            if (holder.flags.isEmpty()) {
+                iter.remove();
+                removeHolder(holder);
+            }
+        }
+        for (Iterator<FlagHolder> iter = npcs.values().iterator(); iter.hasNext(); ) {
+            FlagHolder holder = iter.next();
+            if (holder.flags.isEmpty()) {
+                iter.remove();
+                removeHolder(holder);
+            }
+        }
+    }
+
+    public void clear() {
+        expirations.clear();
+        players.clear();
+        entities.clear();
+        npcs.clear();
+        playersByFlag.clear();
+        npcsByFlag.clear();
+        segments.clear();
+        dirtySegments.clear();
+        global = new FlagHolder(this, "global", "server", "SERVER", null, null);
+    }
+
+    /**
+     * Returns the holder for the given segment and save ID, as used by FlagPersistence.
+     */
+    public FlagHolder getBySaveId(String segment, String saveId) {
+        if (segment.equals("global")) {
+            return global;
+        }
+        if (segment.startsWith("players/")) {
+            UUID uuid = parseSaveId(saveId);
+            return uuid == null ? null : getPlayer(uuid, true);
+        }
+        if (segment.startsWith("entities/")) {
+            UUID uuid = parseSaveId(saveId);
+            return uuid == null ? null : getEntity(uuid, true);
+        }
+        if (segment.startsWith("npcs/")) {
+            try {
+                return getNPC(Integer.parseInt(saveId), true);
+            }
+            catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads all flags found in the legacy saves.yml layout (where flags were stored alongside other saved data)
+     * into this store. All loaded data is marked as changed, so that it will be persisted in the new format.
+     */
+    public void loadLegacy(FileConfiguration saves) {
+        loadUUIDSection(saves.getConfigurationSection("Players"), players, true);
+        loadUUIDSection(saves.getConfigurationSection("Entities"), entities, false);
+        ConfigurationSection npcSection = saves.getConfigurationSection("NPCs");
+        if (npcSection != null) {
+            for (String id : npcSection.getKeys(false)) {
+                try {
+                    int npcId = Integer.parseInt(id);
+                    loadHolder(npcSection.getConfigurationSection(id + ".Flags"), getNPC(npcId, true));
+                }
+                catch (NumberFormatException ex) {
+                    // Ignore
+                }
+            }
+        }
+        loadHolder(saves.getConfigurationSection("Global.Flags"), global);
+        removeEmptyHolders();
+        dirtySegments.addAll(segments.keySet());
+    }
+
+    /**
+     * Returns true if the legacy saves.yml layout holds any flag data.
+     */
+    public static boolean hasLegacy(FileConfiguration saves) {
+        for (String type : new String[] {"Players", "Entities"}) {
+            ConfigurationSection section = saves.getConfigurationSection(type);
+            if (section == null) {
+                continue;
+            }
+            for (String prefix : section.getKeys(false)) {
+                ConfigurationSection prefixSection = section.getConfigurationSection(prefix);
+                if (prefixSection == null) {
+                    continue;
+                }
+                for (String id : prefixSection.getKeys(false)) {
+                    if (prefixSection.isConfigurationSection(id + ".Flags")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        ConfigurationSection npcSection = saves.getConfigurationSection("NPCs");
+        if (npcSection != null) {
+            for (String id : npcSection.getKeys(false)) {
+                if (npcSection.isConfigurationSection(id + ".Flags")) {
+                    return true;
+                }
+            }
+        }
+        return saves.isConfigurationSection("Global.Flags");
+    }
+
+    /**
+     * Removes all flag data from the legacy saves.yml layout, leaving other saved data in place.
+     */
+    public static void stripLegacy(FileConfiguration saves) {
+        for (String type : new String[] {"Players", "Entities"}) {
+            ConfigurationSection section = saves.getConfigurationSection(type);
+            if (section == null) {
+                continue;
+            }
+            for (String prefix : section.getKeys(false)) {
+                ConfigurationSection prefixSection = section.getConfigurationSection(prefix);
+                if (prefixSection == null) {
+                    continue;
+                }
+                for (String id : prefixSection.getKeys(false)) {
+                    prefixSection.set(id + ".Flags", null);
+                }
+            }
+        }
+        ConfigurationSection npcSection = saves.getConfigurationSection("NPCs");
+        if (npcSection != null) {
+            for (String id : npcSection.getKeys(false)) {
+                npcSection.set(id + ".Flags", null);
+            }
+        }
+        saves.set("Global.Flags", null);
+    }
+
+    private void loadUUIDSection(ConfigurationSection section, HashMap<UUID, FlagHolder> map, boolean isPlayer) {
+        if (section == null) {
+            return;
+        }
+        for (String prefix : section.getKeys(false)) {
+            ConfigurationSection prefixSection = section.getConfigurationSection(prefix);
+            if (prefixSection == null) {
+                continue;
+            }
+            for (String id : prefixSection.getKeys(false)) {
+                UUID uuid = parseSaveId(id);
+                if (uuid == null) {
+                    continue;
+                }
+                loadHolder(prefixSection.getConfigurationSection(id + ".Flags"), isPlayer ? getPlayer(uuid, true) : getEntity(uuid, true));
+            }
+        }
+    }
+
+    public void loadHolder(ConfigurationSection section, FlagHolder holder) {
+        if (section == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+            String key = entry.getKey();
+            Object obj = entry.getValue();
+            if (key.endsWith("-expiration") || obj instanceof ConfigurationSection || obj instanceof Map) {
+                continue;
+            }
+            FlagValue value = new FlagValue();
+            if (obj instanceof List) {
+                ListTag list = new ListTag();
+                for (Object subObj : (List) obj) {
+                    list.add(String.valueOf(subObj));
+                }
+                if (list.isEmpty()) {
+                    continue;
+                }
+                value.list = list;
+            }
+            else if (obj == null || obj.toString().length() == 0) {
+                continue;
+            }
+            else {
+                value.element = new ElementTag(obj.toString());
+            }
+            if (section.contains(key + "-expiration")) {
+                value.expiration = section.getLong(key + "-expiration");
+            }
+            String name = key.toUpperCase().intern();
+            holder.put(name, value);
+            scheduleExpiration(holder, name, key, value);
+        }
+    }
+}
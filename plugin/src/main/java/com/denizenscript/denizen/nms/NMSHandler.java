@@ -1,6 +1,8 @@
 package com.denizenscript.denizen.nms;
 
 import com.denizenscript.denizen.nms.interfaces.*;
+import com.denizenscript.denizen.nms.util.PacketEntityFlags;
+import com.denizenscript.denizen.nms.util.PacketFeatures;
 import com.denizenscript.denizen.nms.util.PlayerProfile;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.nms.util.jnbt.Tag;
@@ -11,6 +13,7 @@ import com.denizenscript.denizen.nms.abstracts.ParticleHelper;
 import com.denizenscript.denizen.nms.abstracts.ProfileEditor;
 import com.denizenscript.denizen.nms.abstracts.Sidebar;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.block.Biome;
 import org.bukkit.entity.Entity;
@@ -20,6 +23,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.Vector;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class NMSHandler {
 
@@ -203,6 +207,7 @@ public abstract class NMSHandler {
     public HashMap<UUID, Vector> attachmentOffsets = new HashMap<>();
     public HashSet<UUID> attachmentRotations = new HashSet<>();
     public HashMap<UUID, Vector> visiblePositions = new HashMap<>();
+    public Map<UUID, Integer> attachmentEntityIds = new ConcurrentHashMap<>(); // Last known entity ID of each attached entity
 
     public void forceAttachMove(Entity a, Entity b, Vector offset, boolean matchRotation) {
         if (attachmentsA.containsKey(a.getUniqueId())) {
@@ -211,12 +216,19 @@ public abstract class NMSHandler {
             subAttachments.remove(a.getUniqueId());
             if (subAttachments.isEmpty()) {
                 attachments2.remove(bid);
+                Entity oldTarget = Bukkit.getEntity(bid);
+                if (oldTarget != null) {
+                    PacketEntityFlags.global.remove(oldTarget.getEntityId(), PacketEntityFlags.ATTACHED);
+                }
             }
             attachmentsA.remove(a.getUniqueId());
             attachmentOffsets.remove(a.getUniqueId());
             attachmentRotations.remove(a.getUniqueId());
+            attachmentEntityIds.remove(a.getUniqueId());
+            PacketEntityFlags.global.remove(a.getEntityId(), PacketEntityFlags.ATTACHED_TO);
         }
         if (b == null) {
+            PacketFeatures.setActive(PacketFeatures.Feature.ATTACHMENTS, !attachmentsA.isEmpty());
             return;
         }
         attachmentsA.put(a.getUniqueId(), b.getUniqueId());
@@ -227,8 +239,13 @@ public abstract class NMSHandler {
         }
         subAttachments.add(a.getUniqueId());
         attachmentOffsets.put(a.getUniqueId(), offset);
+        attachmentEntityIds.put(a.getUniqueId(), a.getEntityId());
+        PacketEntityFlags.global.add(a.getEntityId(), PacketEntityFlags.ATTACHED_TO);
+        PacketEntityFlags.global.add(b.getEntityId(), PacketEntityFlags.ATTACHED);
+        PacketEntityFlags.ensureListener();
         if (matchRotation) {
             attachmentRotations.add(a.getUniqueId());
         }
+        PacketFeatures.setActive(PacketFeatures.Feature.ATTACHMENTS, true);
     }
 }
@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.nms.abstracts;
 
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.util.PacketFeatures;
 import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
@@ -46,6 +47,7 @@ public abstract class BlockLight {
         this.cachedLight = originalLight;
         this.intendedLevel = originalLight;
         this.removeLater(ticks);
+        PacketFeatures.setActive(PacketFeatures.Feature.BLOCK_LIGHTS, true);
     }
 
     public void removeLater(long ticks) {
@@ -79,6 +81,7 @@ public abstract class BlockLight {
             if (lights.isEmpty()) {
                 lightsByChunk.remove(blockLight.chunkCoord);
             }
+            PacketFeatures.setActive(PacketFeatures.Feature.BLOCK_LIGHTS, !lightsByLocation.isEmpty());
         }
     }
 
@@ -1,13 +1,16 @@
 package com.denizenscript.denizen.nms.abstracts;
 
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
+/**
+ * A player's sidebar. Updates are sent as a diff against the state last sent to the player, so unchanged lines cost nothing.
+ * Where the version supports it, each line is a fixed invisible score entry whose text is its team's prefix, so changing a line's
+ * text is a single team packet and never removes and re-adds a score (which can flicker).
+ */
 public abstract class Sidebar {
 
     protected final Player player;
@@ -17,6 +20,22 @@ public abstract class Sidebar {
     protected int start;
     protected int increment;
 
+    // The invisible, unique score entry names used for each line when lines are shown as team prefixes
+    protected static final String[] LINE_ENTRIES = new String[15];
+
+    static {
+        for (int i = 0; i < LINE_ENTRIES.length; i++) {
+            LINE_ENTRIES[i] = ChatColor.values()[i].toString() + ChatColor.RESET;
+        }
+    }
+
+    // The state last sent to the player
+    protected boolean sent = false;
+    protected boolean displayPending = false;
+    protected String sentTitle;
+    protected String[] sentLines = new String[15];
+    protected int[] sentScores = new int[15];
+
     public Sidebar(Player player) {
         this.player = player;
         setTitle("");
@@ -84,7 +103,123 @@ public abstract class Sidebar {
         }
     }
 
-    public abstract void sendUpdate();
+    /**
+     * Makes the next update show the sidebar in the display slot again, in case something else has taken the slot since.
+     */
+    public void refreshDisplay() {
+        displayPending = true;
+    }
+
+    /**
+     * Sends the player whatever changed since the last update.
+     */
+    public void sendUpdate() {
+        if (!sent) {
+            sendObjective(0);
+            sendDisplay();
+            sent = true;
+            displayPending = false;
+            sentTitle = title;
+        }
+        else {
+            if (!title.equals(sentTitle)) {
+                sendObjective(2);
+                sentTitle = title;
+            }
+            if (displayPending) {
+                sendDisplay();
+                displayPending = false;
+            }
+        }
+        if (useTeamLines()) {
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i];
+                String old = sentLines[i];
+                if (line == null) {
+                    if (old != null) {
+                        sendScoreRemoval(LINE_ENTRIES[i]);
+                        sendTeam(i, LINE_ENTRIES[i], null, 1);
+                    }
+                    continue;
+                }
+                if (old == null) {
+                    sendTeam(i, LINE_ENTRIES[i], line, 0);
+                }
+                else if (!old.equals(line)) {
+                    sendTeam(i, LINE_ENTRIES[i], line, 2);
+                }
+                if (old == null || sentScores[i] != scores[i]) {
+                    sendScore(LINE_ENTRIES[i], scores[i]);
+                }
+            }
+        }
+        else {
+            // Each line's text is its own score entry, so compare by text: lines that moved only need their score changed
+            Map<String, Integer> oldScores = new HashMap<>();
+            Map<String, Integer> newScores = new LinkedHashMap<>();
+            for (int i = 0; i < lines.length; i++) {
+                if (sentLines[i] != null) {
+                    oldScores.put(sentLines[i], sentScores[i]);
+                }
+                if (lines[i] != null) {
+                    newScores.put(lines[i], scores[i]);
+                }
+            }
+            for (String line : oldScores.keySet()) {
+                if (!newScores.containsKey(line)) {
+                    sendScoreRemoval(line);
+                }
+            }
+            for (Map.Entry<String, Integer> entry : newScores.entrySet()) {
+                if (!entry.getValue().equals(oldScores.get(entry.getKey()))) {
+                    sendScore(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        sentLines = lines.clone();
+        sentScores = scores.clone();
+    }
+
+    /**
+     * Whether lines are shown as team prefixes on fixed score entries, rather than as score entries themselves.
+     * Versions that support this must also implement sendTeam.
+     */
+    protected boolean useTeamLines() {
+        return false;
+    }
+
+    /**
+     * Sends the sidebar objective with the current title. Mode 0 creates it, 1 removes it, and 2 updates its title.
+     */
+    protected abstract void sendObjective(int mode);
+
+    protected abstract void sendDisplay();
+
+    protected abstract void sendScore(String entry, int score);
 
-    public abstract void remove();
+    protected abstract void sendScoreRemoval(String entry);
+
+    /**
+     * Sends a line's team, with the entry as its only member and the text as its prefix. Mode 0 creates it, 1 removes it, and 2 updates its text.
+     * Only used if useTeamLines returns true, otherwise lines are sent as plain score entries.
+     */
+    protected void sendTeam(int line, String entry, String text, int mode) {
+    }
+
+    public void remove() {
+        if (!sent) {
+            return;
+        }
+        sendObjective(1);
+        if (useTeamLines()) {
+            for (int i = 0; i < sentLines.length; i++) {
+                if (sentLines[i] != null) {
+                    sendTeam(i, LINE_ENTRIES[i], null, 1);
+                }
+            }
+        }
+        sent = false;
+        sentLines = new String[15];
+        sentScores = new int[15];
+    }
 }
@@ -5,6 +5,7 @@ import com.denizenscript.denizen.nms.util.PlayerProfile;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.Skull;
@@ -42,6 +43,19 @@ public interface BlockHelper {
 
     BlockData getBlockData(String compressedString);
 
+    /**
+     * Sets a batch of blocks that are all within the one chunk section at the given chunk X/Z and section Y, without physics.
+     * The first 'count' entries of 'positions' are section-relative positions packed as (y << 8) | (z << 4) | x.
+     * Implementations should write straight into the chunk, leaving client updates and lighting to be handled in bulk.
+     */
+    default void setBlocksInSection(World world, int chunkX, int sectionY, int chunkZ, short[] positions, BlockData[] blocks, int count) {
+        int baseX = chunkX << 4, baseY = sectionY << 4, baseZ = chunkZ << 4;
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            blocks[i].setBlock(world.getBlockAt(baseX + (position & 15), baseY + ((position >> 8) & 15), baseZ + ((position >> 4) & 15)), false);
+        }
+    }
+
     boolean hasBlock(Material material);
 
     boolean setBlockResistance(Material material, float resistance);
@@ -1,6 +1,8 @@
 package com.denizenscript.denizen.nms.interfaces;
 
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
 import org.bukkit.World;
 
 public interface ChunkHelper {
@@ -16,4 +18,18 @@ public interface ChunkHelper {
     default void restoreServerThread(World world) {
         // Do nothing by default.
     }
+
+    /**
+     * Returns the type of a block in a chunk snapshot, by chunk-relative X/Z. Safe to call from any thread.
+     */
+    default Material getBlockType(ChunkSnapshot snapshot, int x, int y, int z) {
+        return snapshot.getBlockType(x, y, z);
+    }
+
+    /**
+     * Returns the legacy data value of a block in a chunk snapshot, by chunk-relative X/Z. Safe to call from any thread.
+     */
+    default int getLegacyData(ChunkSnapshot snapshot, int x, int y, int z) {
+        return snapshot.getData(x, y, z);
+    }
 }
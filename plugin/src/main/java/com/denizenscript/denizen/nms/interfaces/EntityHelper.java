@@ -2,6 +2,8 @@ package com.denizenscript.denizen.nms.interfaces;
 
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.util.BoundingBox;
+import com.denizenscript.denizen.nms.util.PacketEntityFlags;
+import com.denizenscript.denizen.nms.util.PacketFeatures;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.utilities.DenizenAPI;
@@ -154,12 +156,14 @@ public abstract class EntityHelper {
             }
             plHid.add(entity);
         }
+        PacketFeatures.setActive(PacketFeatures.Feature.HIDDEN_ENTITIES, true);
         return hidden.add(player);
     }
 
     public void hideEntity(Player player, Entity entity, boolean keepInTabList) { // TODO: remove or reimplement tablist option somehow?
         if (player == null) {
             addHide(DEFAULT_HIDE, entity.getUniqueId());
+            PacketEntityFlags.refreshHidden(entity.getUniqueId(), entity.getEntityId());
             if (entity instanceof Player) {
                 hiddenByDefaultPlayers.add(entity.getUniqueId());
             }
@@ -174,6 +178,7 @@ public abstract class EntityHelper {
         else {
             addHide(player.getUniqueId(), entity.getUniqueId());
         }
+        PacketEntityFlags.refreshHidden(entity.getUniqueId(), entity.getEntityId());
         sendHidePacket(player, entity);
     }
 
@@ -198,12 +203,17 @@ public abstract class EntityHelper {
                 plHid.remove(entity);
             }
         }
+        if (hidden.isEmpty()) {
+            hiddenEntitiesEntPl.remove(entity);
+            PacketFeatures.setActive(PacketFeatures.Feature.HIDDEN_ENTITIES, !hiddenEntitiesEntPl.isEmpty());
+        }
         return toRet;
     }
 
     public void unhideEntity(Player player, Entity entity) {
         if (player == null) {
             removeHide(DEFAULT_HIDE, entity.getUniqueId());
+            PacketEntityFlags.refreshHidden(entity.getUniqueId(), entity.getEntityId());
             if (entity instanceof Player) {
                 hiddenByDefaultPlayers.remove(entity.getUniqueId());
             }
@@ -218,6 +228,7 @@ public abstract class EntityHelper {
         else {
             removeHide(player.getUniqueId(), entity.getUniqueId());
         }
+        PacketEntityFlags.refreshHidden(entity.getUniqueId(), entity.getEntityId());
         sendShowPacket(player, entity);
     }
 
@@ -51,6 +51,22 @@ public abstract class ItemHelper {
 
     public abstract CompoundTag getNbtData(ItemStack itemStack);
 
+    /**
+     * Returns a single string value from the item's NBT, or null if it's missing or empty.
+     */
+    public String getNbtString(ItemStack itemStack, String key) {
+        String value = getNbtData(itemStack).getString(key);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Returns the object that holds the item's NBT (not a copy), or null if there is none or it can't be read without copying.
+     * Changing an item's meta through Bukkit replaces this object, so it can be used as an identity cache key for the item's data.
+     */
+    public Object getNbtIdentity(ItemStack itemStack) {
+        return null;
+    }
+
     public abstract ItemStack setNbtData(ItemStack itemStack, CompoundTag compoundTag);
 
     public abstract PotionEffect getPotionEffect(PotionEffectType type, int duration, int amplifier, boolean ambient, boolean particles, Color color, boolean icon);
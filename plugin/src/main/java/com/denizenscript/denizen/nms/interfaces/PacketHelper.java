@@ -1,8 +1,12 @@
 package com.denizenscript.denizen.nms.interfaces;
 
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.NMSVersion;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
+import com.denizenscript.denizen.objects.MaterialTag;
 import org.bukkit.DyeColor;
 import org.bukkit.Location;
+import org.bukkit.block.Block;
 import org.bukkit.block.banner.Pattern;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
@@ -62,4 +66,34 @@ public interface PacketHelper {
     boolean showSignEditor(Player player, Location location);
 
     void forceSpectate(Player player, Entity entity);
+
+    /**
+     * Sends a set of block changes within one chunk to the player, as a single packet where possible.
+     * Positions are packed as (x << 12) | (z << 8) | y, relative to the chunk. A null material sends the real block.
+     */
+    default void sendMultiBlockChange(Player player, int chunkX, int chunkZ, short[] positions, MaterialTag[] materials, int count) {
+        Location location = new Location(player.getWorld(), 0, 0, 0);
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            location.setX((chunkX << 4) + ((position >> 12) & 15));
+            location.setY(position & 255);
+            location.setZ((chunkZ << 4) + ((position >> 8) & 15));
+            MaterialTag material = materials[i];
+            if (material == null) {
+                Block block = location.getBlock();
+                if (NMSHandler.getVersion().isAtLeast(NMSVersion.v1_13)) {
+                    player.sendBlockChange(location, block.getBlockData());
+                }
+                else {
+                    player.sendBlockChange(location, block.getType(), block.getData());
+                }
+            }
+            else if (material.hasModernData()) {
+                material.getModernData().sendFakeChangeTo(player, location);
+            }
+            else {
+                player.sendBlockChange(location, material.getMaterial(), material.getMaterialData().getData());
+            }
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package com.denizenscript.denizen.nms.util;
+
+/**
+ * A map of int keys to non-zero int flag values, using open addressing with linear probing.
+ * Each entry is packed into a single long (key in the high bits, value in the low bits), so that
+ * a reader on another thread never sees a key paired with the wrong value.
+ * Only one thread should modify the map.
+ */
+public class IntFlagMap {
+
+    private volatile long[] table = new long[16];
+
+    private int size = 0;
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long entry(int key, int value) {
+        return (((long) key) << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the flags for the key, or 0 if there are none.
+     */
+    public int get(int key) {
+        long[] table = this.table;
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long entry = table[i];
+            if ((int) entry == 0) {
+                return 0;
+            }
+            if ((int) (entry >>> 32) == key) {
+                return (int) entry;
+            }
+        }
+    }
+
+    public void set(int key, int value) {
+        if (value == 0) {
+            removeKey(key);
+            return;
+        }
+        long[] table = this.table;
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long entry = table[i];
+            if ((int) entry == 0) {
+                table[i] = entry(key, value);
+                if (++size * 2 > table.length) {
+                    resize(table.length * 2);
+                }
+                return;
+            }
+            if ((int) (entry >>> 32) == key) {
+                table[i] = entry(key, value);
+                return;
+            }
+        }
+    }
+
+    public void add(int key, int flags) {
+        set(key, get(key) | flags);
+    }
+
+    public void remove(int key, int flags) {
+        int value = get(key);
+        if ((value & flags) != 0) {
+            set(key, value & ~flags);
+        }
+    }
+
+    private void removeKey(int key) {
+        long[] table = this.table;
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            long entry = table[i];
+            if ((int) entry == 0) {
+                return;
+            }
+            if ((int) (entry >>> 32) == key) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        size--;
+        // Shift back any following entries that would otherwise become unreachable
+        int gap = i;
+        for (int j = (gap + 1) & mask; ; j = (j + 1) & mask) {
+            long entry = table[j];
+            if ((int) entry == 0) {
+                break;
+            }
+            int home = hash((int) (entry >>> 32)) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = entry;
+                gap = j;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private void resize(int newLength) {
+        long[] oldTable = table;
+        long[] newTable = new long[newLength];
+        int mask = newLength - 1;
+        for (long entry : oldTable) {
+            if ((int) entry != 0) {
+                int i = hash((int) (entry >>> 32)) & mask;
+                while (newTable[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                newTable[i] = entry;
+            }
+        }
+        table = newTable;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,185 @@
+package com.denizenscript.denizen.nms.util;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.interfaces.EntityHelper;
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flags on entity IDs that outgoing packet interception needs to check, so that it can test
+ * a packet's entity ID directly rather than resolving the entity and its UUID for every packet.
+ * The UUID-based maps in EntityHelper and NMSHandler remain the source of truth: an entity
+ * gets a new ID when its chunk reloads (or a player rejoins), so flags are refreshed at those points,
+ * and cleared from the old ID when the entity unloads, dies or quits.
+ */
+public class PacketEntityFlags {
+
+    /**
+     * Per-player: the entity is hidden from the player.
+     */
+    public static final int HIDDEN = 1;
+
+    /**
+     * Per-player: the entity is hidden by default, but shown to the player.
+     */
+    public static final int SHOWN = 2;
+
+    /**
+     * Global: the entity is hidden from all players by default.
+     */
+    public static final int HIDDEN_BY_DEFAULT = 4;
+
+    /**
+     * Global: other entities are attached to this entity.
+     */
+    public static final int ATTACHED = 8;
+
+    /**
+     * Global: the entity is attached to another entity.
+     */
+    public static final int ATTACHED_TO = 16;
+
+    /**
+     * Global: the entity is a fake player.
+     */
+    public static final int FAKE_PLAYER = 32;
+
+    public static final IntFlagMap global = new IntFlagMap();
+
+    public static final Map<UUID, IntFlagMap> byPlayer = new ConcurrentHashMap<>();
+
+    public static IntFlagMap forPlayer(UUID player) {
+        return byPlayer.computeIfAbsent(player, k -> new IntFlagMap());
+    }
+
+    public static boolean isHidden(int globalFlags, int playerFlags) {
+        if ((globalFlags & HIDDEN_BY_DEFAULT) != 0) {
+            return (playerFlags & SHOWN) == 0;
+        }
+        return (playerFlags & HIDDEN) != 0;
+    }
+
+    /**
+     * Recalculates the hide flags for an entity from the hidden entity maps in EntityHelper.
+     */
+    public static void refreshHidden(UUID entity, int entityId) {
+        global.remove(entityId, HIDDEN_BY_DEFAULT);
+        for (IntFlagMap playerFlags : byPlayer.values()) {
+            playerFlags.remove(entityId, HIDDEN | SHOWN);
+        }
+        Set<UUID> hiding = EntityHelper.hiddenEntitiesEntPl.get(entity);
+        if (hiding == null || hiding.isEmpty()) {
+            return;
+        }
+        ensureListener();
+        boolean byDefault = hiding.contains(EntityHelper.DEFAULT_HIDE);
+        if (byDefault) {
+            global.add(entityId, HIDDEN_BY_DEFAULT);
+        }
+        for (UUID player : hiding) {
+            if (!player.equals(EntityHelper.DEFAULT_HIDE)) {
+                forPlayer(player).add(entityId, byDefault ? SHOWN : HIDDEN);
+            }
+        }
+    }
+
+    /**
+     * Re-applies all flags for an entity that may have been given a new entity ID.
+     */
+    public static void refreshEntity(Entity entity) {
+        UUID id = entity.getUniqueId();
+        int entityId = entity.getEntityId();
+        if (EntityHelper.hiddenEntitiesEntPl.containsKey(id)) {
+            refreshHidden(id, entityId);
+        }
+        NMSHandler handler = NMSHandler.getInstance();
+        if (handler.attachmentsA.containsKey(id)) {
+            global.add(entityId, ATTACHED_TO);
+            handler.attachmentEntityIds.put(id, entityId);
+        }
+        if (handler.attachments2.containsKey(id)) {
+            global.add(entityId, ATTACHED);
+        }
+    }
+
+    /**
+     * Removes all flags on an entity ID that is no longer in use.
+     */
+    public static void clearEntity(int entityId) {
+        global.set(entityId, 0);
+        for (IntFlagMap playerFlags : byPlayer.values()) {
+            playerFlags.set(entityId, 0);
+        }
+    }
+
+    public static class RefreshListener implements Listener {
+
+        @EventHandler
+        public void onChunkLoad(ChunkLoadEvent event) {
+            for (Entity entity : event.getChunk().getEntities()) {
+                refreshEntity(entity);
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onChunkUnload(ChunkUnloadEvent event) {
+            for (Entity entity : event.getChunk().getEntities()) {
+                clearEntity(entity.getEntityId());
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onEntityDeath(EntityDeathEvent event) {
+            // Players keep their entity ID through respawning, so they're only cleared when they quit
+            if (!(event.getEntity() instanceof Player)) {
+                clearEntity(event.getEntity().getEntityId());
+            }
+        }
+
+        @EventHandler
+        public void onPlayerJoin(PlayerJoinEvent event) {
+            Player player = event.getPlayer();
+            refreshEntity(player);
+            // The player's own flags were dropped when they quit, so rebuild them for the entities hidden from (or shown to) them
+            Set<UUID> hidden = EntityHelper.hiddenEntitiesPlEnt.get(player.getUniqueId());
+            if (hidden != null) {
+                for (UUID id : hidden) {
+                    Entity entity = Bukkit.getEntity(id);
+                    if (entity != null) {
+                        refreshHidden(id, entity.getEntityId());
+                    }
+                }
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPlayerQuit(PlayerQuitEvent event) {
+            clearEntity(event.getPlayer().getEntityId());
+            byPlayer.remove(event.getPlayer().getUniqueId());
+        }
+    }
+
+    private static RefreshListener listener = null;
+
+    public static void ensureListener() {
+        if (listener == null) {
+            listener = new RefreshListener();
+            Bukkit.getPluginManager().registerEvents(listener, DenizenAPI.getCurrentInstance());
+        }
+    }
+}
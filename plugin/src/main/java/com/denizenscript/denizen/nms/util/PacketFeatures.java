@@ -0,0 +1,32 @@
+package com.denizenscript.denizen.nms.util;
+
+/**
+ * Tracks which packet-modifying features are currently in use, so that outgoing packet interception
+ * only runs the checks for features that actually have something to do.
+ * The 'version' number changes whenever a feature is enabled or disabled.
+ */
+public class PacketFeatures {
+
+    public enum Feature {
+        ATTACHMENTS, HIDDEN_ENTITIES, FAKE_BLOCKS, BLOCK_LIGHTS
+    }
+
+    // Only changed on the main thread, but read from network threads, so changes are published as a new array
+    private static volatile boolean[] active = new boolean[Feature.values().length];
+
+    public static volatile int version = 0;
+
+    public static boolean isActive(Feature feature) {
+        return active[feature.ordinal()];
+    }
+
+    public static void setActive(Feature feature, boolean isActive) {
+        boolean[] current = active;
+        if (current[feature.ordinal()] != isActive) {
+            boolean[] updated = current.clone();
+            updated[feature.ordinal()] = isActive;
+            active = updated;
+            version++;
+        }
+    }
+}
@@ -5,11 +5,16 @@ import com.denizenscript.denizen.utilities.debugging.Debug;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ReflectionHelper {
 
@@ -17,6 +22,8 @@ public class ReflectionHelper {
 
     private static final Map<Class, Map<String, MethodHandle>> cachedFieldSetters = new HashMap<>();
 
+    private static final Map<Class, ShallowCopier> cachedCopiers = new ConcurrentHashMap<>();
+
     public static void setFieldValue(Class clazz, String fieldName, Object object, Object value) {
         try {
             getFields(clazz).get(fieldName).set(object, value);
@@ -148,6 +155,72 @@ public class ReflectionHelper {
         return result;
     }
 
+    /**
+     * Copies every instance field of an object (including inherited fields) into a new instance created by its no-argument constructor.
+     */
+    public static class ShallowCopier {
+
+        public final MethodHandle constructor;
+
+        public final MethodHandle[] getters;
+
+        public final MethodHandle[] setters;
+
+        public ShallowCopier(Class<?> clazz) throws Throwable {
+            Constructor<?> noArgs = clazz.getDeclaredConstructor();
+            noArgs.setAccessible(true);
+            constructor = LOOKUP.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+            List<MethodHandle> getterList = new ArrayList<>();
+            List<MethodHandle> setterList = new ArrayList<>();
+            for (Class<?> subc = clazz; subc != null && subc != Object.class; subc = subc.getSuperclass()) {
+                for (Field field : subc.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    MethodHandle setter;
+                    try {
+                        setter = LOOKUP.unreflectSetter(field);
+                    }
+                    catch (IllegalAccessException ex) {
+                        setter = getFinalSetter(subc, field.getName());
+                    }
+                    getterList.add(LOOKUP.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)));
+                    setterList.add(setter.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                }
+            }
+            getters = getterList.toArray(new MethodHandle[0]);
+            setters = setterList.toArray(new MethodHandle[0]);
+        }
+
+        public Object copy(Object object) throws Throwable {
+            Object result = constructor.invokeExact();
+            for (int i = 0; i < getters.length; i++) {
+                setters[i].invokeExact(result, (Object) getters[i].invokeExact(object));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns a shallow copy of the object, or null if it can't be copied.
+     * The constructor and field accessors are resolved once per class, as method handles.
+     */
+    public static <T> T shallowCopy(T object) {
+        try {
+            ShallowCopier copier = cachedCopiers.get(object.getClass());
+            if (copier == null) {
+                copier = new ShallowCopier(object.getClass());
+                cachedCopiers.put(object.getClass(), copier);
+            }
+            return (T) copier.copy(object);
+        }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
+            return null;
+        }
+    }
+
     private static void validateUnsafe() {
         if (UNSAFE == null) {
             try {
@@ -76,12 +76,7 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable {
 
     public static List<CuboidTag> getNotableCuboidsContaining(Location location) {
         List<CuboidTag> cuboids = new ArrayList<>();
-        for (CuboidTag cuboid : NotableManager.getAllType(CuboidTag.class)) {
-            if (cuboid.isInsideCuboid(location)) {
-                cuboids.add(cuboid);
-            }
-        }
-
+        NotableManager.cuboidIndex.findContaining(location, CuboidTag::isInsideCuboid, cuboids);
         return cuboids;
     }
 
@@ -1654,6 +1649,12 @@ public class CuboidTag implements ObjectTag, Cloneable, Notable, Adjustable {
             pairs.remove(member - 1);
         }
 
+        if (mechanism.matches("set_member") || mechanism.matches("add_member") || mechanism.matches("remove_member")) {
+            if (NotableManager.isExactSavedObject(this)) {
+                NotableManager.refreshIndex(this);
+            }
+        }
+
         CoreUtilities.autoPropertyMechanism(this, mechanism);
 
     }
@@ -36,12 +36,7 @@ public class EllipsoidTag implements ObjectTag, Notable {
 
     public static List<EllipsoidTag> getNotableEllipsoidsContaining(Location location) {
         List<EllipsoidTag> ellipsoids = new ArrayList<>();
-        for (EllipsoidTag ellipsoid : NotableManager.getAllType(EllipsoidTag.class)) {
-            if (ellipsoid.contains(location)) {
-                ellipsoids.add(ellipsoid);
-            }
-        }
-
+        NotableManager.ellipsoidIndex.findContaining(location, EllipsoidTag::contains, ellipsoids);
         return ellipsoids;
     }
 
@@ -139,6 +134,14 @@ public class EllipsoidTag implements ObjectTag, Notable {
 
     private LocationTag size;
 
+    public LocationTag getCenter() {
+        return loc;
+    }
+
+    public LocationTag getSize() {
+        return size;
+    }
+
     public ListTag getBlocks(Attribute attribute) {
         return getBlocks(null, attribute);
     }
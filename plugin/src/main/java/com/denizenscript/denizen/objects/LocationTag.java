@@ -6,12 +6,14 @@ import com.denizenscript.denizen.objects.properties.material.MaterialHalf;
 import com.denizenscript.denizen.objects.properties.material.MaterialSwitchFace;
 import com.denizenscript.denizen.objects.properties.material.MaterialPersistent;
 import com.denizenscript.denizen.scripts.commands.world.SwitchCommand;
+import com.denizenscript.denizen.utilities.blocks.BlockSearch;
 import com.denizenscript.denizen.utilities.blocks.MaterialCompat;
 import com.denizenscript.denizen.utilities.world.PathFinder;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.blocks.OldMaterialsHelper;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
+import com.denizenscript.denizen.utilities.entity.EntitySearch;
 import com.denizenscript.denizencore.objects.*;
 import com.denizenscript.denizen.utilities.Settings;
 import com.denizenscript.denizen.nms.NMSHandler;
@@ -788,6 +790,19 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
         return identify();
     }
 
+    /**
+     * Reads the optional '.limit[<#>]' that can follow a 'find' tag's '.within[<#.#>]', returning 0 if none was given.
+     * Should be called after the find type (eg 'entities') has been fulfilled.
+     */
+    public static int getFindLimit(Attribute attribute) {
+        if (attribute.startsWith("limit", 2) && attribute.hasContext(2)) {
+            int limit = attribute.getIntContext(2);
+            attribute.fulfill(1);
+            return limit;
+        }
+        return 0;
+    }
+
     public static void registerTags() {
 
         /////////////////////
@@ -1989,7 +2004,6 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
             // -->
             if (attribute.startsWith("blocks", 2)) {
-                ArrayList<LocationTag> found = new ArrayList<>();
                 List<MaterialTag> materials = new ArrayList<>();
                 if (attribute.hasContext(2)) {
                     materials = ListTag.valueOf(attribute.getContext(2), attribute.context).filter(MaterialTag.class, attribute.context);
@@ -1998,56 +2012,11 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
                 if (materials == null) {
                     return null;
                 }
-                int max = Settings.blockTagsMaxBlocks();
-                int index = 0;
-
                 attribute.fulfill(2);
-                Location tstart = object.getBlockForTag(attribute).getLocation();
-                double tstartY = tstart.getY();
-                int radiusInt = (int) radius;
-
-                fullloop:
-                for (int x = -radiusInt; x <= radiusInt; x++) {
-                    for (int y = -radiusInt; y <= radiusInt; y++) {
-                        double newY = y + tstartY;
-                        if (newY < 0 || newY > 255) {
-                            continue;
-                        }
-                        for (int z = -radiusInt; z <= radiusInt; z++) {
-                            index++;
-                            if (index > max) {
-                                break fullloop;
-                            }
-                            if (Utilities.checkLocation(object, tstart.clone().add(x + 0.5, y + 0.5, z + 0.5), radius)) {
-                                if (!materials.isEmpty()) {
-                                    for (MaterialTag material : materials) {
-                                        if (NMSHandler.getVersion().isAtMost(NMSVersion.v1_12) && material.hasData() && material.getData() != 0) {
-                                            BlockState bs = new LocationTag(tstart.clone().add(x, y, z)).getBlockStateForTag(attribute);
-                                            if (bs != null && material.matchesMaterialData(bs.getData())) {
-                                                found.add(new LocationTag(tstart.clone().add(x, y, z)));
-                                            }
-                                        }
-                                        else if (material.getMaterial() == new LocationTag(tstart.clone().add(x, y, z)).getBlockTypeForTag(attribute)) {
-                                            found.add(new LocationTag(tstart.clone().add(x, y, z)));
-                                        }
-                                    }
-                                }
-                                else {
-                                    found.add(new LocationTag(tstart.clone().add(x, y, z)));
-                                }
-                            }
-                        }
-                    }
+                if (object.getWorld() == null) {
+                    return null;
                 }
-
-                Collections.sort(found, new Comparator<LocationTag>() {
-                    @Override
-                    public int compare(LocationTag loc1, LocationTag loc2) {
-                        return object.compare(loc1, loc2);
-                    }
-                });
-
-                return new ListTag(found);
+                return new ListTag(BlockSearch.findBlocks(object, radius, materials));
             }
 
             // <--[tag]
@@ -2058,7 +2027,6 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
             // -->
             else if (attribute.startsWith("surface_blocks", 2)) {
-                ArrayList<LocationTag> found = new ArrayList<>();
                 List<MaterialTag> materials = new ArrayList<>();
                 if (attribute.hasContext(2)) {
                     materials = ListTag.valueOf(attribute.getContext(2), attribute.context).filter(MaterialTag.class, attribute.context);
@@ -2067,54 +2035,11 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
                 if (materials == null) {
                     return null;
                 }
-                int max = Settings.blockTagsMaxBlocks();
-                int index = 0;
-
                 attribute.fulfill(2);
-                Location blockLoc = object.getBlockLocation();
-                Location loc = blockLoc.clone().add(0.5f, 0.5f, 0.5f);
-
-                fullloop:
-                for (double x = -(radius); x <= radius; x++) {
-                    for (double y = -(radius); y <= radius; y++) {
-                        for (double z = -(radius); z <= radius; z++) {
-                            index++;
-                            if (index > max) {
-                                break fullloop;
-                            }
-                            if (Utilities.checkLocation(loc, blockLoc.clone().add(x + 0.5, y + 0.5, z + 0.5), radius)) {
-                                LocationTag l = new LocationTag(blockLoc.clone().add(x, y, z));
-                                if (!materials.isEmpty()) {
-                                    for (MaterialTag material : materials) {
-                                        if (material.matchesBlock(l.getBlockForTag(attribute))) {
-                                            if (new LocationTag(l.clone().add(0, 1, 0)).getBlockTypeForTag(attribute) == Material.AIR
-                                                    && new LocationTag(l.clone().add(0, 2, 0)).getBlockTypeForTag(attribute) == Material.AIR
-                                                    && l.getBlockTypeForTag(attribute) != Material.AIR) {
-                                                found.add(new LocationTag(blockLoc.clone().add(x + 0.5, y, z + 0.5)));
-                                            }
-                                        }
-                                    }
-                                }
-                                else {
-                                    if (new LocationTag(l.clone().add(0, 1, 0)).getBlockTypeForTag(attribute) == Material.AIR
-                                            && new LocationTag(l.clone().add(0, 2, 0)).getBlockTypeForTag(attribute) == Material.AIR
-                                            && l.getBlockTypeForTag(attribute) != Material.AIR) {
-                                        found.add(new LocationTag(blockLoc.clone().add(x + 0.5, y, z + 0.5)));
-                                    }
-                                }
-                            }
-                        }
-                    }
+                if (object.getWorld() == null) {
+                    return null;
                 }
-
-                Collections.sort(found, new Comparator<LocationTag>() {
-                    @Override
-                    public int compare(LocationTag loc1, LocationTag loc2) {
-                        return object.compare(loc1, loc2);
-                    }
-                });
-
-                return new ListTag(found);
+                return new ListTag(BlockSearch.findSurfaceBlocks(object, radius, materials));
             }
 
             // <--[tag]
@@ -2123,24 +2048,15 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // @description
             // Returns a list of players within a radius.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // Optionally, add '.limit[<#>]' to only return the specified number of closest players.
             // -->
             else if (attribute.startsWith("players", 2)) {
-                ArrayList<PlayerTag> found = new ArrayList<>();
                 attribute.fulfill(2);
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    if (!player.isDead() && Utilities.checkLocation(object, player.getLocation(), radius)) {
-                        found.add(new PlayerTag(player));
-                    }
-                }
-
-                Collections.sort(found, new Comparator<PlayerTag>() {
-                    @Override
-                    public int compare(PlayerTag pl1, PlayerTag pl2) {
-                        return object.compare(pl1.getLocation(), pl2.getLocation());
-                    }
-                });
-
-                return new ListTag(found);
+                int limit = getFindLimit(attribute);
+                return new ListTag(EntitySearch.findNearby(object.getWorld().getPlayers(), object, radius, object, limit, (entity) -> {
+                    Player player = (Player) entity;
+                    return player.isDead() || EntityTag.isNPC(player) ? null : new PlayerTag(player);
+                }));
             }
 
             // <--[tag]
@@ -2149,24 +2065,16 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // @description
             // Returns a list of NPCs within a radius.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // Optionally, add '.limit[<#>]' to only return the specified number of closest NPCs.
             // -->
             else if (attribute.startsWith("npcs", 2)) {
-                ArrayList<NPCTag> found = new ArrayList<>();
                 attribute.fulfill(2);
-                for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                    if (npc.isSpawned() && Utilities.checkLocation(object.getBlockForTag(attribute).getLocation(), npc.getStoredLocation(), radius)) {
-                        found.add(new NPCTag(npc));
-                    }
-                }
-
-                Collections.sort(found, new Comparator<NPCTag>() {
-                    @Override
-                    public int compare(NPCTag npc1, NPCTag npc2) {
-                        return object.compare(npc1.getLocation(), npc2.getLocation());
-                    }
-                });
-
-                return new ListTag(found);
+                int limit = getFindLimit(attribute);
+                Location center = object.getBlockForTag(attribute).getLocation();
+                return new ListTag(EntitySearch.findNearby(center, radius, object, limit, (entity) -> {
+                    NPC npc = CitizensAPI.getNPCRegistry().getNPC(entity);
+                    return npc == null ? null : new NPCTag(npc);
+                }));
             }
 
             // <--[tag]
@@ -2175,36 +2083,24 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // @description
             // Returns a list of entities within a radius, with an optional search parameter for the entity type.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // Optionally, add '.limit[<#>]' to only return the specified number of closest entities.
             // -->
             else if (attribute.startsWith("entities", 2)) {
                 ListTag ent_list = attribute.hasContext(2) ? ListTag.valueOf(attribute.getContext(2), attribute.context) : null;
-                ListTag found = new ListTag();
                 attribute.fulfill(2);
-                for (Entity entity : new WorldTag(object.getWorld()).getEntitiesForTag()) {
-                    if (Utilities.checkLocation(object, entity.getLocation(), radius)) {
-                        EntityTag current = new EntityTag(entity);
-                        if (ent_list != null) {
-                            for (String ent : ent_list) {
-                                if (current.comparedTo(ent)) {
-                                    found.addObject(current.getDenizenObject());
-                                    break;
-                                }
+                int limit = getFindLimit(attribute);
+                return new ListTag(EntitySearch.findNearby(object, radius, object, limit, (entity) -> {
+                    EntityTag current = new EntityTag(entity);
+                    if (ent_list != null) {
+                        for (String ent : ent_list) {
+                            if (current.comparedTo(ent)) {
+                                return current.getDenizenObject();
                             }
                         }
-                        else {
-                            found.addObject(current.getDenizenObject());
-                        }
-                    }
-                }
-
-                Collections.sort(found.objectForms, new Comparator<ObjectTag>() {
-                    @Override
-                    public int compare(ObjectTag ent1, ObjectTag ent2) {
-                        return object.compare(((EntityFormObject) ent1).getLocation(), ((EntityFormObject) ent2).getLocation());
+                        return null;
                     }
-                });
-
-                return new ListTag(found.objectForms);
+                    return current.getDenizenObject();
+                }));
             }
 
             // <--[tag]
@@ -2214,25 +2110,13 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
             // Returns a list of living entities within a radius.
             // This includes Players, mobs, NPCs, etc., but excludes dropped items, experience orbs, etc.
             // Result list is sorted by closeness (1 = closest, 2 = next closest, ... last = farthest).
+            // Optionally, add '.limit[<#>]' to only return the specified number of closest entities.
             // -->
             else if (attribute.startsWith("living_entities", 2)) {
-                ListTag found = new ListTag();
                 attribute.fulfill(2);
-                for (Entity entity : new WorldTag(object.getWorld()).getEntitiesForTag()) {
-                    if (entity instanceof LivingEntity
-                            && Utilities.checkLocation(object, entity.getLocation(), radius)) {
-                        found.addObject(new EntityTag(entity).getDenizenObject());
-                    }
-                }
-
-                Collections.sort(found.objectForms, new Comparator<ObjectTag>() {
-                    @Override
-                    public int compare(ObjectTag ent1, ObjectTag ent2) {
-                        return object.compare(((EntityFormObject) ent1).getLocation(), ((EntityFormObject) ent2).getLocation());
-                    }
-                });
-
-                return new ListTag(found.objectForms);
+                int limit = getFindLimit(attribute);
+                return new ListTag(EntitySearch.findNearby(object, radius, object, limit,
+                        (entity) -> entity instanceof LivingEntity ? new EntityTag(entity).getDenizenObject() : null));
             }
 
             // <--[tag]
@@ -2289,6 +2173,7 @@ public class LocationTag extends org.bukkit.Location implements ObjectTag, Notab
         // @description
         // Returns a full list of points along the path from this location to the given location.
         // Uses a max range of 100 blocks from the start.
+        // For long paths, consider the ~waitable <@link command findpath> command, which searches without holding up the server.
         // -->
         registerTag("find_path", (attribute, object) -> {
             if (!attribute.hasContext(1)) {
@@ -53,8 +53,10 @@ import org.bukkit.util.BlockIterator;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
@@ -86,6 +88,8 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject {
 
     static Map<String, UUID> playerNames = new HashMap<>();
 
+    static Set<UUID> playerUUIDs = new HashSet<>();
+
     /**
      * Notes that the player exists, for easy PlayerTag valueOf handling.
      */
@@ -96,11 +100,16 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject {
         }
         if (!playerNames.containsKey(CoreUtilities.toLowerCase(player.getName()))) {
             playerNames.put(CoreUtilities.toLowerCase(player.getName()), player.getUniqueId());
+            playerUUIDs.add(player.getUniqueId());
         }
     }
 
     public static boolean isNoted(OfflinePlayer player) {
-        return playerNames.containsValue(player.getUniqueId());
+        return isNoted(player.getUniqueId());
+    }
+
+    public static boolean isNoted(UUID uuid) {
+        return playerUUIDs.contains(uuid);
     }
 
     public static Map<String, UUID> getAllPlayers() {
@@ -2450,7 +2459,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject {
             ListTag list = new ListTag();
             FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getOfflinePlayer().getUniqueId());
             if (map != null) {
-                for (LocationTag loc : map.byLocation.keySet()) {
+                for (LocationTag loc : map.getLocations()) {
                     list.addObject(loc.clone());
                 }
             }
@@ -2472,7 +2481,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject {
             LocationTag input = LocationTag.valueOf(attribute.getContext(1));
             FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getOfflinePlayer().getUniqueId());
             if (map != null) {
-                FakeBlock block = map.byLocation.get(input);
+                FakeBlock block = map.get(input);
                 if (block != null) {
                     return block.material;
                 }
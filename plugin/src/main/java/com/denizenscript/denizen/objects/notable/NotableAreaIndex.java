@@ -0,0 +1,133 @@
+package com.denizenscript.denizen.objects.notable;
+
+import org.bukkit.Location;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+/**
+ * A per-world spatial index of noted areas (cuboids, ellipsoids), bucketed by chunk column.
+ * Each area is registered by its block bounds on the X/Z plane. Areas that would span too many
+ * chunks are instead kept in a per-world list that is always checked.
+ */
+public class NotableAreaIndex<T> {
+
+    public static final int MAX_CELLS = 1024;
+
+    public static class WorldIndex<T> {
+
+        public final HashMap<Long, ArrayList<T>> cells = new HashMap<>();
+
+        public final ArrayList<T> large = new ArrayList<>();
+    }
+
+    private static class Registration {
+
+        public String world;
+
+        public long[] cells;
+    }
+
+    public final HashMap<String, WorldIndex<T>> worlds = new HashMap<>();
+
+    private final IdentityHashMap<T, List<Registration>> registrations = new IdentityHashMap<>();
+
+    public static long cellKey(int chunkX, int chunkZ) {
+        return (((long) chunkX) << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Registers an area (or one part of a multi-part area) of the given object.
+     */
+    public void add(T object, String world, int minX, int minZ, int maxX, int maxZ) {
+        WorldIndex<T> index = worlds.computeIfAbsent(world, k -> new WorldIndex<>());
+        Registration registration = new Registration();
+        registration.world = world;
+        int minChunkX = minX >> 4, minChunkZ = minZ >> 4, maxChunkX = maxX >> 4, maxChunkZ = maxZ >> 4;
+        long cellCount = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkZ - minChunkZ + 1);
+        if (cellCount > MAX_CELLS) {
+            index.large.add(object);
+        }
+        else {
+            registration.cells = new long[(int) cellCount];
+            int i = 0;
+            for (int x = minChunkX; x <= maxChunkX; x++) {
+                for (int z = minChunkZ; z <= maxChunkZ; z++) {
+                    long key = cellKey(x, z);
+                    index.cells.computeIfAbsent(key, k -> new ArrayList<>(2)).add(object);
+                    registration.cells[i++] = key;
+                }
+            }
+        }
+        registrations.computeIfAbsent(object, k -> new ArrayList<>(1)).add(registration);
+    }
+
+    public void remove(T object) {
+        List<Registration> objectRegistrations = registrations.remove(object);
+        if (objectRegistrations == null) {
+            return;
+        }
+        for (Registration registration : objectRegistrations) {
+            WorldIndex<T> index = worlds.get(registration.world);
+            if (index == null) {
+                continue;
+            }
+            if (registration.cells == null) {
+                index.large.remove(object);
+                continue;
+            }
+            for (long key : registration.cells) {
+                ArrayList<T> cell = index.cells.get(key);
+                if (cell != null) {
+                    cell.remove(object);
+                    if (cell.isEmpty()) {
+                        index.cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        worlds.clear();
+        registrations.clear();
+    }
+
+    /**
+     * Returns true if any registered area might overlap the given chunk column.
+     */
+    public boolean hasAnyInChunk(String world, int chunkX, int chunkZ) {
+        WorldIndex<T> index = worlds.get(world);
+        if (index == null) {
+            return false;
+        }
+        return !index.large.isEmpty() || index.cells.containsKey(cellKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Adds to the output list every registered object near the location that passes the given test.
+     * The test receives the object and the location, so that a non-capturing method reference can be used.
+     */
+    public void findContaining(Location location, BiPredicate<T, Location> test, List<T> output) {
+        if (location.getWorld() == null) {
+            return;
+        }
+        WorldIndex<T> index = worlds.get(location.getWorld().getName());
+        if (index == null) {
+            return;
+        }
+        ArrayList<T> cell = index.cells.get(cellKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+        if (cell != null) {
+            for (T object : cell) {
+                if (!output.contains(object) && test.test(object, location)) {
+                    output.add(object);
+                }
+            }
+        }
+        for (T object : index.large) {
+            if (!output.contains(object) && test.test(object, location)) {
+                output.add(object);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,78 @@ public class NotableManager {
     public static HashMap<String, Class> typeTracker = new HashMap<>();
     public static HashMap<Notable, String> reverseObjects = new HashMap<>();
 
+    // Unmodifiable, copy-on-write lists of all notables of each type
+    private static HashMap<Class, List> typeLists = new HashMap<>();
+
+    // While notables are being reloaded, the lists of each type are built in place here, and only published once loading is done
+    private static HashMap<Class, ArrayList> loadingTypeLists = null;
+
+    private static void addToTypeList(Notable object) {
+        if (loadingTypeLists != null) {
+            loadingTypeLists.computeIfAbsent(object.getClass(), k -> new ArrayList()).add(object);
+            return;
+        }
+        List current = typeLists.get(object.getClass());
+        ArrayList updated = current == null ? new ArrayList() : new ArrayList(current);
+        updated.add(object);
+        typeLists.put(object.getClass(), Collections.unmodifiableList(updated));
+    }
+
+    private static void removeFromTypeList(Notable object) {
+        List current = loadingTypeLists != null ? loadingTypeLists.get(object.getClass()) : typeLists.get(object.getClass());
+        if (current == null) {
+            return;
+        }
+        ArrayList updated = loadingTypeLists != null ? (ArrayList) current : new ArrayList(current);
+        for (int i = 0; i < updated.size(); i++) {
+            if (updated.get(i) == object) {
+                updated.remove(i);
+                break;
+            }
+        }
+        if (loadingTypeLists != null) {
+            return;
+        }
+        typeLists.put(object.getClass(), Collections.unmodifiableList(updated));
+    }
+
+    public static NotableAreaIndex<CuboidTag> cuboidIndex = new NotableAreaIndex<>();
+    public static NotableAreaIndex<EllipsoidTag> ellipsoidIndex = new NotableAreaIndex<>();
+
+    private static void addToIndex(Notable object) {
+        if (object instanceof CuboidTag) {
+            CuboidTag cuboid = (CuboidTag) object;
+            for (CuboidTag.LocationPair pair : cuboid.pairs) {
+                cuboidIndex.add(cuboid, pair.low.getWorldName(), pair.low.getBlockX(), pair.low.getBlockZ(), pair.high.getBlockX(), pair.high.getBlockZ());
+            }
+        }
+        else if (object instanceof EllipsoidTag) {
+            EllipsoidTag ellipsoid = (EllipsoidTag) object;
+            LocationTag center = ellipsoid.getCenter();
+            LocationTag size = ellipsoid.getSize();
+            ellipsoidIndex.add(ellipsoid, center.getWorldName(),
+                    (int) Math.floor(center.getX() - size.getX()), (int) Math.floor(center.getZ() - size.getZ()),
+                    (int) Math.floor(center.getX() + size.getX()), (int) Math.floor(center.getZ() + size.getZ()));
+        }
+    }
+
+    /**
+     * Re-registers a noted area in the spatial index, for use after its bounds have changed.
+     */
+    public static void refreshIndex(Notable object) {
+        removeFromIndex(object);
+        addToIndex(object);
+    }
+
+    private static void removeFromIndex(Notable object) {
+        if (object instanceof CuboidTag) {
+            cuboidIndex.remove((CuboidTag) object);
+        }
+        else if (object instanceof EllipsoidTag) {
+            ellipsoidIndex.remove((EllipsoidTag) object);
+        }
+    }
+
     public static boolean isSaved(Notable object) {
         return reverseObjects.containsKey(object);
     }
@@ -67,9 +140,15 @@ public class NotableManager {
         if (object == null) {
             return;
         }
-        notableObjects.put(CoreUtilities.toLowerCase(id), object);
+        Notable previous = notableObjects.put(CoreUtilities.toLowerCase(id), object);
+        if (previous != null) {
+            removeFromIndex(previous);
+            removeFromTypeList(previous);
+        }
         reverseObjects.put(object, CoreUtilities.toLowerCase(id));
         typeTracker.put(CoreUtilities.toLowerCase(id), object.getClass());
+        addToIndex(object);
+        addToTypeList(object);
     }
 
     public static Notable remove(String id) {
@@ -80,6 +159,8 @@ public class NotableManager {
         notableObjects.remove(CoreUtilities.toLowerCase(id));
         reverseObjects.remove(obj);
         typeTracker.remove(CoreUtilities.toLowerCase(id));
+        removeFromIndex(obj);
+        removeFromTypeList(obj);
         return obj;
     }
 
@@ -88,18 +169,17 @@ public class NotableManager {
         notableObjects.remove(CoreUtilities.toLowerCase(id));
         reverseObjects.remove(obj);
         typeTracker.remove(CoreUtilities.toLowerCase(id));
+        removeFromIndex(obj);
+        removeFromTypeList(obj);
     }
 
+    /**
+     * Returns an unmodifiable list of all notables of the given type. This does not copy, and the returned list
+     * will not change if notables are later added or removed.
+     */
     public static <T extends ObjectTag> List<T> getAllType(Class<T> type) {
-        List<T> objects = new ArrayList<>();
-        for (Map.Entry<String, Notable> notable : notableObjects.entrySet()) {
-            // dB.log(notable.toString());
-            if (isType(notable.getKey(), type)) {
-                objects.add((T) notable.getValue());
-            }
-        }
-
-        return objects;
+        List<T> objects = typeLists.get(type);
+        return objects == null ? Collections.emptyList() : objects;
     }
 
     /**
@@ -109,6 +189,22 @@ public class NotableManager {
         notableObjects.clear();
         typeTracker.clear();
         reverseObjects.clear();
+        typeLists.clear();
+        cuboidIndex.clear();
+        ellipsoidIndex.clear();
+        loadingTypeLists = new HashMap<>();
+        try {
+            loadNotableSections();
+        }
+        finally {
+            for (Map.Entry<Class, ArrayList> entry : loadingTypeLists.entrySet()) {
+                typeLists.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+            loadingTypeLists = null;
+        }
+    }
+
+    private static void loadNotableSections() {
         // Find each type of notable
         for (String key : DenizenAPI.getCurrentInstance().notableManager().getNotables().getKeys(false)) {
             Class<? extends ObjectTag> clazz = reverse_objects.get(key);
@@ -1,5 +1,6 @@
 package com.denizenscript.denizen.scripts.commands.core;
 
+import com.denizenscript.denizen.flags.FlagManager;
 import com.denizenscript.denizen.utilities.DenizenAPI;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizen.utilities.debugging.Debug;
@@ -136,6 +137,7 @@ public class ResetCommand extends AbstractCommand {
                         return;
 
                     case SAVES:
+                        FlagManager.clearPlayerFlags(resettable);
                         DenizenAPI.getCurrentInstance().getSaves().set("Players." + resettable.getSaveName(), null);
                 }
             }
@@ -25,15 +25,15 @@ public class MapCommand extends AbstractCommand {
 
     public MapCommand() {
         setName("map");
-        setSyntax("map [<#>/new:<world>] [reset:<location>/image:<file> (resize)/script:<script>] (x:<#>) (y:<#>)");
-        setRequiredArguments(2, 5);
+        setSyntax("map [<#>/new:<world>] [reset:<location>/image:<file> (resize) (dither)/script:<script>] (x:<#>) (y:<#>)");
+        setRequiredArguments(2, 6);
     }
 
     // <--[command]
     // @Name Map
-    // @Syntax map [<#>/new:<world>] [reset:<location>/image:<file> (resize)/script:<script>] (x:<#>) (y:<#>)
+    // @Syntax map [<#>/new:<world>] [reset:<location>/image:<file> (resize) (dither)/script:<script>] (x:<#>) (y:<#>)
     // @Required 2
-    // @Maximum 5
+    // @Maximum 6
     // @Short Modifies a new or existing map by adding images or text.
     // @Group item
     //
@@ -49,6 +49,7 @@ public class MapCommand extends AbstractCommand {
     // The file path is relative to the 'plugins/Denizen/images/' folder.
     // Instead of a local file path, an http(s) URL can be used, which will automatically download the image from the URL given.
     // If the file path points to a .gif, the map will automatically be animated.
+    // Use 'dither' to convert the image with Floyd-Steinberg dithering, which gives smoother gradients with the limited map colors.
     //
     // Use escaping to let the image and text arguments have tags based on the player viewing the map.
     //
@@ -99,6 +100,10 @@ public class MapCommand extends AbstractCommand {
                     && arg.matches("resize")) {
                 scriptEntry.addObject("resize", new ElementTag(true));
             }
+            else if (!scriptEntry.hasObject("dither")
+                    && arg.matches("dither")) {
+                scriptEntry.addObject("dither", new ElementTag(true));
+            }
             else if (!scriptEntry.hasObject("width")
                     && arg.matchesPrefix("width")
                     && arg.matchesInteger()) {
@@ -143,6 +148,7 @@ public class MapCommand extends AbstractCommand {
         }
 
         scriptEntry.defaultObject("reset", new ElementTag(false)).defaultObject("resize", new ElementTag(false))
+                .defaultObject("dither", new ElementTag(false))
                 .defaultObject("x-value", new ElementTag(0)).defaultObject("y-value", new ElementTag(0));
 
     }
@@ -157,6 +163,7 @@ public class MapCommand extends AbstractCommand {
         ElementTag image = scriptEntry.getElement("image");
         ScriptTag script = scriptEntry.getObjectTag("script");
         ElementTag resize = scriptEntry.getElement("resize");
+        ElementTag dither = scriptEntry.getElement("dither");
         ElementTag width = scriptEntry.getElement("width");
         ElementTag height = scriptEntry.getElement("height");
         ElementTag x = scriptEntry.getElement("x-value");
@@ -166,7 +173,7 @@ public class MapCommand extends AbstractCommand {
 
             Debug.report(scriptEntry, getName(), (id != null ? id.debug() : "") + (create != null ? create.debug() : "")
                     + reset.debug() + (resetLoc != null ? resetLoc.debug() : "") + (image != null ? image.debug() : "")
-                    + (script != null ? script.debug() : "") + resize.debug() + (width != null ? width.debug() : "")
+                    + (script != null ? script.debug() : "") + resize.debug() + dither.debug() + (width != null ? width.debug() : "")
                     + (height != null ? height.debug() : "") + x.debug() + y.debug());
 
         }
@@ -208,15 +215,18 @@ public class MapCommand extends AbstractCommand {
             if (image != null) {
                 int wide = width != null ? width.asInt() : resize.asBoolean() ? 128 : 0;
                 int high = height != null ? height.asInt() : resize.asBoolean() ? 128 : 0;
+                MapImage mapImage;
                 if (CoreUtilities.toLowerCase(image.asString()).endsWith(".gif")) {
                     dmr.autoUpdate = true;
-                    dmr.addObject(new MapAnimatedImage(x.asString(), y.asString(), "true", false, image.asString(),
-                            wide, high));
+                    mapImage = new MapAnimatedImage(x.asString(), y.asString(), "true", false, image.asString(),
+                            wide, high);
                 }
                 else {
-                    dmr.addObject(new MapImage(x.asString(), y.asString(), "true", false, image.asString(),
-                            wide, high));
+                    mapImage = new MapImage(x.asString(), y.asString(), "true", false, image.asString(),
+                            wide, high);
                 }
+                mapImage.dither = dither.asBoolean();
+                dmr.addObject(mapImage);
             }
         }
 
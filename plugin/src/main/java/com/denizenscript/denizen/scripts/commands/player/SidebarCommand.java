@@ -17,16 +17,13 @@ import com.denizenscript.denizencore.scripts.ScriptEntry;
 import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
 import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.tags.TagManager;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerQuitEvent;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
 public class SidebarCommand extends AbstractCommand {
 
@@ -71,6 +68,9 @@ public class SidebarCommand extends AbstractCommand {
     // on each individual player in the players list. So, for example, you could have <player.name> on a
     // lines and it will show each player specified their name on that line.
     //
+    // Changes are sent to players at the start of the next tick, and only the lines that changed are sent,
+    // so a sidebar can be set often (even with mostly unchanged lines) without much network cost.
+    //
     // @Tags
     // <PlayerTag.sidebar_lines>
     // <PlayerTag.sidebar_title>
@@ -299,7 +299,7 @@ public class SidebarCommand extends AbstractCommand {
                         current.addAll(value);
                     }
                     sidebar.setLines(current);
-                    sidebar.sendUpdate();
+                    queueUpdate(sidebar);
                 }
                 break;
 
@@ -338,7 +338,7 @@ public class SidebarCommand extends AbstractCommand {
                             continue;
                         }
                         sidebar.setLines(current);
-                        sidebar.sendUpdate();
+                        queueUpdate(sidebar);
                     }
                     else if (value != null) {
                         try {
@@ -364,9 +364,10 @@ public class SidebarCommand extends AbstractCommand {
                             continue;
                         }
                         sidebar.setLines(current);
-                        sidebar.sendUpdate();
+                        queueUpdate(sidebar);
                     }
                     else {
+                        pendingUpdates.remove(sidebar);
                         sidebar.remove();
                         sidebars.remove(player.getPlayerEntity().getUniqueId());
                     }
@@ -441,7 +442,8 @@ public class SidebarCommand extends AbstractCommand {
                     if (currEdited) {
                         sidebar.setLines(current);
                     }
-                    sidebar.sendUpdate();
+                    sidebar.refreshDisplay();
+                    queueUpdate(sidebar);
                 }
                 break;
         }
@@ -449,6 +451,24 @@ public class SidebarCommand extends AbstractCommand {
 
     private static final Map<UUID, Sidebar> sidebars = new HashMap<>();
 
+    // Sidebars changed this tick, sent together at the next tick so that several changes to one sidebar only send one diff
+    private static final Set<Sidebar> pendingUpdates = new LinkedHashSet<>();
+
+    private static void queueUpdate(Sidebar sidebar) {
+        if (pendingUpdates.isEmpty()) {
+            Bukkit.getScheduler().runTask(DenizenAPI.getCurrentInstance(), SidebarCommand::sendPendingUpdates);
+        }
+        pendingUpdates.add(sidebar);
+    }
+
+    private static void sendPendingUpdates() {
+        List<Sidebar> toSend = new ArrayList<>(pendingUpdates);
+        pendingUpdates.clear();
+        for (Sidebar sidebar : toSend) {
+            sidebar.sendUpdate();
+        }
+    }
+
     private static Sidebar createSidebar(PlayerTag denizenPlayer) {
         if (!denizenPlayer.isOnline()) {
             return null;
@@ -472,7 +492,10 @@ public class SidebarCommand extends AbstractCommand {
         @EventHandler
         public void onPlayerQuit(PlayerQuitEvent event) {
             UUID uuid = event.getPlayer().getUniqueId();
-            sidebars.remove(uuid);
+            Sidebar sidebar = sidebars.remove(uuid);
+            if (sidebar != null) {
+                pendingUpdates.remove(sidebar);
+            }
         }
     }
 }
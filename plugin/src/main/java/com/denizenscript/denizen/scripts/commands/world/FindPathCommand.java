@@ -0,0 +1,110 @@
+package com.denizenscript.denizen.scripts.commands.world;
+
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizen.utilities.world.PathFinder;
+import com.denizenscript.denizencore.exceptions.InvalidArgumentsException;
+import com.denizenscript.denizencore.objects.Argument;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.scripts.ScriptEntry;
+import com.denizenscript.denizencore.scripts.commands.AbstractCommand;
+import com.denizenscript.denizencore.scripts.commands.Holdable;
+import org.bukkit.Bukkit;
+
+public class FindPathCommand extends AbstractCommand implements Holdable {
+
+    public FindPathCommand() {
+        setName("findpath");
+        setSyntax("findpath [<location>] [destination:<location>]");
+        setRequiredArguments(2, 2);
+    }
+
+    // <--[command]
+    // @Name FindPath
+    // @Syntax findpath [<location>] [destination:<location>]
+    // @Required 2
+    // @Maximum 2
+    // @Short Finds a walkable path between two locations, without stalling the server.
+    // @Group world
+    //
+    // @Description
+    // Finds a walkable path from a location to a destination, the same way as <@link tag LocationTag.find_path>,
+    // but searches on another thread so that long searches don't hold up the server.
+    // Chunks that the search needs are read on the main thread a few at a time, so a search may take several ticks.
+    //
+    // The findpath command is ~waitable. Refer to <@link language ~waitable>.
+    // Wait for the command to finish before using its result.
+    //
+    // @Tags
+    // <entry[saveName].path> returns a ListTag of the locations along the path (empty if no path was found).
+    // <LocationTag.find_path[<location>]>
+    //
+    // @Usage
+    // Use to find a path to the player, then make the NPC walk it.
+    // - ~findpath <npc.location> destination:<player.location> save:route
+    // - foreach <entry[route].path> as:point:
+    //   - ~walk <npc> <[point]>
+    // -->
+
+    @Override
+    public void parseArgs(ScriptEntry scriptEntry) throws InvalidArgumentsException {
+
+        for (Argument arg : scriptEntry.getProcessedArgs()) {
+
+            if (!scriptEntry.hasObject("destination")
+                    && arg.matchesPrefix("destination", "dest")
+                    && arg.matchesArgumentType(LocationTag.class)) {
+                scriptEntry.addObject("destination", arg.asType(LocationTag.class));
+            }
+            else if (!scriptEntry.hasObject("location")
+                    && arg.matchesArgumentType(LocationTag.class)) {
+                scriptEntry.addObject("location", arg.asType(LocationTag.class));
+            }
+            else {
+                arg.reportUnhandled();
+            }
+        }
+
+        if (!scriptEntry.hasObject("location")) {
+            throw new InvalidArgumentsException("Must specify a start location!");
+        }
+        if (!scriptEntry.hasObject("destination")) {
+            throw new InvalidArgumentsException("Must specify a destination!");
+        }
+    }
+
+    @Override
+    public void execute(final ScriptEntry scriptEntry) {
+
+        LocationTag location = (LocationTag) scriptEntry.getObject("location");
+        LocationTag destination = (LocationTag) scriptEntry.getObject("destination");
+
+        if (scriptEntry.dbCallShouldDebug()) {
+            Debug.report(scriptEntry, getName(), location.debug() + destination.debug());
+        }
+
+        if (location.getWorld() == null || location.getWorld() != destination.getWorld()) {
+            Debug.echoError(scriptEntry.getResidingQueue(), "Cannot find a path between different worlds!");
+            scriptEntry.addObject("path", new ListTag());
+            scriptEntry.setFinished(true);
+            return;
+        }
+
+        PathFinder.getPathAsync(location, destination).whenComplete((path, ex) -> {
+            Bukkit.getScheduler().runTask(DenizenAPI.getCurrentInstance(), () -> {
+                ListTag result = new ListTag();
+                if (ex != null) {
+                    Debug.echoError(scriptEntry.getResidingQueue(), ex);
+                }
+                else {
+                    for (LocationTag point : path) {
+                        result.addObject(point);
+                    }
+                }
+                scriptEntry.addObject("path", result);
+                scriptEntry.setFinished(true);
+            });
+        });
+    }
+}
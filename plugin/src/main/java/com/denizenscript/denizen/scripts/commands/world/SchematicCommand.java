@@ -82,7 +82,8 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
     //
     // The "delayed" option makes the command non-instant. This is recommended for large schematics.
     // For 'save', 'load', and 'rotate', this processes async to prevent server lockup.
-    // For 'paste' and 'create', this delays how many blocks can be processed at once, spread over many ticks.
+    // For 'create', this takes a snapshot of each chunk in the cuboid, and reads the blocks from the snapshots async.
+    // For 'paste', this delays how many blocks can be processed at once, spread over many ticks.
     //
     // The "load" option by default will load '.schem' files. If no '.schem' file is available, will attempt to load a legacy '.schematic' file instead.
     // The "save" option will save to '.schem' files, unless you are on MC 1.12.2 (in which case it will save legacy '.schematic' files).
@@ -264,10 +265,15 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                 try {
                     if (delayed != null && delayed.asBoolean()) {
                         set = new CuboidBlockSet();
-                        set.buildDelayed(cuboid, location, () -> {
+                        set.buildFromSnapshots(cuboid, location, () -> {
                             schematics.put(name.asString().toUpperCase(), set);
                             scriptEntry.setFinished(true);
+                        }, (ex) -> {
+                            Debug.echoError(scriptEntry.getResidingQueue(), "Error creating schematic object " + name.asString() + ".");
+                            Debug.echoError(scriptEntry.getResidingQueue(), ex);
+                            scriptEntry.setFinished(true);
                         });
+                        return;
                     }
                     else {
                         scriptEntry.setFinished(true);
@@ -278,6 +284,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
                 catch (Exception ex) {
                     Debug.echoError(scriptEntry.getResidingQueue(), "Error creating schematic object " + name.asString() + ".");
                     Debug.echoError(scriptEntry.getResidingQueue(), ex);
+                    scriptEntry.setFinished(true);
                     return;
                 }
                 scriptEntry.setFinished(true);
@@ -596,7 +603,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         if (attribute.startsWith("block")) {
             if (attribute.hasContext(1) && LocationTag.matches(attribute.getContext(1))) {
                 LocationTag location = LocationTag.valueOf(attribute.getContext(1));
-                BlockData block = set.blockAt(location.getX(), location.getY(), location.getZ());
+                BlockData block = set.blockAt(location.getBlockX(), location.getBlockY(), location.getBlockZ());
                 event.setReplaced(new MaterialTag(block)
                         .getAttribute(attribute.fulfill(1)));
                 return;
@@ -622,7 +629,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         // Returns the number of blocks in the schematic.
         // -->
         if (attribute.startsWith("blocks")) {
-            event.setReplaced(new ElementTag(set.blocks.length)
+            event.setReplaced(new ElementTag(set.getBlockCount())
                     .getAttribute(attribute.fulfill(1)));
             return;
         }
@@ -18,10 +18,12 @@ import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.Deprecations;
 import com.denizenscript.denizencore.utilities.YamlConfiguration;
 import com.denizenscript.denizencore.utilities.text.StringHolder;
+import com.google.common.collect.MapMaker;
 import org.bukkit.*;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.inventory.*;
+import org.bukkit.inventory.meta.ItemMeta;
 
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
@@ -273,6 +275,7 @@ public class ItemScriptHelper implements Listener {
 
     @EventHandler
     public void scriptReload(ScriptReloadEvent event) {
+        containersByNbt.clear();
         rebuildRecipes();
     }
 
@@ -280,18 +283,40 @@ public class ItemScriptHelper implements Listener {
         return getItemScriptContainer(item) != null;
     }
 
+    // Stands in for 'no item script' in containersByNbt, which can't hold nulls
+    private static final Object NO_CONTAINER = new Object();
+
+    // Item NBT compounds (compared by identity, and weakly held) to the item script they were found to belong to
+    private static final Map<Object, Object> containersByNbt = new MapMaker().weakKeys().makeMap();
+
     public static ItemScriptContainer getItemScriptContainer(ItemStack item) {
-        if (item == null) {
+        if (item == null || !item.hasItemMeta()) {
             return null;
         }
-        String nbt = NMSHandler.getItemHelper().getNbtData(item).getString("Denizen Item Script");
-        if (nbt != null && !nbt.equals("")) {
+        Object nbtIdentity = NMSHandler.getItemHelper().getNbtIdentity(item);
+        if (nbtIdentity != null) {
+            Object cached = containersByNbt.get(nbtIdentity);
+            if (cached != null) {
+                return cached == NO_CONTAINER ? null : (ItemScriptContainer) cached;
+            }
+        }
+        ItemScriptContainer container = findItemScriptContainer(item);
+        if (nbtIdentity != null) {
+            containersByNbt.put(nbtIdentity, container == null ? NO_CONTAINER : container);
+        }
+        return container;
+    }
+
+    private static ItemScriptContainer findItemScriptContainer(ItemStack item) {
+        String nbt = NMSHandler.getItemHelper().getNbtString(item, "Denizen Item Script");
+        if (nbt != null) {
             return item_scripts_by_hash_id.get(nbt);
         }
-        if (!item.hasItemMeta() || !item.getItemMeta().hasLore()) {
+        ItemMeta meta = item.getItemMeta();
+        if (!meta.hasLore()) {
             return null;
         }
-        for (String itemLore : item.getItemMeta().getLore()) {
+        for (String itemLore : meta.getLore()) {
             if (itemLore.startsWith(ItemTag.itemscriptIdentifier)) {
                 return item_scripts.get(itemLore.replace(ItemTag.itemscriptIdentifier, ""));
             }
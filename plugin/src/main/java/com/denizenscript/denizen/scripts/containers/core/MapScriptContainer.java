@@ -57,6 +57,7 @@ public class MapScriptContainer extends ScriptContainer {
     //       # Specify an HTTP url or file path within Denizen/images/ for the image. Supports animated .gif!
     //       image: my_image.png
     //       # Optionally add width/height numbers.
+    //       # Optionally specify 'dither: true' to convert the image with Floyd-Steinberg dithering, for smoother gradients.
     //
     //     2:
     //       type: text
@@ -116,12 +117,15 @@ public class MapScriptContainer extends ScriptContainer {
                     String image = objectSection.getString("image");
                     int width = Integer.parseInt(objectSection.getString("width", "0"));
                     int height = Integer.parseInt(objectSection.getString("height", "0"));
+                    MapImage mapImage;
                     if (CoreUtilities.toLowerCase(image).endsWith(".gif")) {
-                        renderer.addObject(new MapAnimatedImage(x, y, visible, debug, image, width, height));
+                        mapImage = new MapAnimatedImage(x, y, visible, debug, image, width, height);
                     }
                     else {
-                        renderer.addObject(new MapImage(x, y, visible, debug, image, width, height));
+                        mapImage = new MapImage(x, y, visible, debug, image, width, height);
                     }
+                    mapImage.dither = objectSection.getString("dither", "false").equalsIgnoreCase("true");
+                    renderer.addObject(mapImage);
                 }
                 else if (type.equals("text")) {
                     if (!objectSection.contains("text")) {
@@ -1,5 +1,6 @@
 package com.denizenscript.denizen.scripts.triggers.core;
 
+import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
 import com.denizenscript.denizen.scripts.containers.core.InteractScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.InteractScriptHelper;
 import com.denizenscript.denizen.utilities.DenizenAPI;
@@ -87,9 +88,33 @@ public class ChatTrigger extends AbstractTrigger implements Listener {
     //
     // -->
 
+    int taskID = -1;
+
     @Override
     public void onEnable() {
         Bukkit.getServer().getPluginManager().registerEvents(this, DenizenAPI.getCurrentInstance());
+        taskID = Bukkit.getScheduler().scheduleSyncRepeatingTask(DenizenAPI.getCurrentInstance(), new Runnable() {
+            @Override
+            public void run() {
+                if (Settings.chatAsynchronous() && Settings.chatNonBlocking()) {
+                    ChatTriggerPrefilter.update(name);
+                }
+                else {
+                    ChatTriggerPrefilter.clear();
+                }
+            }
+        }, 1, 1);
+    }
+
+    @Override
+    public void onDisable() {
+        Bukkit.getScheduler().cancelTask(taskID);
+        ChatTriggerPrefilter.clear();
+    }
+
+    @EventHandler
+    public void onScriptReload(ScriptReloadEvent event) {
+        ChatTriggerPrefilter.clearScripts();
     }
 
     // Technically defined in TriggerTrait, but placing here instead.
@@ -392,6 +417,10 @@ public class ChatTrigger extends AbstractTrigger implements Listener {
             syncChatTrigger(new PlayerChatEvent(event.getPlayer(), event.getMessage(), event.getFormat(), event.getRecipients()));
             return;
         }
+        if (Settings.chatNonBlocking()) {
+            nonBlockingChatTrigger(event);
+            return;
+        }
         FutureTask<ChatContext> futureTask = new FutureTask<>(new Callable<ChatContext>() {
             @Override
             public ChatContext call() {
@@ -415,6 +444,64 @@ public class ChatTrigger extends AbstractTrigger implements Listener {
         }
     }
 
+    /**
+     * Handles an asynchronous chat event without waiting for the main thread.
+     * The prefilter decides whether the chat trigger would take the message: if so, the message is cancelled right away and
+     * processed on the main thread, then sent on as normal chat if nothing took it after all.
+     * Otherwise the message goes through untouched, and is only processed on the main thread for the NPC's chat action
+     * (whose determinations can't change the message anymore by then).
+     */
+    public void nonBlockingChatTrigger(final AsyncPlayerChatEvent event) {
+        final Player player = event.getPlayer();
+        final String message = event.getMessage();
+        ChatTriggerPrefilter.NPCEntry npc = ChatTriggerPrefilter.findNPC(player.getUniqueId());
+        // Without an NPC that could be triggered, processing the message would have no effect
+        if (npc == null || !npc.enabled || !ChatTriggerPrefilter.isInRange(npc, player.getUniqueId())) {
+            return;
+        }
+        ChatTriggerPrefilter.KeywordTable keywords = ChatTriggerPrefilter.getKeywordTable(npc.interactScript);
+        final boolean capture = keywords != null && (keywords.mightMatch(message)
+                || (keywords.hasChatTriggers && !Settings.chatGloballyIfFailedChatTriggers())
+                || !Settings.chatGloballyIfUninteractable());
+        final String format = event.getFormat();
+        final Set<Player> recipients = capture ? new HashSet<>(event.getRecipients()) : null;
+        if (capture) {
+            event.setCancelled(true);
+        }
+        Bukkit.getScheduler().runTask(DenizenAPI.getCurrentInstance(), new Runnable() {
+            @Override
+            public void run() {
+                if (!player.isOnline()) {
+                    return;
+                }
+                ChatContext context = process(player, message);
+                if (capture && !context.wasTriggered()) {
+                    resendChat(player, context.hasChanges() ? context.getChanges() : message, format, recipients);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends a chat message the same way the server would have if the chat event wasn't cancelled.
+     */
+    public void resendChat(Player player, String message, String format, Set<Player> recipients) {
+        String formatted;
+        try {
+            formatted = String.format(format, player.getDisplayName(), message);
+        }
+        catch (IllegalFormatException ex) {
+            Debug.echoError(ex);
+            return;
+        }
+        for (Player recipient : recipients) {
+            if (recipient.isOnline()) {
+                recipient.sendMessage(formatted);
+            }
+        }
+        Bukkit.getConsoleSender().sendMessage(formatted);
+    }
+
     @EventHandler
     public void syncChatTrigger(final PlayerChatEvent event) {
         if (event.isCancelled()) {
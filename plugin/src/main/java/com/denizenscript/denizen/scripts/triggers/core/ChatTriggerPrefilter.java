@@ -0,0 +1,277 @@
+package com.denizenscript.denizen.scripts.triggers.core;
+
+import com.denizenscript.denizen.npc.traits.AssignmentTrait;
+import com.denizenscript.denizen.npc.traits.TriggerTrait;
+import com.denizenscript.denizen.scripts.containers.core.AssignmentScriptContainer;
+import com.denizenscript.denizen.scripts.containers.core.InteractScriptContainer;
+import com.denizenscript.denizen.utilities.debugging.Debug;
+import com.denizenscript.denizencore.scripts.ScriptRegistry;
+import com.denizenscript.denizencore.scripts.containers.ScriptContainer;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.npc.NPC;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Lets the asynchronous chat thread decide whether a message might fire a chat trigger, without touching server state.
+ * Works from a snapshot of chat trigger NPCs and player positions that is rebuilt on the main thread every tick,
+ * and from keyword tables compiled from interact scripts once per script reload.
+ * The snapshot and tables are immutable once published, so they can be read from any thread.
+ */
+public class ChatTriggerPrefilter {
+
+    /**
+     * The keywords from every step of an interact script's chat triggers.
+     * Covering every step means a table may match a message that the player's current step wouldn't, but never the other way around.
+     */
+    public static class KeywordTable {
+
+        public boolean hasChatTriggers = false;
+
+        // True if a trigger uses tags or '*', so any message might match
+        public boolean matchesAnything = false;
+
+        public final List<String> keywords = new ArrayList<>();
+
+        public final List<Pattern> patterns = new ArrayList<>();
+
+        public boolean mightMatch(String message) {
+            if (matchesAnything) {
+                return true;
+            }
+            String messageLow = CoreUtilities.toLowerCase(message);
+            for (String keyword : keywords) {
+                if (messageLow.contains(keyword)) {
+                    return true;
+                }
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(message).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static class Position {
+
+        public final UUID world;
+
+        public final double x, y, z;
+
+        public Position(Location location) {
+            this.world = location.getWorld().getUID();
+            this.x = location.getX();
+            this.y = location.getY();
+            this.z = location.getZ();
+        }
+
+        public double distanceSquared(Position other) {
+            double dx = x - other.x, dy = y - other.y, dz = z - other.z;
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    public static class NPCEntry extends Position {
+
+        public final boolean enabled;
+
+        public final double radius;
+
+        public final String interactScript;
+
+        public NPCEntry(Location location, boolean enabled, double radius, String interactScript) {
+            super(location);
+            this.enabled = enabled;
+            this.radius = radius;
+            this.interactScript = interactScript;
+        }
+    }
+
+    private static class Snapshot {
+
+        public final List<NPCEntry> npcs;
+
+        public final Map<UUID, Position> players;
+
+        public Snapshot(List<NPCEntry> npcs, Map<UUID, Position> players) {
+            this.npcs = npcs;
+            this.players = players;
+        }
+    }
+
+    private static volatile Snapshot snapshot = null;
+
+    private static volatile Map<String, KeywordTable> keywordTables = null;
+
+    // Main thread only
+    private static final Map<String, String> interactScriptByAssignment = new HashMap<>();
+
+    public static void clearScripts() {
+        keywordTables = null;
+        interactScriptByAssignment.clear();
+    }
+
+    public static void clear() {
+        snapshot = null;
+    }
+
+    /**
+     * Rebuilds the snapshot. Must be called on the main thread.
+     */
+    public static void update(String triggerName) {
+        if (keywordTables == null) {
+            keywordTables = compileKeywordTables(triggerName);
+        }
+        List<NPCEntry> npcs = new ArrayList<>();
+        for (NPC npc : CitizensAPI.getNPCRegistry()) {
+            if (!npc.isSpawned() || !npc.hasTrait(TriggerTrait.class)) {
+                continue;
+            }
+            TriggerTrait trait = npc.getTrait(TriggerTrait.class);
+            if (!trait.hasTrigger(triggerName)) {
+                continue;
+            }
+            npcs.add(new NPCEntry(npc.getStoredLocation(), trait.isEnabled(triggerName), trait.getRadius(triggerName), getInteractScriptName(npc)));
+        }
+        Map<UUID, Position> players = new HashMap<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            players.put(player.getUniqueId(), new Position(player.getLocation()));
+        }
+        snapshot = new Snapshot(npcs, players);
+    }
+
+    /**
+     * Returns the nearest chat trigger NPC within 25 blocks of the player (the same NPC the chat trigger itself would pick),
+     * or null if there is none or no snapshot is available.
+     */
+    public static NPCEntry findNPC(UUID player) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        Position position = current.players.get(player);
+        if (position == null) {
+            return null;
+        }
+        NPCEntry closest = null;
+        double closestDistance = 25 * 25;
+        for (NPCEntry npc : current.npcs) {
+            if (npc.world.equals(position.world)) {
+                double distance = npc.distanceSquared(position);
+                if (distance < closestDistance) {
+                    closest = npc;
+                    closestDistance = distance;
+                }
+            }
+        }
+        return closest;
+    }
+
+    public static boolean isInRange(NPCEntry npc, UUID player) {
+        Snapshot current = snapshot;
+        Position position = current == null ? null : current.players.get(player);
+        return position != null && npc.radius >= 0 && npc.distanceSquared(position) <= npc.radius * npc.radius;
+    }
+
+    public static KeywordTable getKeywordTable(String interactScript) {
+        Map<String, KeywordTable> tables = keywordTables;
+        if (tables == null || interactScript == null) {
+            return null;
+        }
+        return tables.get(CoreUtilities.toLowerCase(interactScript));
+    }
+
+    private static String getInteractScriptName(NPC npc) {
+        if (!npc.hasTrait(AssignmentTrait.class)) {
+            return null;
+        }
+        AssignmentScriptContainer assignment = npc.getTrait(AssignmentTrait.class).getAssignment();
+        if (assignment == null) {
+            return null;
+        }
+        if (interactScriptByAssignment.containsKey(assignment.getName())) {
+            return interactScriptByAssignment.get(assignment.getName());
+        }
+        // Same selection as InteractScriptHelper.getInteractScript, minus the debug output
+        String script = null;
+        if (assignment.contains("interact scripts")) {
+            List<String> assignedScripts = assignment.getStringList("interact scripts");
+            if (!assignedScripts.isEmpty()) {
+                script = assignedScripts.get(0);
+                if (script.contains(" ") && Character.isDigit(script.charAt(0))) {
+                    script = script.split(" ", 2)[1].replace("^", "");
+                }
+            }
+        }
+        interactScriptByAssignment.put(assignment.getName(), script);
+        return script;
+    }
+
+    private static Map<String, KeywordTable> compileKeywordTables(String triggerName) {
+        Map<String, KeywordTable> tables = new HashMap<>();
+        for (ScriptContainer container : ScriptRegistry.scriptContainers.values()) {
+            if (!(container instanceof InteractScriptContainer)) {
+                continue;
+            }
+            KeywordTable table = new KeywordTable();
+            for (String step : ((InteractScriptContainer) container).getStepNames()) {
+                String keyBase = "steps." + step + "." + triggerName + " trigger";
+                if (!container.contains(keyBase)) {
+                    continue;
+                }
+                table.hasChatTriggers = true;
+                for (StringHolder id : container.getConfigurationSection(keyBase).getKeys(false)) {
+                    if (!id.str.equalsIgnoreCase("script")) {
+                        addKeywords(table, container.getString(keyBase + "." + id.str + ".trigger", ""));
+                    }
+                }
+            }
+            tables.put(CoreUtilities.toLowerCase(container.getName()), table);
+        }
+        return tables;
+    }
+
+    private static void addKeywords(KeywordTable table, String triggerText) {
+        if (triggerText.contains("<")) {
+            // Tags are filled in per player, so the keywords aren't known ahead of time
+            table.matchesAnything = true;
+            return;
+        }
+        Matcher matcher = ChatTrigger.triggerPattern.matcher(triggerText);
+        while (matcher.find()) {
+            String keyword = matcher.group().replace("/", "").split("\\\\\\+REPLACE:", 2)[0];
+            String keywordLow = CoreUtilities.toLowerCase(keyword);
+            if (keywordLow.startsWith("regex:")) {
+                try {
+                    table.patterns.add(Pattern.compile(keyword.substring("regex:".length())));
+                }
+                catch (PatternSyntaxException ex) {
+                    Debug.echoError(ex);
+                    table.matchesAnything = true;
+                }
+            }
+            else if (keyword.contains("|")) {
+                table.keywords.addAll(CoreUtilities.split(keywordLow, '|'));
+            }
+            else if (keyword.equals("*")) {
+                table.matchesAnything = true;
+            }
+            else if (keywordLow.startsWith("strict:")) {
+                table.keywords.add(keywordLow.substring("strict:".length()));
+            }
+            else {
+                table.keywords.add(keywordLow);
+            }
+        }
+    }
+}
@@ -1,17 +1,22 @@
 package com.denizenscript.denizen.scripts.triggers.core;
 
+import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
 import com.denizenscript.denizen.scripts.containers.core.InteractScriptContainer;
+import com.denizenscript.denizen.utilities.Settings;
 import com.denizenscript.denizen.utilities.DenizenAPI;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.npc.traits.TriggerTrait;
 import com.denizenscript.denizen.objects.NPCTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.scripts.triggers.AbstractTrigger;
+import com.denizenscript.denizencore.scripts.ScriptRegistry;
+import com.denizenscript.denizencore.scripts.containers.ScriptContainer;
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.npc.NPC;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 
 import java.util.*;
@@ -86,170 +91,286 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     // -->
     int taskID = -1;
 
+    private static class PlayerEntry {
+
+        public final Player player;
+
+        public final Location location;
+
+        public PlayerEntry(Player player, Location location) {
+            this.player = player;
+            this.location = location;
+        }
+    }
+
+    private static final int CYCLE_TICKS = 5;
+
+    private static final String[] RADIUS_OPTIONS = new String[] {"ENTRY RADIUS", "EXIT RADIUS", "MOVE RADIUS"};
+
+    // NPCs with the trigger enabled, collected at the start of each cycle and evaluated a few per tick
+    private final List<NPC> cycleNPCs = new ArrayList<>();
+
+    private int cycleIndex = 0;
+
+    private int ticksSinceCycleStart = 0;
+
+    // The largest radius option set in any interact script, or -1 if it needs to be recalculated
+    private double maxScriptRadius = -1;
+
+    @EventHandler
+    public void onScriptReload(ScriptReloadEvent event) {
+        maxScriptRadius = -1;
+    }
+
+    public double getMaxScriptRadius() {
+        if (maxScriptRadius < 0) {
+            double max = 0;
+            for (ScriptContainer container : ScriptRegistry.scriptContainers.values()) {
+                if (!(container instanceof InteractScriptContainer)) {
+                    continue;
+                }
+                for (String step : ((InteractScriptContainer) container).getStepNames()) {
+                    for (String option : RADIUS_OPTIONS) {
+                        String value = container.getString("steps." + step + "." + name + " trigger." + option);
+                        if (value != null) {
+                            try {
+                                max = Math.max(max, Double.parseDouble(value));
+                            }
+                            catch (NumberFormatException ex) {
+                                // Reported when the option is used
+                            }
+                        }
+                    }
+                }
+            }
+            maxScriptRadius = max;
+        }
+        return maxScriptRadius;
+    }
+
     @Override
     public void onEnable() {
         Bukkit.getServer().getPluginManager().registerEvents(this, DenizenAPI.getCurrentInstance());
 
-        final ProximityTrigger trigger = this;
-
         taskID = Bukkit.getScheduler().scheduleSyncRepeatingTask(DenizenAPI.getCurrentInstance(), new Runnable() {
             @Override
             public void run() {
+                ticksSinceCycleStart++;
+                if (cycleIndex >= cycleNPCs.size()) {
+                    if (ticksSinceCycleStart < CYCLE_TICKS) {
+                        return;
+                    }
+                    startCycle();
+                }
+                if (cycleNPCs.isEmpty()) {
+                    return;
+                }
+                int budget = Settings.proximityMaxNPCsPerTick();
+                int end = budget > 0 ? Math.min(cycleNPCs.size(), cycleIndex + budget) : cycleNPCs.size();
+                Map<Long, List<PlayerEntry>> buckets = bucketPlayers();
+                while (cycleIndex < end) {
+                    NPC citizensNPC = cycleNPCs.get(cycleIndex++);
+                    if (citizensNPC.isSpawned()) {
+                        checkNPC(citizensNPC, buckets);
+                    }
+                }
+            }
+        }, 1, 1);
+    }
 
-                Collection<? extends Player> allPlayers = Bukkit.getOnlinePlayers();
-                //
-                // Iterate over all of the NPCs
-                //
-                for (NPC citizensNPC : CitizensAPI.getNPCRegistry()) {
-                    if (citizensNPC == null || !citizensNPC.isSpawned()) {
+    private void startCycle() {
+        cycleNPCs.clear();
+        cycleIndex = 0;
+        ticksSinceCycleStart = 0;
+        for (NPC citizensNPC : CitizensAPI.getNPCRegistry()) {
+            if (citizensNPC == null || !citizensNPC.isSpawned()) {
+                continue;
+            }
+            //
+            // If the NPC doesn't have triggers, or the Proximity Trigger is not enabled,
+            // then just skip it.
+            //
+            if (!citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getTrait(TriggerTrait.class).isEnabled(name)) {
+                continue;
+            }
+            cycleNPCs.add(citizensNPC);
+        }
+    }
+
+    private static long bucketKey(int chunkX, int chunkZ) {
+        return (((long) chunkX) << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Groups all online players by the chunk they're in, so each NPC only needs to check players in nearby chunks.
+     */
+    private Map<Long, List<PlayerEntry>> bucketPlayers() {
+        Map<Long, List<PlayerEntry>> buckets = new HashMap<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location location = player.getLocation();
+            buckets.computeIfAbsent(bucketKey(location.getBlockX() >> 4, location.getBlockZ() >> 4), k -> new ArrayList<>(2))
+                    .add(new PlayerEntry(player, location));
+        }
+        return buckets;
+    }
+
+    private void checkNPC(NPC citizensNPC, Map<Long, List<PlayerEntry>> buckets) {
+        NPCTag npc = new NPCTag(citizensNPC);
+        TriggerTrait triggerTrait = npc.getTriggerTrait();
+        Location npcLocation = npc.getLocation();
+        //
+        // Set default ranges with information from the TriggerTrait. This allows per-npc overrides and will
+        // automatically check the config for defaults.
+        //
+        double defaultRadius = triggerTrait.getRadius(name);
+        //
+        // Players further than any radius that could apply (or than maxProximityDistance) don't need to be checked,
+        // unless the Player hasn't yet triggered an 'Exit Proximity' after entering.
+        //
+        double range = Math.min(maxProximityDistance, Math.max(defaultRadius, getMaxScriptRadius()));
+        Set<UUID> inProximity = npcProximityTracker.get(npc.getId());
+        Set<UUID> checked = inProximity == null ? null : new HashSet<>();
+        int minChunkX = (int) Math.floor(npcLocation.getX() - range) >> 4, maxChunkX = (int) Math.floor(npcLocation.getX() + range) >> 4;
+        int minChunkZ = (int) Math.floor(npcLocation.getZ() - range) >> 4, maxChunkZ = (int) Math.floor(npcLocation.getZ() + range) >> 4;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                List<PlayerEntry> bucket = buckets.get(bucketKey(chunkX, chunkZ));
+                if (bucket == null) {
+                    continue;
+                }
+                for (PlayerEntry entry : bucket) {
+                    if (entry.location.getWorld() != npcLocation.getWorld() || !isCloseEnough(entry.location, npcLocation, range)) {
                         continue;
                     }
-                    //
-                    // If the NPC doesn't have triggers, or the Proximity Trigger is not enabled,
-                    // then just return.
-                    //
-                    if (!citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getTrait(TriggerTrait.class).isEnabled(name)) {
-                        continue;
+                    if (checked != null) {
+                        checked.add(entry.player.getUniqueId());
                     }
-                    NPCTag npc = new NPCTag(citizensNPC);
-                    TriggerTrait triggerTrait = npc.getTriggerTrait();
-
-                    // Loop through all players
-                    for (Player bukkitPlayer : allPlayers) {
-
-                        //
-                        // If this NPC is not spawned or in a different world, no need to check,
-                        // unless the Player hasn't yet triggered an Exit Proximity after Entering
-                        //
-                        if (!npc.getWorld().equals(bukkitPlayer.getWorld())
-                                && hasExitedProximityOf(bukkitPlayer, npc)) {
-                            continue;
-                        }
+                    checkPlayer(npc, triggerTrait, npcLocation, defaultRadius, entry.player, entry.location);
+                }
+            }
+        }
+        if (inProximity != null) {
+            // Players who entered proximity still need to be checked when far away (or in another world), to fire 'Exit Proximity'
+            for (UUID id : new ArrayList<>(inProximity)) {
+                if (checked.contains(id)) {
+                    continue;
+                }
+                Player player = Bukkit.getPlayer(id);
+                if (player != null) {
+                    checkPlayer(npc, triggerTrait, npcLocation, defaultRadius, player, player.getLocation());
+                }
+            }
+        }
+    }
 
-                        //
-                        // If this NPC is more than the maxProximityDistance, skip it, unless
-                        // the Player hasn't yet triggered an 'Exit Proximity' after entering.
-                        //
-                        if (!isCloseEnough(bukkitPlayer, npc)
-                                && hasExitedProximityOf(bukkitPlayer, npc)) {
-                            continue;
-                        }
+    private static boolean isWithin(double distanceSquared, double radius) {
+        return radius >= 0 && distanceSquared <= radius * radius;
+    }
 
-                        // Get the player
-                        PlayerTag player = PlayerTag.mirrorBukkitPlayer(bukkitPlayer);
-
-                        //
-                        // Check to make sure the NPC has an assignment. If no assignment, a script doesn't need to be parsed,
-                        // but it does still need to trigger for cooldown and action purposes.
-                        //
-                        InteractScriptContainer script = npc.getInteractScriptQuietly(player, ProximityTrigger.class);
-
-                        //
-                        // Set default ranges with information from the TriggerTrait. This allows per-npc overrides and will
-                        // automatically check the config for defaults.
-                        //
-                        double entryRadius = triggerTrait.getRadius(name);
-                        double exitRadius = triggerTrait.getRadius(name);
-                        double moveRadius = triggerTrait.getRadius(name);
-
-                        //
-                        // If a script was found, it might have custom ranges.
-                        //
-                        if (script != null) {
-                            try {
-                                if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "ENTRY RADIUS")) {
-                                    entryRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "ENTRY RADIUS"));
-                                }
-                            }
-                            catch (NumberFormatException nfe) {
-                                Debug.echoDebug(script, "Entry Radius was not an integer.  Assuming " + entryRadius + " as the radius.");
-                            }
-                            try {
-                                if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "EXIT RADIUS")) {
-                                    exitRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "EXIT RADIUS"));
-                                }
-                            }
-                            catch (NumberFormatException nfe) {
-                                Debug.echoDebug(script, "Exit Radius was not an integer.  Assuming " + exitRadius + " as the radius.");
-                            }
-                            try {
-                                if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "MOVE RADIUS")) {
-                                    moveRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "MOVE RADIUS"));
-                                }
-                            }
-                            catch (NumberFormatException nfe) {
-                                Debug.echoDebug(script, "Move Radius was not an integer.  Assuming " + moveRadius + " as the radius.");
-                            }
-                        }
+    private void checkPlayer(NPCTag npc, TriggerTrait triggerTrait, Location npcLocation, double defaultRadius, Player bukkitPlayer, Location playerLocation) {
 
-                        Location npcLocation = npc.getLocation();
-
-                        //
-                        // If the Player switches worlds while in range of an NPC, trigger still needs to
-                        // fire since technically they have exited proximity. Let's check that before
-                        // trying to calculate a distance between the Player and NPC, which will throw
-                        // an exception if worlds do not match.
-                        //
-                        boolean playerChangedWorlds = false;
-                        if (npcLocation.getWorld() != player.getWorld()) {
-                            playerChangedWorlds = true;
-                        }
+        // Get the player
+        PlayerTag player = PlayerTag.mirrorBukkitPlayer(bukkitPlayer);
 
-                        //
-                        // If the user is outside the range, and was previously within the
-                        // range, then execute the "Exit" script.
-                        //
-                        // If the user entered the range and were not previously within the
-                        // range, then execute the "Entry" script.
-                        //
-                        // If the user was previously within the range and moved, then execute
-                        // the "Move" script.
-                        //
-                        boolean exitedProximity = hasExitedProximityOf(bukkitPlayer, npc);
-                        double distance = 0;
-                        if (!playerChangedWorlds) {
-                            distance = npcLocation.distance(player.getLocation());
-                        }
+        //
+        // Check to make sure the NPC has an assignment. If no assignment, a script doesn't need to be parsed,
+        // but it does still need to trigger for cooldown and action purposes.
+        //
+        InteractScriptContainer script = npc.getInteractScriptQuietly(player, ProximityTrigger.class);
 
-                        if (!exitedProximity
-                                && (playerChangedWorlds || distance >= exitRadius)) {
-                            if (!triggerTrait.triggerCooldownOnly(trigger, player)) {
-                                continue;
-                            }
-                            // Remember that NPC has exited proximity.
-                            exitProximityOf(bukkitPlayer, npc);
-                            // Exit Proximity Action
-                            npc.action("exit proximity", player);
-                            // Parse Interact Script
-                            parse(npc, player, script, "EXIT");
-                        }
-                        else if (exitedProximity && distance <= entryRadius) {
-                            // Cooldown
-                            if (!triggerTrait.triggerCooldownOnly(trigger, player)) {
-                                continue;
-                            }
-                            // Remember that Player has entered proximity of the NPC
-                            enterProximityOf(bukkitPlayer, npc);
-                            // Enter Proximity Action
-                            npc.action("enter proximity", player);
-                            // Parse Interact Script
-                            parse(npc, player, script, "ENTRY");
-                        }
-                        else if (!exitedProximity && distance <= moveRadius) {
-                            // TODO: Remove this? Constantly cooling down on move may make
-                            // future entry/exit proximities 'lag' behind.  Temporarily removing
-                            // cooldown on 'move proximity'.
-                            // if (!npc.getTriggerTrait().triggerCooldownOnly(this, event.getPlayer()))
-                            //     continue;
-                            // Move Proximity Action
-                            npc.action("move proximity", player);
-                            // Parse Interact Script
-                            parse(npc, player, script, "MOVE");
-                        }
-                    }
+        double entryRadius = defaultRadius;
+        double exitRadius = defaultRadius;
+        double moveRadius = defaultRadius;
+
+        //
+        // If a script was found, it might have custom ranges.
+        //
+        if (script != null) {
+            try {
+                if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "ENTRY RADIUS")) {
+                    entryRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "ENTRY RADIUS"));
                 }
             }
-        }, 5, 5);
+            catch (NumberFormatException nfe) {
+                Debug.echoDebug(script, "Entry Radius was not an integer.  Assuming " + entryRadius + " as the radius.");
+            }
+            try {
+                if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "EXIT RADIUS")) {
+                    exitRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "EXIT RADIUS"));
+                }
+            }
+            catch (NumberFormatException nfe) {
+                Debug.echoDebug(script, "Exit Radius was not an integer.  Assuming " + exitRadius + " as the radius.");
+            }
+            try {
+                if (script.hasTriggerOptionFor(ProximityTrigger.class, player, null, "MOVE RADIUS")) {
+                    moveRadius = Integer.valueOf(script.getTriggerOptionFor(ProximityTrigger.class, player, null, "MOVE RADIUS"));
+                }
+            }
+            catch (NumberFormatException nfe) {
+                Debug.echoDebug(script, "Move Radius was not an integer.  Assuming " + moveRadius + " as the radius.");
+            }
+        }
+
+        //
+        // If the Player switches worlds while in range of an NPC, trigger still needs to
+        // fire since technically they have exited proximity. Let's check that before
+        // trying to calculate a distance between the Player and NPC, which will throw
+        // an exception if worlds do not match.
+        //
+        boolean playerChangedWorlds = npcLocation.getWorld() != playerLocation.getWorld();
+
+        //
+        // If the user is outside the range, and was previously within the
+        // range, then execute the "Exit" script.
+        //
+        // If the user entered the range and were not previously within the
+        // range, then execute the "Entry" script.
+        //
+        // If the user was previously within the range and moved, then execute
+        // the "Move" script.
+        //
+        boolean exitedProximity = hasExitedProximityOf(bukkitPlayer, npc);
+        double distanceSquared = 0;
+        if (!playerChangedWorlds) {
+            distanceSquared = npcLocation.distanceSquared(playerLocation);
+        }
+
+        if (!exitedProximity
+                && (playerChangedWorlds || exitRadius < 0 || distanceSquared >= exitRadius * exitRadius)) {
+            if (!triggerTrait.triggerCooldownOnly(this, player)) {
+                return;
+            }
+            // Remember that NPC has exited proximity.
+            exitProximityOf(bukkitPlayer, npc);
+            // Exit Proximity Action
+            npc.action("exit proximity", player);
+            // Parse Interact Script
+            parse(npc, player, script, "EXIT");
+        }
+        else if (exitedProximity && isWithin(distanceSquared, entryRadius)) {
+            // Cooldown
+            if (!triggerTrait.triggerCooldownOnly(this, player)) {
+                return;
+            }
+            // Remember that Player has entered proximity of the NPC
+            enterProximityOf(bukkitPlayer, npc);
+            // Enter Proximity Action
+            npc.action("enter proximity", player);
+            // Parse Interact Script
+            parse(npc, player, script, "ENTRY");
+        }
+        else if (!exitedProximity && isWithin(distanceSquared, moveRadius)) {
+            // TODO: Remove this? Constantly cooling down on move may make
+            // future entry/exit proximities 'lag' behind.  Temporarily removing
+            // cooldown on 'move proximity'.
+            // if (!npc.getTriggerTrait().triggerCooldownOnly(this, event.getPlayer()))
+            //     continue;
+            // Move Proximity Action
+            npc.action("move proximity", player);
+            // Parse Interact Script
+            parse(npc, player, script, "MOVE");
+        }
     }
 
     @Override
@@ -260,27 +381,22 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     /**
      * Checks if the Player in Proximity is close enough to be calculated.
      *
-     * @param player the Player
-     * @param npc    the NPC
-     * @return true if within maxProximityDistance in all directions
+     * @param playerLocation the Player's location
+     * @param npcLocation    the NPC's location
+     * @param range          the distance to check within
+     * @return true if within range in all directions
      */
-    private boolean isCloseEnough(Player player, NPCTag npc) {
-        Location pLoc = player.getLocation();
-        Location nLoc = npc.getLocation();
-        if (Math.abs(pLoc.getX() - nLoc.getX()) > maxProximityDistance) {
-            return false;
-        }
-        if (Math.abs(pLoc.getY() - nLoc.getY()) > maxProximityDistance) {
-            return false;
-        }
-        if (Math.abs(pLoc.getZ() - nLoc.getZ()) > maxProximityDistance) {
-            return false;
-        }
-        return true;
+    private boolean isCloseEnough(Location playerLocation, Location npcLocation, double range) {
+        return Math.abs(playerLocation.getX() - npcLocation.getX()) <= range
+                && Math.abs(playerLocation.getY() - npcLocation.getY()) <= range
+                && Math.abs(playerLocation.getZ() - npcLocation.getZ()) <= range;
     }
 
     private static Map<UUID, Set<Integer>> proximityTracker = new HashMap<>();
 
+    // The reverse of proximityTracker: for each NPC ID, the players that have entered its proximity
+    private static Map<Integer, Set<UUID>> npcProximityTracker = new HashMap<>();
+
     //
     // Ensures that a Player who has entered proximity of an NPC also fires Exit Proximity.
     //
@@ -312,6 +428,7 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
             proximityTracker.put(player.getUniqueId(), npcs);
         }
         npcs.add(npc.getId());
+        npcProximityTracker.computeIfAbsent(npc.getId(), k -> new HashSet<>()).add(player.getUniqueId());
     }
 
     /**
@@ -328,5 +445,12 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
             proximityTracker.put(player.getUniqueId(), npcs);
         }
         npcs.remove(npc.getId());
+        Set<UUID> players = npcProximityTracker.get(npc.getId());
+        if (players != null) {
+            players.remove(player.getUniqueId());
+            if (players.isEmpty()) {
+                npcProximityTracker.remove(npc.getId());
+            }
+        }
     }
 }
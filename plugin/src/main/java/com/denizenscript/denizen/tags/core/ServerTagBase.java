@@ -1602,7 +1602,7 @@ public class ServerTagBase {
             String flag = attribute.getContext(1);
             ListTag players = new ListTag();
             for (Player player : Bukkit.getOnlinePlayers()) {
-                if (DenizenAPI.getCurrentInstance().flagManager().getPlayerFlag(new PlayerTag(player), flag).size() > 0) {
+                if (FlagManager.playerHasFlag(new PlayerTag(player), flag)) {
                     players.addObject(new PlayerTag(player));
                 }
             }
@@ -1620,9 +1620,9 @@ public class ServerTagBase {
                 && attribute.hasContext(1)) {
             String flag = attribute.getContext(1);
             ListTag players = new ListTag();
-            for (Map.Entry<String, UUID> entry : PlayerTag.getAllPlayers().entrySet()) {
-                if (FlagManager.playerHasFlag(new PlayerTag(entry.getValue()), flag)) {
-                    players.addObject(new PlayerTag(entry.getValue()));
+            for (UUID uuid : DenizenAPI.getCurrentInstance().flagManager().getPlayersFlagged(flag)) {
+                if (PlayerTag.isNoted(uuid)) {
+                    players.addObject(new PlayerTag(uuid));
                 }
             }
             event.setReplacedObject(players.getObjectAttribute(attribute.fulfill(1)));
@@ -1639,10 +1639,10 @@ public class ServerTagBase {
                 && attribute.hasContext(1)) {
             String flag = attribute.getContext(1);
             ListTag npcs = new ListTag();
-            for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                NPCTag dNpc = NPCTag.mirrorCitizensNPC(npc);
-                if (dNpc.isSpawned() && FlagManager.npcHasFlag(dNpc, flag)) {
-                    npcs.addObject(dNpc);
+            for (int id : DenizenAPI.getCurrentInstance().flagManager().getNPCsFlagged(flag)) {
+                NPC npc = CitizensAPI.getNPCRegistry().getById(id);
+                if (npc != null && npc.isSpawned()) {
+                    npcs.addObject(NPCTag.mirrorCitizensNPC(npc));
                 }
             }
             event.setReplacedObject(npcs.getObjectAttribute(attribute.fulfill(1)));
@@ -1659,10 +1659,10 @@ public class ServerTagBase {
                 && attribute.hasContext(1)) {
             String flag = attribute.getContext(1);
             ListTag npcs = new ListTag();
-            for (NPC npc : CitizensAPI.getNPCRegistry()) {
-                NPCTag dNpc = NPCTag.mirrorCitizensNPC(npc);
-                if (FlagManager.npcHasFlag(dNpc, flag)) {
-                    npcs.addObject(dNpc);
+            for (int id : DenizenAPI.getCurrentInstance().flagManager().getNPCsFlagged(flag)) {
+                NPC npc = CitizensAPI.getNPCRegistry().getById(id);
+                if (npc != null) {
+                    npcs.addObject(NPCTag.mirrorCitizensNPC(npc));
                 }
             }
             event.setReplacedObject(npcs.getObjectAttribute(attribute.fulfill(1)));
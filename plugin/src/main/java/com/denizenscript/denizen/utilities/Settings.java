@@ -64,6 +64,7 @@ public class Settings {
         cache_chatWithTargetToBystandersFormat = config.getString("Commands.Chat.Formats.With target to bystanders", "[<[talker].name>] -> <[target].name>: <[message]>");
         cache_chatWithTargetsToBystandersFormat = config.getString("Commands.Chat.Formats.With targets to bystanders", "[<[talker].name>] -> [<[targets]>]: <[message]>");
         cache_chatAsynchronous = config.getBoolean("Triggers.Chat.Use asynchronous event", false);
+        cache_chatNonBlocking = config.getBoolean("Triggers.Chat.Non-blocking asynchronous event", false);
         cache_chatToNpcFormat = config.getString("Triggers.Chat.Formats.Player to NPC", "You -> <npc.nickname>: <text>");
         cache_chatToNpcOverheardFormat = config.getString("Triggers.Chat.Formats.Player to NPC overheard", "<player.name> -> <npc.nickname>: <text>");
         cache_chatToNpcOverhearingRange = config.getDouble("Triggers.Chat.Overhearing range", 4);
@@ -72,8 +73,10 @@ public class Settings {
         cache_chatGloballyIfFailedChatTriggers = config.getBoolean("Triggers.Chat.Appears globally.If triggers failed", false);
         cache_chatGloballyIfNoChatTriggers = config.getBoolean("Triggers.Chat.Appears globally.If triggers missing", true);
         cache_chatGloballyIfUninteractable = config.getBoolean("Triggers.Chat.Appears globally.If NPC uninteractable", true);
+        cache_proximityMaxNPCsPerTick = config.getInt("Triggers.Proximity.Max NPCs per tick", 100);
         cache_worldScriptChatEventAsynchronous = config.getBoolean("Scripts.World.Events.On player chats.Use asynchronous event", false);
         cache_worldScriptTimeEventFrequency = DurationTag.valueOf(config.getString("Scripts.World.Events.On time changes.Frequency of check", "250t"));
+        cache_mapTagUpdateInterval = DurationTag.valueOf(config.getString("Commands.Map.Tag update interval", "1t"));
         cache_blockTagsMaxBlocks = config.getInt("Tags.Block tags.Max blocks", 1000000);
         cache_autoLoadChunks = config.getBoolean("Tags.Automatically load chunks", true);
         cache_chatHistoryMaxMessages = config.getInt("Tags.Chat history.Max messages", 10);
@@ -89,7 +92,7 @@ public class Settings {
             cache_defaultDebugMode, cache_healthTraitEnabledByDefault, cache_healthTraitAnimatedDeathEnabled,
             cache_healthTraitRespawnEnabled, cache_allowWebget, cache_allowFilecopy, cache_allowDelete,
             cache_allowServerStop, cache_allowServerRestart, cache_allowLogging, cache_allowStrangeYAMLSaves,
-            cache_healthTraitBlockDrops, cache_chatAsynchronous, cache_chatMustSeeNPC, cache_chatMustLookAtNPC,
+            cache_healthTraitBlockDrops, cache_chatAsynchronous, cache_chatNonBlocking, cache_chatMustSeeNPC, cache_chatMustLookAtNPC,
             cache_chatGloballyIfFailedChatTriggers, cache_chatGloballyIfNoChatTriggers,
             cache_chatGloballyIfUninteractable, cache_worldScriptChatEventAsynchronous,
             cache_tagTimeoutSilent, cache_packetInterception, cache_autoLoadChunks, cache_tagTimeoutUnsafe;
@@ -101,13 +104,13 @@ public class Settings {
             cache_scriptEncoding, cache_debugPrefix;
 
     private static int cache_consoleWidth = 128, cache_trimLength = 1024, cache_whileMaxLoops, cache_blockTagsMaxBlocks,
-            cache_chatHistoryMaxMessages, cache_tagTimeout, cache_debugLimitPerTick;
+            cache_chatHistoryMaxMessages, cache_tagTimeout, cache_debugLimitPerTick, cache_proximityMaxNPCsPerTick;
 
     private static long cache_warningRate;
 
     private static double cache_chatBystandersRange, cache_chatToNpcOverhearingRange;
 
-    private static DurationTag cache_worldScriptTimeEventFrequency;
+    private static DurationTag cache_worldScriptTimeEventFrequency, cache_mapTagUpdateInterval;
 
     public static boolean useDefaultScriptPath() {
         return cache_useDefaultScriptPath;
@@ -349,6 +352,21 @@ public class Settings {
         return cache_chatAsynchronous;
     }
 
+    /**
+     * Whether the asynchronous Chat Trigger should avoid waiting
+     * for the main thread
+     */
+    public static boolean chatNonBlocking() {
+        return cache_chatNonBlocking;
+    }
+
+    /**
+     * How many NPCs the Proximity Trigger checks per tick, or 0 to check all of them at once.
+     */
+    public static int proximityMaxNPCsPerTick() {
+        return cache_proximityMaxNPCsPerTick;
+    }
+
     /*
      * The formats in which Chat Trigger input from players appears to
      * themselves and to players who can overhear them
@@ -415,6 +433,13 @@ public class Settings {
         return cache_worldScriptTimeEventFrequency;
     }
 
+    /**
+     * How often auto-updating maps re-read the tags of their objects for each player.
+     */
+    public static DurationTag mapTagUpdateInterval() {
+        return cache_mapTagUpdateInterval;
+    }
+
     public static int blockTagsMaxBlocks() {
         return cache_blockTagsMaxBlocks;
     }
@@ -0,0 +1,270 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.NMSVersion;
+import com.denizenscript.denizen.nms.interfaces.ChunkHelper;
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizen.utilities.Settings;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.*;
+
+/**
+ * Finds blocks within a sphere by reading chunk snapshots, one chunk section at a time.
+ * Sections are visited nearest first, and sections that cannot hold a match (empty sections, or chunks
+ * whose palette lacks every target block on 1.14+) are skipped without reading their blocks.
+ * Results are sorted by distance, with each distance computed only once.
+ */
+public class BlockSearch {
+
+    /**
+     * A precomputed set of materials to search for. On 1.12, materials with a data value only match blocks with that data value.
+     */
+    public static class MaterialMatcher {
+
+        private final EnumSet<Material> anyData = EnumSet.noneOf(Material.class);
+
+        private final EnumMap<Material, BitSet> legacyData = new EnumMap<>(Material.class);
+
+        private List<org.bukkit.block.data.BlockData> singleStates = new ArrayList<>();
+
+        /**
+         * If 'matchZeroData' is false, a legacy data value of 0 matches any data value.
+         */
+        public MaterialMatcher(List<MaterialTag> materials, boolean matchZeroData) {
+            boolean legacy = NMSHandler.getVersion().isAtMost(NMSVersion.v1_12);
+            for (MaterialTag material : materials) {
+                if (legacy && material.hasData() && (matchZeroData || material.getData() != 0)) {
+                    legacyData.computeIfAbsent(material.getMaterial(), k -> new BitSet(16)).set(material.getData() & 15);
+                }
+                else {
+                    anyData.add(material.getMaterial());
+                }
+            }
+            if (NMSHandler.getVersion().isAtLeast(NMSVersion.v1_14)) {
+                for (Material material : anyData) {
+                    if (!material.isBlock()) {
+                        continue;
+                    }
+                    org.bukkit.block.data.BlockData state = material.createBlockData();
+                    if (state.getAsString().indexOf('[') != -1) {
+                        // Blocks with properties have more than one state, so their palette entries can't be checked directly
+                        singleStates = null;
+                        break;
+                    }
+                    singleStates.add(state);
+                }
+            }
+            else {
+                singleStates = null;
+            }
+        }
+
+        public boolean isEmpty() {
+            return anyData.isEmpty() && legacyData.isEmpty();
+        }
+
+        public boolean needsData() {
+            return !legacyData.isEmpty();
+        }
+
+        public boolean canMatchAir() {
+            for (Material material : anyData) {
+                if (isAir(material)) {
+                    return true;
+                }
+            }
+            for (Material material : legacyData.keySet()) {
+                if (isAir(material)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean matches(Material type, int data) {
+            if (anyData.contains(type)) {
+                return true;
+            }
+            if (legacyData.isEmpty()) {
+                return false;
+            }
+            BitSet datas = legacyData.get(type);
+            return datas != null && datas.get(data);
+        }
+
+        /**
+         * Returns whether the chunk might contain a match. Only checks the chunk's block palettes, when every target has a single block state.
+         */
+        public boolean mightBeIn(ChunkSnapshot snapshot) {
+            if (singleStates == null) {
+                return true;
+            }
+            for (org.bukkit.block.data.BlockData state : singleStates) {
+                if (snapshot.contains(state)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final Set<String> AIR_NAMES = new HashSet<>(Arrays.asList("AIR", "CAVE_AIR", "VOID_AIR"));
+
+    public static boolean isAir(Material material) {
+        return AIR_NAMES.contains(material.name());
+    }
+
+    private static class Match {
+
+        public final LocationTag location;
+
+        public final double distanceSquared;
+
+        public Match(LocationTag location, double distanceSquared) {
+            this.location = location;
+            this.distanceSquared = distanceSquared;
+        }
+    }
+
+    /**
+     * Returns all blocks whose center is within the radius of the location, matching any of the materials (or all blocks, if there are none).
+     * Results are block locations, sorted by distance from the given location.
+     */
+    public static List<LocationTag> findBlocks(Location location, double radius, List<MaterialTag> materials) {
+        MaterialMatcher matcher = new MaterialMatcher(materials, false);
+        boolean skipEmpty = !matcher.isEmpty() && !matcher.canMatchAir();
+        return search(location, location, radius, 0, matcher, false, skipEmpty);
+    }
+
+    /**
+     * Returns all non-air blocks with two air blocks above them, whose center is within the radius of the center of the location's block,
+     * matching any of the materials (or any block, if there are none).
+     * Results are the center of the top of each block, sorted by distance from the given location.
+     */
+    public static List<LocationTag> findSurfaceBlocks(Location location, double radius, List<MaterialTag> materials) {
+        MaterialMatcher matcher = new MaterialMatcher(materials, true);
+        Location center = new Location(location.getWorld(), location.getBlockX() + 0.5, location.getBlockY() + 0.5, location.getBlockZ() + 0.5);
+        return search(location, center, radius, 0.5, matcher, true, true);
+    }
+
+    private static List<LocationTag> search(Location sortFrom, Location center, double radius, double horizontalOffset, MaterialMatcher matcher, boolean surface, boolean skipEmpty) {
+        World world = center.getWorld();
+        int maxHeight = world.getMaxHeight();
+        double centerX = center.getX() - 0.5, centerY = center.getY() - 0.5, centerZ = center.getZ() - 0.5;
+        double radiusSquared = radius * radius;
+        int minX = (int) Math.floor(centerX - radius), maxX = (int) Math.ceil(centerX + radius);
+        int minY = Math.max(0, (int) Math.floor(centerY - radius)), maxY = Math.min(maxHeight - 1, (int) Math.ceil(centerY + radius));
+        int minZ = (int) Math.floor(centerZ - radius), maxZ = (int) Math.ceil(centerZ + radius);
+        if (minY > maxY) {
+            return new ArrayList<>();
+        }
+        boolean checkMaterial = !matcher.isEmpty();
+        boolean needsData = matcher.needsData();
+        int chunksX = (maxX >> 4) - (minX >> 4) + 1, chunksZ = (maxZ >> 4) - (minZ >> 4) + 1;
+        int minSection = minY >> 4, sectionsY = (maxY >> 4) - minSection + 1;
+        // Find all sections that overlap the sphere, and order them nearest first, so that the block limit cuts off the farthest blocks
+        List<long[]> sections = new ArrayList<>();
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                for (int sy = 0; sy < sectionsY; sy++) {
+                    int lowX = ((minX >> 4) + cx) << 4, lowY = (minSection + sy) << 4, lowZ = ((minZ >> 4) + cz) << 4;
+                    double dx = Math.max(0, Math.max(lowX - centerX, centerX - (lowX + 15)));
+                    double dy = Math.max(0, Math.max(lowY - centerY, centerY - (lowY + 15)));
+                    double dz = Math.max(0, Math.max(lowZ - centerZ, centerZ - (lowZ + 15)));
+                    double distanceSquared = dx * dx + dy * dy + dz * dz;
+                    if (distanceSquared < radiusSquared) {
+                        sections.add(new long[] {cx, cz, sy, Double.doubleToLongBits(distanceSquared)});
+                    }
+                }
+            }
+        }
+        sections.sort(Comparator.comparingDouble(section -> Double.longBitsToDouble(section[3])));
+        ChunkHelper chunkHelper = NMSHandler.getChunkHelper();
+        ChunkSnapshot[] snapshots = new ChunkSnapshot[chunksX * chunksZ];
+        boolean[] skipChunk = new boolean[chunksX * chunksZ];
+        List<Match> matches = new ArrayList<>();
+        int max = Settings.blockTagsMaxBlocks();
+        int index = 0;
+        NMSHandler.getChunkHelper().changeChunkServerThread(world);
+        try {
+            fullloop:
+            for (long[] section : sections) {
+                int chunkIndex = (int) section[0] * chunksZ + (int) section[1];
+                if (skipChunk[chunkIndex]) {
+                    continue;
+                }
+                int chunkX = (minX >> 4) + (int) section[0], chunkZ = (minZ >> 4) + (int) section[1];
+                ChunkSnapshot snapshot = snapshots[chunkIndex];
+                if (snapshot == null) {
+                    if (!Settings.autoLoadChunks() && !world.isChunkLoaded(chunkX, chunkZ)) {
+                        skipChunk[chunkIndex] = true;
+                        continue;
+                    }
+                    snapshot = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+                    if (checkMaterial && !matcher.mightBeIn(snapshot)) {
+                        skipChunk[chunkIndex] = true;
+                        continue;
+                    }
+                    snapshots[chunkIndex] = snapshot;
+                }
+                int sectionY = minSection + (int) section[2];
+                if (skipEmpty && snapshot.isSectionEmpty(sectionY)) {
+                    continue;
+                }
+                int lowX = Math.max(minX, chunkX << 4), highX = Math.min(maxX, (chunkX << 4) + 15);
+                int lowY = Math.max(minY, sectionY << 4), highY = Math.min(maxY, (sectionY << 4) + 15);
+                int lowZ = Math.max(minZ, chunkZ << 4), highZ = Math.min(maxZ, (chunkZ << 4) + 15);
+                for (int x = lowX; x <= highX; x++) {
+                    double dx = x - centerX;
+                    for (int y = lowY; y <= highY; y++) {
+                        double dy = y - centerY;
+                        double remaining = radiusSquared - dx * dx - dy * dy;
+                        if (remaining <= 0) {
+                            continue;
+                        }
+                        double reach = Math.sqrt(remaining);
+                        int startZ = Math.max(lowZ, (int) Math.floor(centerZ - reach)), endZ = Math.min(highZ, (int) Math.ceil(centerZ + reach));
+                        for (int z = startZ; z <= endZ; z++) {
+                            double dz = z - centerZ;
+                            if (dx * dx + dy * dy + dz * dz >= radiusSquared) {
+                                continue;
+                            }
+                            index++;
+                            if (index > max) {
+                                break fullloop;
+                            }
+                            int localX = x & 15, localZ = z & 15;
+                            Material type = chunkHelper.getBlockType(snapshot, localX, y, localZ);
+                            if (surface && type == Material.AIR) {
+                                continue;
+                            }
+                            if (checkMaterial && !matcher.matches(type, needsData ? chunkHelper.getLegacyData(snapshot, localX, y, localZ) : 0)) {
+                                continue;
+                            }
+                            if (surface && ((y + 1 < maxHeight && chunkHelper.getBlockType(snapshot, localX, y + 1, localZ) != Material.AIR)
+                                    || (y + 2 < maxHeight && chunkHelper.getBlockType(snapshot, localX, y + 2, localZ) != Material.AIR))) {
+                                continue;
+                            }
+                            LocationTag found = new LocationTag(world, x + horizontalOffset, y, z + horizontalOffset);
+                            matches.add(new Match(found, found.distanceSquared(sortFrom)));
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            NMSHandler.getChunkHelper().restoreServerThread(world);
+        }
+        matches.sort(Comparator.comparingDouble(match -> match.distanceSquared));
+        List<LocationTag> result = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            result.add(match.location);
+        }
+        return result;
+    }
+}
@@ -1,17 +1,26 @@
 package com.denizenscript.denizen.utilities.blocks;
 
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.NMSVersion;
 import com.denizenscript.denizen.nms.interfaces.BlockData;
+import com.denizenscript.denizen.nms.interfaces.ChunkHelper;
 import com.denizenscript.denizen.objects.CuboidTag;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.MaterialTag;
 import com.denizenscript.denizen.scripts.commands.world.SchematicCommand;
 import com.denizenscript.denizen.utilities.DenizenAPI;
-import org.bukkit.Location;
-import org.bukkit.Material;
+import org.bukkit.*;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
 public class CuboidBlockSet implements BlockSet {
 
     public CuboidBlockSet() {
@@ -26,18 +35,25 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        blocks = new BlockData[(x_width * y_length * z_height)];
+        initBlocks();
         int index = 0;
         for (int x = 0; x < x_width; x++) {
             for (int y = 0; y < y_length; y++) {
                 for (int z = 0; z < z_height; z++) {
-                    blocks[index++] = NMSHandler.getBlockHelper().getBlockData(low.clone().add(x, y, z).getBlock());
+                    storage.set(index++, NMSHandler.getBlockHelper().getBlockData(low.clone().add(x, y, z).getBlock()));
                 }
             }
         }
     }
 
-    public void buildDelayed(CuboidTag cuboid, Location center, Runnable runme) {
+    /**
+     * Captures the cuboid using one chunk snapshot per chunk, taken on the calling (main) thread.
+     * The block data is then decoded from the snapshots in parallel (on the common fork-join pool) into a palette
+     * and index buffer, and the storage is filled in and the runnable is ran back on the main thread.
+     * Tile entity data is not part of chunk snapshots, so blocks with a tile entity are read directly while snapshotting.
+     * If decoding fails, 'onError' is ran on the main thread instead of the runnable.
+     */
+    public void buildFromSnapshots(CuboidTag cuboid, Location center, Runnable runme, Consumer<Throwable> onError) {
         Location low = cuboid.pairs.get(0).low;
         Location high = cuboid.pairs.get(0).high;
         x_width = (int) ((high.getX() - low.getX()) + 1);
@@ -46,33 +62,113 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        final long goal = (long) (x_width * y_length * z_height);
-        new BukkitRunnable() {
-            int index = 0;
-            @Override
-            public void run() {
-                long start = System.currentTimeMillis();
-                while (index < goal) {
-                    long z = index % ((long) (z_height));
-                    long y = ((index - z) % ((long) (y_length * z_height))) / ((long) z_height);
-                    long x = (index - y - z) / ((long) (y_length * z_height));
-                    blocks[index] = NMSHandler.getBlockHelper().getBlockData(low.clone().add(x, y, z).getBlock());
-                    index++;
-                    if (System.currentTimeMillis() - start > 50) {
-                        SchematicCommand.noPhys = false;
-                        return;
+        World world = low.getWorld();
+        int lowX = low.getBlockX(), lowY = low.getBlockY(), lowZ = low.getBlockZ();
+        int lowChunkX = lowX >> 4, lowChunkZ = lowZ >> 4;
+        int chunksX = ((lowX + x_width - 1) >> 4) - lowChunkX + 1;
+        int chunksZ = ((lowZ + z_height - 1) >> 4) - lowChunkZ + 1;
+        ChunkSnapshot[] snapshots = new ChunkSnapshot[chunksX * chunksZ];
+        Map<Integer, BlockData> tileEntities = new HashMap<>();
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                Chunk chunk = world.getChunkAt(lowChunkX + cx, lowChunkZ + cz);
+                snapshots[cx * chunksZ + cz] = chunk.getChunkSnapshot(false, false, false);
+                for (BlockState state : chunk.getTileEntities()) {
+                    int x = state.getX() - lowX, y = state.getY() - lowY, z = state.getZ() - lowZ;
+                    if (x >= 0 && x < x_width && y >= 0 && y < y_length && z >= 0 && z < z_height) {
+                        tileEntities.put(z + y * z_height + x * z_height * y_length, NMSHandler.getBlockHelper().getBlockData(state.getBlock()));
                     }
                 }
-                if (runme != null) {
-                    runme.run();
+            }
+        }
+        final boolean modern = NMSHandler.getVersion().isAtLeast(NMSVersion.v1_13);
+        final ChunkHelper chunkHelper = NMSHandler.getChunkHelper();
+        Bukkit.getScheduler().runTaskAsynchronously(DenizenAPI.getCurrentInstance(), () -> {
+            try {
+                ConcurrentHashMap<Object, Integer> palette = new ConcurrentHashMap<>();
+                AtomicInteger paletteSize = new AtomicInteger();
+                int[] indices = new int[x_width * y_length * z_height];
+                IntStream.range(0, x_width).parallel().forEach(x -> {
+                    HashMap<Object, Integer> localPalette = new HashMap<>();
+                    int worldX = lowX + x;
+                    int chunkRow = ((worldX >> 4) - lowChunkX) * chunksZ;
+                    int index = x * z_height * y_length;
+                    for (int y = 0; y < y_length; y++) {
+                        int worldY = lowY + y;
+                        for (int z = 0; z < z_height; z++) {
+                            int worldZ = lowZ + z;
+                            Object key;
+                            if (worldY < 0 || worldY > 255) {
+                                key = Material.AIR;
+                            }
+                            else {
+                                ChunkSnapshot snapshot = snapshots[chunkRow + (worldZ >> 4) - lowChunkZ];
+                                if (modern) {
+                                    key = snapshot.getBlockData(worldX & 15, worldY, worldZ & 15);
+                                }
+                                else {
+                                    key = (chunkHelper.getBlockType(snapshot, worldX & 15, worldY, worldZ & 15).ordinal() << 4)
+                                            | chunkHelper.getLegacyData(snapshot, worldX & 15, worldY, worldZ & 15);
+                                }
+                            }
+                            Integer id = localPalette.get(key);
+                            if (id == null) {
+                                id = palette.computeIfAbsent(key, k -> paletteSize.getAndIncrement());
+                                localPalette.put(key, id);
+                            }
+                            indices[index++] = id;
+                        }
+                    }
+                });
+                BlockData[] paletteData = new BlockData[paletteSize.get()];
+                for (Map.Entry<Object, Integer> entry : palette.entrySet()) {
+                    paletteData[entry.getValue()] = decodePaletteKey(entry.getKey());
                 }
-                cancel();
-
+                PackedBlockStorage result = new PackedBlockStorage(indices.length);
+                int[] storageIds = new int[paletteData.length];
+                for (int i = 0; i < paletteData.length; i++) {
+                    storageIds[i] = result.idFor(paletteData[i]);
+                }
+                for (int i = 0; i < indices.length; i++) {
+                    result.setId(i, storageIds[indices[i]]);
+                }
+                for (Map.Entry<Integer, BlockData> entry : tileEntities.entrySet()) {
+                    result.set(entry.getKey(), entry.getValue());
+                }
+                Bukkit.getScheduler().runTask(DenizenAPI.getCurrentInstance(), () -> {
+                    setStorage(result);
+                    if (runme != null) {
+                        runme.run();
+                    }
+                });
             }
-        }.runTaskTimer(DenizenAPI.getCurrentInstance(), 1, 1);
+            catch (Throwable ex) {
+                Bukkit.getScheduler().runTask(DenizenAPI.getCurrentInstance(), () -> onError.accept(ex));
+            }
+        });
     }
 
-    public BlockData[] blocks = null;
+    private static BlockData decodePaletteKey(Object key) {
+        if (key instanceof Material) {
+            return NMSHandler.getBlockHelper().getBlockData((Material) key, (byte) 0);
+        }
+        if (key instanceof org.bukkit.block.data.BlockData) {
+            return NMSHandler.getBlockHelper().getBlockData(new ModernBlockData((org.bukkit.block.data.BlockData) key));
+        }
+        int legacy = (Integer) key;
+        return NMSHandler.getBlockHelper().getBlockData(Material.values()[legacy >> 4], (byte) (legacy & 15));
+    }
+
+    /**
+     * The blocks, stored in the order they were captured or loaded (X, then Y, then Z), with the dimensions raw_x/raw_y/raw_z.
+     * Rotations and flips do not move any data: they only change how the view coordinates (x_width/y_length/z_height)
+     * are mapped to the stored coordinates.
+     */
+    public PackedBlockStorage storage = null;
+
+    public int raw_x, raw_y, raw_z;
+
+    public boolean swapXZ, invertX, invertY, invertZ;
 
     public int x_width;
 
@@ -86,8 +182,52 @@ public class CuboidBlockSet implements BlockSet {
 
     public int center_z;
 
+    /**
+     * Creates empty block storage for the current dimensions, to be filled with setBlockAt.
+     */
+    public void initBlocks() {
+        setStorage(new PackedBlockStorage(x_width * y_length * z_height));
+    }
+
+    public void setStorage(PackedBlockStorage newStorage) {
+        storage = newStorage;
+        raw_x = x_width;
+        raw_y = y_length;
+        raw_z = z_height;
+        swapXZ = false;
+        invertX = false;
+        invertY = false;
+        invertZ = false;
+    }
+
+    public int getBlockCount() {
+        return storage.size;
+    }
+
+    public int storageIndex(int x, int y, int z) {
+        int u = invertX ? x_width - 1 - x : x;
+        int v = invertY ? y_length - 1 - y : y;
+        int w = invertZ ? z_height - 1 - z : z;
+        if (swapXZ) {
+            return u + v * raw_z + w * raw_z * raw_y;
+        }
+        return w + v * raw_z + u * raw_z * raw_y;
+    }
+
+    /**
+     * Returns a full copy of all blocks in view order. Avoid this for large schematics, use blockAt instead.
+     */
     @Override
     public BlockData[] getBlocks() {
+        BlockData[] blocks = new BlockData[storage.size];
+        int index = 0;
+        for (int x = 0; x < x_width; x++) {
+            for (int y = 0; y < y_length; y++) {
+                for (int z = 0; z < z_height; z++) {
+                    blocks[index++] = blockAt(x, y, z);
+                }
+            }
+        }
         return blocks;
     }
 
@@ -117,27 +257,113 @@ public class CuboidBlockSet implements BlockSet {
         }
     }
 
+    /**
+     * Returns the chunk sections (as chunk X, section Y, chunk Z triplets) that a paste at the given origin would touch.
+     */
+    public int[] getPasteSections(int originX, int originY, int originZ) {
+        int minChunkX = originX >> 4, maxChunkX = (originX + x_width - 1) >> 4;
+        int minSection = Math.max(originY, 0) >> 4, maxSection = Math.min(originY + y_length - 1, 255) >> 4;
+        int minChunkZ = originZ >> 4, maxChunkZ = (originZ + z_height - 1) >> 4;
+        if (maxSection < minSection) {
+            return new int[0];
+        }
+        int[] sections = new int[(maxChunkX - minChunkX + 1) * (maxSection - minSection + 1) * (maxChunkZ - minChunkZ + 1) * 3];
+        int index = 0;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                for (int sectionY = minSection; sectionY <= maxSection; sectionY++) {
+                    sections[index++] = chunkX;
+                    sections[index++] = sectionY;
+                    sections[index++] = chunkZ;
+                }
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Pastes the part of the schematic that falls within one chunk section as a single batch.
+     * The position and block buffers must each have room for 4096 entries.
+     */
+    public void pasteSection(World world, int originX, int originY, int originZ, int chunkX, int sectionY, int chunkZ, InputParams input, short[] positions, BlockData[] buffer) {
+        int minX = Math.max(chunkX << 4, originX), maxX = Math.min((chunkX << 4) + 15, originX + x_width - 1);
+        int minY = Math.max(sectionY << 4, originY), maxY = Math.min((sectionY << 4) + 15, originY + y_length - 1);
+        int minZ = Math.max(chunkZ << 4, originZ), maxZ = Math.min((chunkZ << 4) + 15, originZ + z_height - 1);
+        int count = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    BlockData block = blockAt(x - originX, y - originY, z - originZ);
+                    if (block == null || (input.noAir && block.getMaterial() == Material.AIR)) {
+                        continue;
+                    }
+                    if (input.mask != null && !input.mask.contains(world.getBlockAt(x, y, z).getType())) {
+                        continue;
+                    }
+                    positions[count] = (short) (((y & 15) << 8) | ((z & 15) << 4) | (x & 15));
+                    buffer[count++] = block;
+                }
+            }
+        }
+        if (count > 0) {
+            NMSHandler.getBlockHelper().setBlocksInSection(world, chunkX, sectionY, chunkZ, positions, buffer, count);
+        }
+    }
+
     @Override
     public void setBlocksDelayed(final Runnable runme, final InputParams input) {
-        final long goal = (long) (x_width * y_length * z_height);
+        if (input.fakeTo != null) {
+            setFakeBlocksDelayed(runme, input);
+            return;
+        }
+        final World world = input.centerLocation.getWorld();
+        final int originX = input.centerLocation.getBlockX() - center_x;
+        final int originY = input.centerLocation.getBlockY() - center_y;
+        final int originZ = input.centerLocation.getBlockZ() - center_z;
+        final int[] sections = getPasteSections(originX, originY, originZ);
+        final short[] positions = new short[4096];
+        final BlockData[] buffer = new BlockData[4096];
         new BukkitRunnable() {
             int index = 0;
             @Override
             public void run() {
                 SchematicCommand.noPhys = true;
+                long start = System.currentTimeMillis();
+                while (index < sections.length) {
+                    pasteSection(world, originX, originY, originZ, sections[index], sections[index + 1], sections[index + 2], input, positions, buffer);
+                    index += 3;
+                    if (System.currentTimeMillis() - start > 50) {
+                        SchematicCommand.noPhys = false;
+                        return;
+                    }
+                }
+                SchematicCommand.noPhys = false;
+                if (runme != null) {
+                    runme.run();
+                }
+                cancel();
+
+            }
+        }.runTaskTimer(DenizenAPI.getCurrentInstance(), 1, 1);
+    }
+
+    public void setFakeBlocksDelayed(final Runnable runme, final InputParams input) {
+        final long goal = (long) (x_width * y_length * z_height);
+        new BukkitRunnable() {
+            int index = 0;
+            @Override
+            public void run() {
                 long start = System.currentTimeMillis();
                 while (index < goal) {
                     int z = index % (z_height);
                     int y = ((index - z) % (y_length * z_height)) / z_height;
                     int x = (index - y - z) / (y_length * z_height);
-                    setBlockSingle(blocks[index], x, y, z, input);
+                    setBlockSingle(blockAt(x, y, z), x, y, z, input);
                     index++;
                     if (System.currentTimeMillis() - start > 50) {
-                        SchematicCommand.noPhys = false;
                         return;
                     }
                 }
-                SchematicCommand.noPhys = false;
                 if (runme != null) {
                     runme.run();
                 }
@@ -149,96 +375,64 @@ public class CuboidBlockSet implements BlockSet {
 
     @Override
     public void setBlocks(InputParams input) {
-        SchematicCommand.noPhys = true;
-        int index = 0;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    setBlockSingle(blocks[index], x, y, z, input);
-                    index++;
+        if (input.fakeTo != null) {
+            for (int x = 0; x < x_width; x++) {
+                for (int y = 0; y < y_length; y++) {
+                    for (int z = 0; z < z_height; z++) {
+                        setBlockSingle(blockAt(x, y, z), x, y, z, input);
+                    }
                 }
             }
+            return;
+        }
+        SchematicCommand.noPhys = true;
+        World world = input.centerLocation.getWorld();
+        int originX = input.centerLocation.getBlockX() - center_x;
+        int originY = input.centerLocation.getBlockY() - center_y;
+        int originZ = input.centerLocation.getBlockZ() - center_z;
+        int[] sections = getPasteSections(originX, originY, originZ);
+        short[] positions = new short[4096];
+        BlockData[] buffer = new BlockData[4096];
+        for (int i = 0; i < sections.length; i += 3) {
+            pasteSection(world, originX, originY, originZ, sections[i], sections[i + 1], sections[i + 2], input, positions, buffer);
         }
         SchematicCommand.noPhys = false;
     }
 
     public void rotateOne() {
-        BlockData[] bd = new BlockData[blocks.length];
-        int index = 0;
+        // New (x, y, z) is old (x_width - 1 - z, y, x)
         int cx = center_x;
         center_x = center_z;
         center_z = cx;
-        for (int x = 0; x < z_height; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = x_width - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(z, y, x);
-                }
-            }
-        }
+        boolean oldInvertX = invertX;
+        invertX = invertZ;
+        invertZ = !oldInvertX;
+        swapXZ = !swapXZ;
         int xw = x_width;
         x_width = z_height;
         z_height = xw;
-        blocks = bd;
     }
 
     public void flipX() {
-        BlockData[] bd = new BlockData[blocks.length];
-        int index = 0;
         center_x = x_width - center_x;
-        for (int x = x_width - 1; x >= 0; x--) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z);
-                }
-            }
-        }
-        blocks = bd;
+        invertX = !invertX;
     }
 
     public void flipY() {
-        BlockData[] bd = new BlockData[blocks.length];
-        int index = 0;
         center_x = x_width - center_x;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = y_length - 1; y >= 0; y--) {
-                for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z);
-                }
-            }
-        }
-        blocks = bd;
+        invertY = !invertY;
     }
 
     public void flipZ() {
-        BlockData[] bd = new BlockData[blocks.length];
-        int index = 0;
         center_x = x_width - center_x;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = z_height - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(x, y, z);
-                }
-            }
-        }
-        blocks = bd;
+        invertZ = !invertZ;
     }
 
-    public BlockData blockAt(double X, double Y, double Z) {
-        return blocks[(int) (Z + Y * z_height + X * z_height * y_length)];
-        // This calculation should produce the same result as the below nonsense:
-        /*
-        int index = 0;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    if (x == X && y == Y && z == Z) {
-                        return blocks.get(index);
-                    }
-                    index++;
-                }
-            }
-        }
-        return null;
-        */
+    public BlockData blockAt(int x, int y, int z) {
+        return storage.get(storageIndex(x, y, z));
+    }
+
+    public void setBlockAt(int x, int y, int z, BlockData block) {
+        storage.set(storageIndex(x, y, z), block);
     }
 }
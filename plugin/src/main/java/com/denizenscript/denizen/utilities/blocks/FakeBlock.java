@@ -1,47 +1,185 @@
 package com.denizenscript.denizen.utilities.blocks;
 
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.util.PacketFeatures;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.MaterialTag;
 import com.denizenscript.denizen.objects.PlayerTag;
-import com.denizenscript.denizen.utilities.DenizenAPI;
 import com.denizenscript.denizencore.objects.core.DurationTag;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
 
 import java.util.*;
 
 /**
  * Creates a temporary fake block and shows it to a PlayerTag.
+ * Fake blocks are stored per player, keyed by packed block coordinates and grouped by chunk and section.
+ * Changes are not sent immediately: they are collected per chunk, and flushed once per tick as a single multi-block-change.
  */
 public class FakeBlock {
 
+    public static long blockKey(int x, int y, int z) {
+        return (((long) x & 0x3FFFFFFL) << 38) | (((long) z & 0x3FFFFFFL) << 12) | (y & 0xFFFL);
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (((long) chunkX) << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Packs a position within a chunk the same way the multi-block-change packet does.
+     */
+    public static short chunkPosition(int x, int y, int z) {
+        return (short) (((x & 15) << 12) | ((z & 15) << 8) | (y & 255));
+    }
+
+    public static class ChunkBlocks {
+
+        public final FakeBlockMap map;
+
+        public final String worldName;
+
+        public final int chunkX, chunkZ;
+
+        public final ArrayList<FakeBlock>[] sections = new ArrayList[16];
+
+        public int count;
+
+        public short[] dirty = null;
+
+        public int dirtyCount;
+
+        public ChunkBlocks(FakeBlockMap map, String worldName, int chunkX, int chunkZ) {
+            this.map = map;
+            this.worldName = worldName;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        public boolean hasSection(int sectionY) {
+            return sections[sectionY] != null && !sections[sectionY].isEmpty();
+        }
+
+        public List<FakeBlock> getAll() {
+            List<FakeBlock> result = new ArrayList<>(count);
+            for (ArrayList<FakeBlock> section : sections) {
+                if (section != null) {
+                    result.addAll(section);
+                }
+            }
+            return result;
+        }
+
+        public void markDirty(short position) {
+            if (dirty == null) {
+                dirty = new short[16];
+            }
+            else if (dirtyCount == dirty.length) {
+                dirty = Arrays.copyOf(dirty, dirty.length * 2);
+            }
+            if (dirtyCount == 0) {
+                map.dirtyChunks.add(this);
+                if (map.dirtyChunks.size() == 1) {
+                    dirtyMaps.add(map);
+                }
+            }
+            dirty[dirtyCount++] = position;
+        }
+    }
+
+    public static class WorldBlocks {
+
+        public final HashMap<Long, FakeBlock> byPosition = new HashMap<>();
+
+        public final HashMap<Long, ChunkBlocks> byChunk = new HashMap<>();
+    }
+
     public static class FakeBlockMap {
 
-        public Map<LocationTag, FakeBlock> byLocation = new HashMap<>();
+        public final UUID playerId;
+
+        public final HashMap<String, WorldBlocks> byWorld = new HashMap<>();
+
+        public final ArrayList<ChunkBlocks> dirtyChunks = new ArrayList<>();
+
+        public FakeBlockMap(UUID playerId) {
+            this.playerId = playerId;
+        }
+
+        public FakeBlock get(String worldName, int x, int y, int z) {
+            WorldBlocks world = byWorld.get(worldName);
+            if (world == null) {
+                return null;
+            }
+            return world.byPosition.get(blockKey(x, y, z));
+        }
+
+        public FakeBlock get(LocationTag location) {
+            return get(location.getWorldName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        }
 
-        public Map<ChunkCoordinate, List<FakeBlock>> byChunk = new HashMap<>();
+        public ChunkBlocks getChunk(String worldName, int chunkX, int chunkZ) {
+            WorldBlocks world = byWorld.get(worldName);
+            if (world == null) {
+                return null;
+            }
+            return world.byChunk.get(chunkKey(chunkX, chunkZ));
+        }
+
+        public List<LocationTag> getLocations() {
+            List<LocationTag> result = new ArrayList<>();
+            for (WorldBlocks world : byWorld.values()) {
+                for (FakeBlock block : world.byPosition.values()) {
+                    result.add(block.location);
+                }
+            }
+            return result;
+        }
 
         public FakeBlock getOrAdd(PlayerTag player, LocationTag location) {
-            FakeBlock block = byLocation.get(location);
+            String worldName = location.getWorldName();
+            WorldBlocks world = byWorld.computeIfAbsent(worldName, k -> new WorldBlocks());
+            long key = blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+            FakeBlock block = world.byPosition.get(key);
             if (block != null) {
                 return block;
             }
-            block = new FakeBlock(player, location);
-            byLocation.put(location, block);
-            List<FakeBlock> chunkBlocks = byChunk.get(block.chunkCoord);
-            if (chunkBlocks == null) {
-                chunkBlocks = new ArrayList<>();
-                byChunk.put(block.chunkCoord, chunkBlocks);
+            int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+            ChunkBlocks chunk = world.byChunk.computeIfAbsent(chunkKey(chunkX, chunkZ), k -> new ChunkBlocks(this, worldName, chunkX, chunkZ));
+            block = new FakeBlock(player, new LocationTag(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ()), key, chunk);
+            world.byPosition.put(key, block);
+            int sectionY = location.getBlockY() >> 4;
+            ArrayList<FakeBlock> section = chunk.sections[sectionY];
+            if (section == null) {
+                section = new ArrayList<>();
+                chunk.sections[sectionY] = section;
             }
-            chunkBlocks.add(block);
+            block.sectionIndex = section.size();
+            section.add(block);
+            chunk.count++;
             return block;
         }
 
         public void remove(FakeBlock block) {
-            if (byLocation.remove(block.location) != null) {
-                List<FakeBlock> chunkBlocks = byChunk.get(block.chunkCoord);
-                if (chunkBlocks != null) {
-                    chunkBlocks.remove(block);
+            WorldBlocks world = byWorld.get(block.chunk.worldName);
+            if (world == null || world.byPosition.remove(block.key) == null) {
+                return;
+            }
+            ArrayList<FakeBlock> section = block.chunk.sections[block.location.getBlockY() >> 4];
+            FakeBlock last = section.remove(section.size() - 1);
+            if (last != block) {
+                section.set(block.sectionIndex, last);
+                last.sectionIndex = block.sectionIndex;
+            }
+            if (--block.chunk.count == 0) {
+                world.byChunk.remove(chunkKey(block.chunk.chunkX, block.chunk.chunkZ));
+                if (world.byChunk.isEmpty()) {
+                    byWorld.remove(block.chunk.worldName);
+                    if (byWorld.isEmpty()) {
+                        blocks.remove(playerId);
+                        PacketFeatures.setActive(PacketFeatures.Feature.FAKE_BLOCKS, !blocks.isEmpty());
+                    }
                 }
             }
         }
@@ -54,30 +192,44 @@ public class FakeBlock {
         if (map == null) {
             return null;
         }
-        return map.byLocation.get(location);
+        return map.get(location);
+    }
+
+    public static FakeBlock getFakeBlockFor(UUID id, String worldName, int x, int y, int z) {
+        FakeBlockMap map = blocks.get(id);
+        if (map == null) {
+            return null;
+        }
+        return map.get(worldName, x, y, z);
     }
 
-    public static List<FakeBlock> getFakeBlocksFor(UUID id, ChunkCoordinate chunkCoord) {
+    public static ChunkBlocks getFakeBlocksFor(UUID id, String worldName, int chunkX, int chunkZ) {
         FakeBlockMap map = blocks.get(id);
         if (map == null) {
             return null;
         }
-        return map.byChunk.get(chunkCoord);
+        return map.getChunk(worldName, chunkX, chunkZ);
     }
 
     public final PlayerTag player;
     public final LocationTag location;
-    public final ChunkCoordinate chunkCoord;
+    public final long key;
+    public final ChunkBlocks chunk;
+    public int sectionIndex;
     public MaterialTag material;
-    public BukkitTask currentTask = null;
+    public long expireTick = -1;
 
-    private FakeBlock(PlayerTag player, LocationTag location) {
+    private FakeBlock(PlayerTag player, LocationTag location, long key, ChunkBlocks chunk) {
         this.player = player;
         this.location = location;
-        this.chunkCoord = new ChunkCoordinate(location);
+        this.key = key;
+        this.chunk = chunk;
     }
 
     public static void showFakeBlockTo(List<PlayerTag> players, LocationTag location, MaterialTag material, DurationTag duration) {
+        if (location.getBlockY() < 0 || location.getBlockY() > 255) {
+            return;
+        }
         for (PlayerTag player : players) {
             if (!player.isOnline() || !player.isValid()) {
                 continue;
@@ -85,20 +237,20 @@ public class FakeBlock {
             UUID uuid = player.getPlayerEntity().getUniqueId();
             FakeBlockMap playerBlocks = blocks.get(uuid);
             if (playerBlocks == null) {
-                playerBlocks = new FakeBlockMap();
+                playerBlocks = new FakeBlockMap(uuid);
                 blocks.put(uuid, playerBlocks);
+                PacketFeatures.setActive(PacketFeatures.Feature.FAKE_BLOCKS, true);
             }
             FakeBlock block = playerBlocks.getOrAdd(player, location);
             block.updateBlock(material, duration);
         }
-        lastChunkRefresh.clear();
     }
 
     public static void stopShowingTo(List<PlayerTag> players, final LocationTag location) {
         for (PlayerTag player : players) {
-            FakeBlockMap playerBlocks = blocks.get(player.getPlayerEntity().getUniqueId());
+            FakeBlockMap playerBlocks = blocks.get(player.getOfflinePlayer().getUniqueId());
             if (playerBlocks != null) {
-                FakeBlock block = playerBlocks.byLocation.get(location);
+                FakeBlock block = playerBlocks.get(location);
                 if (block != null) {
                     block.cancelBlock();
                 }
@@ -106,49 +258,118 @@ public class FakeBlock {
         }
     }
 
-    public static HashMap<ChunkCoordinate, Long> lastChunkRefresh = new HashMap<>();
-
     public void cancelBlock() {
-        if (currentTask != null) {
-            currentTask.cancel();
-            currentTask = null;
-        }
+        expireTick = -1;
         material = null;
-        if (player.isOnline()) {
-            location.getBlock().getState().update();
-            Long l = lastChunkRefresh.get(chunkCoord);
-            if (l == null || l < location.getWorld().getFullTime()) {
-                lastChunkRefresh.put(chunkCoord, location.getWorld().getFullTime());
-                location.getWorld().refreshChunk(chunkCoord.x, chunkCoord.z);
-            }
-        }
-        FakeBlockMap mapping = blocks.get(player.getOfflinePlayer().getUniqueId());
-        mapping.remove(this);
+        chunk.markDirty(chunkPosition(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+        chunk.map.remove(this);
     }
 
     private void updateBlock(MaterialTag material, DurationTag duration) {
-        if (currentTask != null) {
-            currentTask.cancel();
-        }
         this.material = material;
-        if (!player.hasChunkLoaded(location.getChunk())) {
-            return;
-        }
-        if (material.hasModernData()) {
-            material.getModernData().sendFakeChangeTo(player.getPlayerEntity(), location);
+        chunk.markDirty(chunkPosition(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+        if (duration != null && duration.getTicks() > 0) {
+            scheduleExpiry(this, duration.getTicks());
         }
         else {
-            player.getPlayerEntity().sendBlockChange(location, material.getMaterial(), material.getMaterialData().getData());
+            expireTick = -1;
         }
-        if (duration != null && duration.getTicks() > 0) {
-            currentTask = new BukkitRunnable() {
-                @Override
-                public void run() {
-                    currentTask = null;
-                    cancelBlock();
+    }
+
+    ///////////////
+    // Tick handling
+    /////////////
+
+    public static final int EXPIRY_WHEEL_SIZE = 1024;
+
+    private static final ArrayList<FakeBlock>[] expiryWheel = new ArrayList[EXPIRY_WHEEL_SIZE];
+
+    public static long currentTick = 0;
+
+    private static final ArrayList<FakeBlockMap> dirtyMaps = new ArrayList<>();
+
+    /**
+     * Schedules a fake block to be removed after the given number of ticks, on the shared expiry wheel.
+     * Outdated wheel entries (from a block being re-shown with a new duration) are skipped when their slot comes up.
+     */
+    private static void scheduleExpiry(FakeBlock block, long ticks) {
+        block.expireTick = currentTick + ticks;
+        int slot = (int) (block.expireTick & (EXPIRY_WHEEL_SIZE - 1));
+        ArrayList<FakeBlock> bucket = expiryWheel[slot];
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            expiryWheel[slot] = bucket;
+        }
+        bucket.add(block);
+    }
+
+    /**
+     * Called once per server tick: expires fake blocks that are due, then sends all pending changes.
+     */
+    public static void tick() {
+        currentTick++;
+        int slot = (int) (currentTick & (EXPIRY_WHEEL_SIZE - 1));
+        ArrayList<FakeBlock> bucket = expiryWheel[slot];
+        if (bucket != null) {
+            expiryWheel[slot] = null;
+            ArrayList<FakeBlock> remaining = null;
+            for (FakeBlock block : bucket) {
+                if (block.expireTick == currentTick) {
+                    block.cancelBlock();
                 }
-            }.runTaskLater(DenizenAPI.getCurrentInstance(), duration.getTicks());
+                else if (block.expireTick > currentTick && (block.expireTick & (EXPIRY_WHEEL_SIZE - 1)) == slot) {
+                    if (remaining == null) {
+                        remaining = new ArrayList<>();
+                    }
+                    remaining.add(block);
+                }
+            }
+            if (remaining != null) {
+                if (expiryWheel[slot] != null) {
+                    remaining.addAll(expiryWheel[slot]);
+                }
+                expiryWheel[slot] = remaining;
+            }
+        }
+        if (!dirtyMaps.isEmpty()) {
+            for (FakeBlockMap map : dirtyMaps) {
+                flush(map);
+            }
+            dirtyMaps.clear();
         }
     }
-}
 
+    private static void flush(FakeBlockMap map) {
+        Player player = Bukkit.getPlayer(map.playerId);
+        for (ChunkBlocks chunk : map.dirtyChunks) {
+            int count = chunk.dirtyCount;
+            short[] positions = chunk.dirty;
+            chunk.dirty = null;
+            chunk.dirtyCount = 0;
+            if (player == null) {
+                continue;
+            }
+            World world = player.getWorld();
+            if (!world.getName().equals(chunk.worldName) || !world.isChunkLoaded(chunk.chunkX, chunk.chunkZ)
+                    || !NMSHandler.getPlayerHelper().hasChunkLoaded(player, world.getChunkAt(chunk.chunkX, chunk.chunkZ))) {
+                continue;
+            }
+            Arrays.sort(positions, 0, count);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || positions[i] != positions[i - 1]) {
+                    positions[unique++] = positions[i];
+                }
+            }
+            MaterialTag[] materials = new MaterialTag[unique];
+            int baseX = chunk.chunkX << 4, baseZ = chunk.chunkZ << 4;
+            for (int i = 0; i < unique; i++) {
+                int position = positions[i];
+                FakeBlock block = map.get(chunk.worldName, baseX + ((position >> 12) & 15), position & 255, baseZ + ((position >> 8) & 15));
+                materials[i] = block == null ? null : block.material;
+            }
+            NMSHandler.getPacketHelper().sendMultiBlockChange(player, chunk.chunkX, chunk.chunkZ, positions, materials, unique);
+        }
+        map.dirtyChunks.clear();
+    }
+}
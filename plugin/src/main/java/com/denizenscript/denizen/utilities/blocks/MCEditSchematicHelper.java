@@ -49,7 +49,7 @@ public class MCEditSchematicHelper {
             cbs.center_x = originX;
             cbs.center_y = originY;
             cbs.center_z = originZ;
-            cbs.blocks = new BlockData[width * length * height];
+            cbs.initBlocks();
             // Disregard Offset
             String materials = getChildTag(schematic, "Materials", StringTag.class).getValue();
             if (!materials.equals("Alpha")) {
@@ -107,7 +107,6 @@ public class MCEditSchematicHelper {
                 BlockVector vec = new BlockVector(x, y, z);
                 tileEntitiesMap.put(vec, values);
             }
-            int finalIndex = 0;
             for (int x = 0; x < width; x++) {
                 for (int y = 0; y < height; y++) {
                     for (int z = 0; z < length; z++) {
@@ -119,7 +118,7 @@ public class MCEditSchematicHelper {
                             CompoundTag otag = NMSHandler.getInstance().createCompoundTag(tileEntitiesMap.get(pt));
                             block.setCompoundTag(otag);
                         }
-                        cbs.blocks[finalIndex++] = block;
+                        cbs.setBlockAt(x, y, z, block);
                     }
                 }
             }
@@ -162,13 +161,11 @@ public class MCEditSchematicHelper {
             byte[] addBlocks = null;
             byte[] blockData = new byte[blocks.length];
             ArrayList<Tag> tileEntities = new ArrayList<>();
-            int indexer = 0;
             for (int x = 0; x < blockSet.x_width; x++) {
                 for (int y = 0; y < blockSet.y_length; y++) {
                     for (int z = 0; z < blockSet.z_height; z++) {
                         int index = (y * (blockSet.x_width) * (blockSet.z_height) + z * (blockSet.x_width) + x);
-                        BlockData bd = blockSet.blocks[indexer];//blockAt(x, y, z);
-                        indexer++;
+                        BlockData bd = blockSet.blockAt(x, y, z);
                         int matId = NMSHandler.getBlockHelper().idFor(bd.getMaterial());
                         if (matId > 255) {
                             if (addBlocks == null) {
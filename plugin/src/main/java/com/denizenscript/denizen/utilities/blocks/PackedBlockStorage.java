@@ -0,0 +1,103 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.NMSVersion;
+import com.denizenscript.denizen.nms.interfaces.BlockData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact storage for a large array of blocks: a palette of distinct block data, and a bit-packed array of palette ids.
+ * Entries do not span across two longs (similar to the modern chunk section format), and the bits per entry grow as the palette does.
+ * Blocks with tile entity data are never shared, and get a palette entry of their own.
+ */
+public class PackedBlockStorage {
+
+    public final int size;
+
+    public final ArrayList<BlockData> palette = new ArrayList<>();
+
+    private final HashMap<Object, Integer> paletteIds = new HashMap<>();
+
+    public int bits;
+
+    private int perLong;
+
+    private long mask;
+
+    public long[] data;
+
+    public PackedBlockStorage(int size) {
+        this.size = size;
+        palette.add(null);
+        setBits(1, null);
+    }
+
+    private void setBits(int newBits, long[] oldData) {
+        int oldBits = bits, oldPerLong = perLong;
+        long oldMask = mask;
+        bits = newBits;
+        perLong = 64 / bits;
+        mask = (1L << bits) - 1;
+        data = new long[(size + perLong - 1) / perLong];
+        if (oldData != null) {
+            for (int i = 0; i < size; i++) {
+                setId(i, (int) ((oldData[i / oldPerLong] >>> ((i % oldPerLong) * oldBits)) & oldMask));
+            }
+        }
+    }
+
+    public int getId(int index) {
+        return (int) ((data[index / perLong] >>> ((index % perLong) * bits)) & mask);
+    }
+
+    public void setId(int index, int id) {
+        int shift = (index % perLong) * bits;
+        int word = index / perLong;
+        data[word] = (data[word] & ~(mask << shift)) | (((long) id & mask) << shift);
+    }
+
+    public BlockData get(int index) {
+        return palette.get(getId(index));
+    }
+
+    public void set(int index, BlockData block) {
+        setId(index, idFor(block));
+    }
+
+    /**
+     * Returns the palette id for the block, adding it to the palette (and widening the storage) if needed.
+     */
+    public int idFor(BlockData block) {
+        if (block == null) {
+            return 0;
+        }
+        Object key = paletteKey(block);
+        if (key != null) {
+            Integer id = paletteIds.get(key);
+            if (id != null) {
+                return id;
+            }
+        }
+        int id = palette.size();
+        palette.add(block);
+        if (key != null) {
+            paletteIds.put(key, id);
+        }
+        if (id > mask) {
+            setBits(bits + 1, data);
+        }
+        return id;
+    }
+
+    private static Object paletteKey(BlockData block) {
+        if (block.getCompoundTag() != null) {
+            return null;
+        }
+        if (NMSHandler.getVersion().isAtLeast(NMSVersion.v1_13)) {
+            return block.modern().data;
+        }
+        return (block.getMaterial().ordinal() << 8) | (block.getData() & 0xFF);
+    }
+}
@@ -52,7 +52,7 @@ public class SpongeSchematicHelper {
             cbs.center_x = originX;
             cbs.center_y = originY;
             cbs.center_z = originZ;
-            cbs.blocks = new BlockData[width * length * height];
+            cbs.initBlocks();
             Map<String, Tag> paletteMap = getChildTag(schematic, "Palette", CompoundTag.class).getValue();
             HashMap<Integer, ModernBlockData> palette = new HashMap<>(256);
             for (String key : paletteMap.keySet()) {
@@ -97,13 +97,12 @@ public class SpongeSchematicHelper {
                 int y = index / (width * length);
                 int z = (index % (width * length)) / width;
                 int x = (index % (width * length)) % width;
-                int cbsIndex = z + y * cbs.z_height + x * cbs.z_height * cbs.y_length;
                 BlockVector pt = new BlockVector(x, y, z);
                 if (tileEntitiesMap.containsKey(pt)) {
                     CompoundTag otag = NMSHandler.getInstance().createCompoundTag(tileEntitiesMap.get(pt));
                     block.setCompoundTag(otag);
                 }
-                cbs.blocks[cbsIndex] = block;
+                cbs.setBlockAt(x, y, z, block);
                 index++;
             }
         }
@@ -138,8 +137,7 @@ public class SpongeSchematicHelper {
             for (int y = 0; y < blockSet.y_length; y++) {
                 for (int z = 0; z < blockSet.z_height; z++) {
                     for (int x = 0; x < blockSet.x_width; x++) {
-                        int cbsIndex = z + y * blockSet.z_height + x * blockSet.z_height * blockSet.y_length;
-                        BlockData bd = blockSet.blocks[cbsIndex];
+                        BlockData bd = blockSet.blockAt(x, y, z);
                         String dataStr = bd.modern().data.getAsString();
                         Tag blockIdTag = palette.get(dataStr);
                         if (blockIdTag == null) {
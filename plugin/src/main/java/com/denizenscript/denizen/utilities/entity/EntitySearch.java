@@ -0,0 +1,92 @@
+package com.denizenscript.denizen.utilities.entity;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Finds entities near a location. World searches only visit the chunks overlapping the search radius,
+ * and results are sorted by distance, with each distance computed only once.
+ * If a limit is given, only the nearest results are kept, using a bounded heap.
+ */
+public class EntitySearch {
+
+    private static class Match<T> {
+
+        public final T value;
+
+        public final double distanceSquared;
+
+        public Match(T value, double distanceSquared) {
+            this.value = value;
+            this.distanceSquared = distanceSquared;
+        }
+    }
+
+    private static final Comparator<Match<?>> NEAREST_FIRST = Comparator.comparingDouble(match -> match.distanceSquared);
+
+    /**
+     * Returns the entities whose bounding box might fall within the radius, only checking the chunks that overlap it.
+     */
+    public static Collection<Entity> getCandidates(Location center, double radius) {
+        World world = center.getWorld();
+        NMSHandler.getChunkHelper().changeChunkServerThread(world);
+        try {
+            return world.getNearbyEntities(center, radius, radius, radius);
+        }
+        finally {
+            NMSHandler.getChunkHelper().restoreServerThread(world);
+        }
+    }
+
+    /**
+     * Finds all entities within the radius of the center, converted by the converter (which may return null to exclude an entity).
+     * Results are sorted by distance from 'sortFrom'. A limit of 0 or less means no limit.
+     */
+    public static <T> List<T> findNearby(Collection<? extends Entity> candidates, Location center, double radius, Location sortFrom, int limit, Function<Entity, T> converter) {
+        double radiusSquared = radius * radius;
+        Location entityLocation = new Location(center.getWorld(), 0, 0, 0);
+        PriorityQueue<Match<T>> heap = limit > 0 ? new PriorityQueue<>(limit + 1, NEAREST_FIRST.reversed()) : null;
+        List<Match<T>> matches = limit > 0 ? null : new ArrayList<>();
+        for (Entity entity : candidates) {
+            entity.getLocation(entityLocation);
+            if (entityLocation.getWorld() != center.getWorld() || entityLocation.distanceSquared(center) >= radiusSquared) {
+                continue;
+            }
+            double distanceSquared = entityLocation.distanceSquared(sortFrom);
+            if (heap != null && heap.size() >= limit && distanceSquared >= heap.peek().distanceSquared) {
+                continue;
+            }
+            T value = converter.apply(entity);
+            if (value == null) {
+                continue;
+            }
+            if (heap != null) {
+                heap.add(new Match<>(value, distanceSquared));
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+            else {
+                matches.add(new Match<>(value, distanceSquared));
+            }
+        }
+        if (heap != null) {
+            matches = new ArrayList<>(heap);
+        }
+        matches.sort(NEAREST_FIRST);
+        List<T> result = new ArrayList<>(matches.size());
+        for (Match<T> match : matches) {
+            result.add(match.value);
+        }
+        return result;
+    }
+
+    public static <T> List<T> findNearby(Location center, double radius, Location sortFrom, int limit, Function<Entity, T> converter) {
+        return findNearby(getCandidates(center, radius), center, radius, sortFrom, limit, converter);
+    }
+}
@@ -41,11 +41,13 @@ public class DenizenMapManager {
         }
         mapRenderers.clear();
         downloadedByUrl.clear();
+        MapAnimation.clearCache();
         mapsConfig = YamlConfiguration.loadConfiguration(mapsFile);
         ConfigurationSection mapsSection = mapsConfig.getConfigurationSection("MAPS");
         if (mapsSection == null) {
             return;
         }
+        MapColorTable.buildAsync();
         for (String key : mapsSection.getKeys(false)) {
             int mapId = Integer.valueOf(key);
             MapView mapView = Bukkit.getServer().getMap((short) mapId); // TODO: ??? (deprecated short method)
@@ -87,12 +89,15 @@ public class DenizenMapManager {
                     String file = objectsData.getString(objectKey + ".image");
                     int width = objectsData.getInt(objectKey + ".width", 0);
                     int height = objectsData.getInt(objectKey + ".height", 0);
+                    MapImage image;
                     if (CoreUtilities.toLowerCase(file).endsWith(".gif")) {
-                        object = new MapAnimatedImage(xTag, yTag, visibilityTag, debug, file, width, height);
+                        image = new MapAnimatedImage(xTag, yTag, visibilityTag, debug, file, width, height);
                     }
                     else {
-                        object = new MapImage(xTag, yTag, visibilityTag, debug, file, width, height);
+                        image = new MapImage(xTag, yTag, visibilityTag, debug, file, width, height);
                     }
+                    image.dither = objectsData.getString(objectKey + ".dither", "false").equalsIgnoreCase("true");
+                    object = image;
                 }
                 else if (type.equals("TEXT")) {
                     object = new MapText(xTag, yTag, visibilityTag, debug,
@@ -2,12 +2,14 @@ package com.denizenscript.denizen.utilities.maps;
 
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.DenizenAPI;
+import com.denizenscript.denizen.utilities.Settings;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import org.bukkit.entity.Player;
 import org.bukkit.map.MapCanvas;
 import org.bukkit.map.MapRenderer;
 import org.bukkit.map.MapView;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
 
 public class DenizenMapRenderer extends MapRenderer {
@@ -20,6 +22,13 @@ public class DenizenMapRenderer extends MapRenderer {
 
     private boolean active;
 
+    // When each player's tag results are next due to be re-read
+    private final Map<UUID, Long> nextUpdates = new HashMap<>();
+
+    // Players whose canvas holds a complete render, so it only needs repainting when something changes.
+    // Bukkit gives each Player object its own canvas, so a player who logged back in has a new, empty canvas.
+    private final Map<UUID, WeakReference<Player>> renderedTo = new HashMap<>();
+
     public DenizenMapRenderer(List<MapRenderer> oldMapRenderers, boolean autoUpdate) {
         super(true);
         this.oldMapRenderers = oldMapRenderers;
@@ -32,7 +41,9 @@ public class DenizenMapRenderer extends MapRenderer {
 
     public void addObject(MapObject object) {
         if (active) {
+            object.renderer = this;
             mapObjects.add(object);
+            renderedTo.clear();
         }
         else {
             throw new IllegalStateException("DenizenMapRenderer is not active");
@@ -50,6 +61,8 @@ public class DenizenMapRenderer extends MapRenderer {
         this.active = false;
         mapObjects.clear();
         oldMapRenderers.clear();
+        nextUpdates.clear();
+        renderedTo.clear();
     }
 
     public boolean isActive() {
@@ -80,6 +93,42 @@ public class DenizenMapRenderer extends MapRenderer {
         }
         if (active) {
             try {
+                UUID uuid = player.getUniqueId();
+                PlayerTag p = PlayerTag.mirrorBukkitPlayer(player);
+                // The original map can change at any time, so it has to be repainted every time
+                WeakReference<Player> rendered = renderedTo.get(uuid);
+                boolean newCanvas = rendered == null || rendered.get() != player;
+                boolean changed = displayOriginal || newCanvas;
+                if (newCanvas) {
+                    for (MapObject object : mapObjects) {
+                        object.resetCanvas(uuid);
+                    }
+                }
+                if (autoUpdate) {
+                    long now = System.currentTimeMillis();
+                    Long nextUpdate = nextUpdates.get(uuid);
+                    if (nextUpdate == null || now >= nextUpdate) {
+                        // Allow half a tick of timing jitter, so that an interval of one tick updates every tick
+                        nextUpdates.put(uuid, now + Settings.mapTagUpdateInterval().getMillis() - 25);
+                        for (MapObject object : mapObjects) {
+                            object.lastMap = mapView;
+                            changed |= object.update(p, uuid);
+                        }
+                    }
+                }
+                if (!changed) {
+                    for (MapObject object : mapObjects) {
+                        if (object.isVisibleTo(p, uuid) && object.needsRender(uuid)) {
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+                if (!changed) {
+                    // The canvas (and its cursors) still holds the last render
+                    return;
+                }
+                renderedTo.put(uuid, new WeakReference<>(player));
                 while (mapCanvas.getCursors().size() > 0) {
                     mapCanvas.getCursors().removeCursor(mapCanvas.getCursors().getCursor(0));
                 }
@@ -88,13 +137,7 @@ public class DenizenMapRenderer extends MapRenderer {
                         oldR.render(mapView, mapCanvas, player);
                     }
                 }
-                UUID uuid = player.getUniqueId();
-                PlayerTag p = PlayerTag.mirrorBukkitPlayer(player);
                 for (MapObject object : mapObjects) {
-                    if (autoUpdate) {
-                        object.lastMap = mapView;
-                        object.update(p, uuid);
-                    }
                     if (object.isVisibleTo(p, uuid)) {
                         object.render(mapView, mapCanvas, p, uuid);
                     }
@@ -1,44 +1,110 @@
 package com.denizenscript.denizen.utilities.maps;
 
 import com.denizenscript.denizen.objects.PlayerTag;
+import com.denizenscript.denizen.utilities.debugging.Debug;
 import org.bukkit.map.MapCanvas;
 import org.bukkit.map.MapView;
 
-import java.awt.*;
-import java.awt.image.ImageObserver;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class MapAnimatedImage extends MapImage {
 
-    protected AnimationObserver observer = null;
+    protected CompletableFuture<MapAnimation> animation = null;
+
+    // The frame index and position last drawn to each player's canvas
+    protected Map<UUID, int[]> lastDrawn = new HashMap<>();
+
+    // The frame index last rendered to each player, whatever the canvas
+    protected Map<UUID, Integer> lastFrames = new HashMap<>();
 
     public MapAnimatedImage(String xTag, String yTag, String visibilityTag, boolean debug, String fileTag, int width, int height) {
         super(xTag, yTag, visibilityTag, debug, fileTag, width, height, false);
     }
 
-    @Override
-    public void render(MapView mapView, MapCanvas mapCanvas, PlayerTag player, UUID uuid) {
-        super.render(mapView, mapCanvas, player, uuid);
-        if (observer == null) {
-            observer = new AnimationObserver(this);
-            imageIcon.setImageObserver(observer);
-        }
+    /**
+     * Returns whether nothing else draws to this object's canvas, so that pixels drawn in an earlier render are still there.
+     */
+    protected boolean ownsCanvas() {
+        return renderer != null && !renderer.displayOriginal && renderer.mapObjects.size() == 1;
     }
 
-    public class AnimationObserver implements ImageObserver {
-
-        private final MapAnimatedImage image;
+    @Override
+    public void resetCanvas(UUID uuid) {
+        lastDrawn.remove(uuid);
+        lastFrames.remove(uuid);
+    }
 
-        AnimationObserver(MapAnimatedImage image) {
-            this.image = image;
+    @Override
+    public boolean needsRender(UUID uuid) {
+        if (disabled || animation == null || !animation.isDone()) {
+            return false;
         }
-
-        @Override
-        public boolean imageUpdate(Image gif, int infoflags, int x, int y, int width, int height) {
-            image.setImage(gif);
+        if (animation.isCompletedExceptionally()) {
             return true;
         }
-
+        Integer last = lastFrames.get(uuid);
+        return last == null || last != animation.join().getFrameIndex(System.currentTimeMillis());
     }
 
+    @Override
+    public void render(MapView mapView, MapCanvas mapCanvas, PlayerTag player, UUID uuid) {
+        if (actualFile == null) {
+            actualFile = DenizenMapManager.getActualFile(fileTag);
+            if (actualFile == null) {
+                disabled = true;
+                return;
+            }
+            animation = MapAnimation.load(actualFile, width, height, dither);
+        }
+        if (disabled || !animation.isDone()) {
+            return;
+        }
+        MapAnimation loaded;
+        try {
+            loaded = animation.join();
+        }
+        catch (CompletionException ex) {
+            Debug.echoError("Image loading failed (bad animation) for image " + fileTag);
+            Debug.echoError(ex.getCause());
+            disabled = true;
+            return;
+        }
+        int index = loaded.getFrameIndex(System.currentTimeMillis());
+        MapAnimation.Frame frame = loaded.frames[index];
+        lastFrames.put(uuid, index);
+        int x = getX(player, uuid);
+        int y = getY(player, uuid);
+        int[] last = lastDrawn.get(uuid);
+        boolean owned = ownsCanvas();
+        if (owned && last != null && last[1] == x && last[2] == y) {
+            if (last[0] == index) {
+                return;
+            }
+            if (last[0] == loaded.getPreviousIndex(index)) {
+                // The canvas still shows the previous frame, so only the pixels that changed need drawing
+                int[] bounds = frame.changedBounds;
+                if (bounds != null) {
+                    drawBytes(mapCanvas, frame.pixels, loaded.width, x, y, bounds[0], bounds[1], bounds[2], bounds[3], true);
+                }
+                last[0] = index;
+                return;
+            }
+        }
+        if (owned) {
+            // Transparent pixels must be drawn too, to clear the last frame drawn
+            drawBytes(mapCanvas, frame.pixels, loaded.width, x, y, 0, 0, loaded.width - 1, loaded.height - 1, true);
+            lastDrawn.put(uuid, new int[] {index, x, y});
+        }
+        else {
+            if (frame.opaqueBounds != null) {
+                int[] bounds = frame.opaqueBounds;
+                drawBytes(mapCanvas, frame.pixels, loaded.width, x, y, bounds[0], bounds[1], bounds[2], bounds[3], false);
+            }
+            lastDrawn.remove(uuid);
+        }
+    }
 }
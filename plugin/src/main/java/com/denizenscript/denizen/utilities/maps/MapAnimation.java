@@ -0,0 +1,220 @@
+package com.denizenscript.denizen.utilities.maps;
+
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import org.bukkit.Bukkit;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The frames of an animated GIF, already converted to map colors.
+ * Animations are decoded once on another thread, and shared between every map object showing the same file at the same size.
+ * Frames are timed by the server clock, so every map showing an animation shows the same frame.
+ */
+public class MapAnimation {
+
+    public static class Frame {
+
+        public final byte[] pixels;
+
+        public final int duration;
+
+        // The bounds (min x, min y, max x, max y) of the frame's non-transparent pixels, or null if it's fully transparent
+        public int[] opaqueBounds;
+
+        // The bounds of the pixels that differ from the previous frame, or null if there are none
+        public int[] changedBounds;
+
+        public Frame(byte[] pixels, int duration) {
+            this.pixels = pixels;
+            this.duration = duration;
+        }
+    }
+
+    public final int width;
+
+    public final int height;
+
+    public final Frame[] frames;
+
+    private final int[] frameEnds;
+
+    private final int totalDuration;
+
+    public MapAnimation(int width, int height, List<Frame> frames) {
+        this.width = width;
+        this.height = height;
+        this.frames = frames.toArray(new Frame[0]);
+        this.frameEnds = new int[this.frames.length];
+        int time = 0;
+        for (int i = 0; i < this.frames.length; i++) {
+            Frame frame = this.frames[i];
+            time += frame.duration;
+            frameEnds[i] = time;
+            frame.opaqueBounds = getBounds(frame.pixels, null);
+            frame.changedBounds = getBounds(frame.pixels, this.frames[(i + this.frames.length - 1) % this.frames.length].pixels);
+        }
+        this.totalDuration = time;
+    }
+
+    private int[] getBounds(byte[] pixels, byte[] previous) {
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (previous == null ? pixels[i] != 0 : pixels[i] != previous[i]) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        return maxX == -1 ? null : new int[] {minX, minY, maxX, maxY};
+    }
+
+    /**
+     * Returns the index of the frame to show at the given server time, in milliseconds.
+     */
+    public int getFrameIndex(long time) {
+        if (frames.length == 1 || totalDuration <= 0) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(frameEnds, (int) (time % totalDuration));
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    public int getPreviousIndex(int index) {
+        return index == 0 ? frames.length - 1 : index - 1;
+    }
+
+    private static final Map<String, CompletableFuture<MapAnimation>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the animation for a GIF file, decoding it on another thread if it isn't cached. A width or height of 0 means the GIF's own size.
+     */
+    public static CompletableFuture<MapAnimation> load(String file, int width, int height, boolean dither) {
+        String key = file + ":" + width + "x" + height + (dither ? ":dither" : "");
+        return cache.computeIfAbsent(key, k -> {
+            CompletableFuture<MapAnimation> result = new CompletableFuture<>();
+            Bukkit.getScheduler().runTaskAsynchronously(DenizenAPI.getCurrentInstance(), () -> {
+                try {
+                    result.complete(decode(file, width, height, dither));
+                }
+                catch (Throwable ex) {
+                    cache.remove(k, result);
+                    result.completeExceptionally(ex);
+                }
+            });
+            return result;
+        });
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static Node getChild(Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static String getAttribute(Node node, String name, String fallback) {
+        NamedNodeMap attributes = node == null ? null : node.getAttributes();
+        Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+        return attribute == null ? fallback : attribute.getNodeValue();
+    }
+
+    private static int getIntAttribute(Node node, String name) {
+        return Integer.parseInt(getAttribute(node, name, "0"));
+    }
+
+    private static MapAnimation decode(String file, int width, int height, boolean dither) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            throw new IOException("No GIF reader available");
+        }
+        ImageReader reader = readers.next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(file))) {
+            if (input == null) {
+                throw new IOException("Cannot read file " + file);
+            }
+            reader.setInput(input, false);
+            int frameCount = reader.getNumImages(true);
+            int screenWidth = 0, screenHeight = 0;
+            IIOMetadata streamData = reader.getStreamMetadata();
+            if (streamData != null) {
+                Node screen = getChild(streamData.getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+                screenWidth = getIntAttribute(screen, "logicalScreenWidth");
+                screenHeight = getIntAttribute(screen, "logicalScreenHeight");
+            }
+            if (screenWidth <= 0 || screenHeight <= 0) {
+                screenWidth = reader.getWidth(0);
+                screenHeight = reader.getHeight(0);
+            }
+            int mapWidth = width > 0 ? width : screenWidth;
+            int mapHeight = height > 0 ? height : screenHeight;
+            BufferedImage composite = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_ARGB);
+            List<Frame> frames = new ArrayList<>(frameCount);
+            for (int i = 0; i < frameCount; i++) {
+                BufferedImage image = reader.read(i);
+                Node tree = reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+                Node descriptor = getChild(tree, "ImageDescriptor");
+                Node control = getChild(tree, "GraphicControlExtension");
+                int left = getIntAttribute(descriptor, "imageLeftPosition");
+                int top = getIntAttribute(descriptor, "imageTopPosition");
+                int delay = getIntAttribute(control, "delayTime") * 10;
+                String disposal = getAttribute(control, "disposalMethod", "none");
+                BufferedImage previous = null;
+                if (disposal.equals("restoreToPrevious")) {
+                    previous = copy(composite);
+                }
+                Graphics2D graphics = composite.createGraphics();
+                graphics.drawImage(image, left, top, null);
+                graphics.dispose();
+                // Browsers show very short frames for 100ms, and GIFs are made to look right in browsers
+                frames.add(new Frame(MapImage.imageToBytes(composite, mapWidth, mapHeight, dither), delay <= 10 ? 100 : delay));
+                if (disposal.equals("restoreToBackgroundColor")) {
+                    graphics = composite.createGraphics();
+                    graphics.setComposite(AlphaComposite.Clear);
+                    graphics.fillRect(left, top, image.getWidth(), image.getHeight());
+                    graphics.dispose();
+                }
+                else if (previous != null) {
+                    composite = previous;
+                }
+            }
+            if (frames.isEmpty()) {
+                throw new IOException("GIF has no frames: " + file);
+            }
+            return new MapAnimation(mapWidth, mapHeight, frames);
+        }
+        finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = result.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return result;
+    }
+}
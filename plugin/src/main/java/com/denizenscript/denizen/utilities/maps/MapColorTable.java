@@ -0,0 +1,185 @@
+package com.denizenscript.denizen.utilities.maps;
+
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import com.denizenscript.denizen.utilities.debugging.Debug;
+import org.bukkit.Bukkit;
+import org.bukkit.map.MapPalette;
+
+import java.awt.*;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Converts RGB colors to map palette colors with a lookup table, so that converting an image costs one array read per pixel.
+ * Colors are quantised to 6 bits per channel (a 256 KiB table), and each entry holds the palette color nearest to the center of its cell,
+ * by the same weighted distance as MapImage.getDistance.
+ * The table is built once, the first time it's needed (or ahead of time by buildAsync).
+ */
+public class MapColorTable {
+
+    private static final int BITS = 6;
+
+    private static final int SHIFT = 8 - BITS;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * The RGB value of each map palette color, indexed by the unsigned palette byte. Indexes 0 to 3 are transparent.
+     */
+    public static final int[] paletteRGB;
+
+    static {
+        int[] rgb = new int[0];
+        try {
+            Field field = MapPalette.class.getDeclaredField("colors");
+            field.setAccessible(true);
+            Color[] colors = (Color[]) field.get(null);
+            rgb = new int[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                rgb[i] = colors[i].getRGB() & 0xFFFFFF;
+            }
+        }
+        catch (Exception e) {
+            Debug.echoError(e);
+        }
+        paletteRGB = rgb;
+    }
+
+    private static volatile byte[] table = null;
+
+    public static byte[] getTable() {
+        byte[] result = table;
+        if (result == null) {
+            synchronized (MapColorTable.class) {
+                result = table;
+                if (result == null) {
+                    result = buildTable();
+                    table = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the table on another thread, so the first image conversion doesn't have to wait for it.
+     */
+    public static void buildAsync() {
+        if (table == null) {
+            Bukkit.getScheduler().runTaskAsynchronously(DenizenAPI.getCurrentInstance(), MapColorTable::getTable);
+        }
+    }
+
+    private static byte[] buildTable() {
+        byte[] result = new byte[1 << (BITS * 3)];
+        IntStream.range(0, 1 << BITS).parallel().forEach(r -> {
+            int red = expand(r);
+            for (int g = 0; g <= MASK; g++) {
+                int green = expand(g);
+                int base = (r << (BITS * 2)) | (g << BITS);
+                for (int b = 0; b <= MASK; b++) {
+                    result[base | b] = (byte) nearestIndex(red, green, expand(b));
+                }
+            }
+        });
+        return result;
+    }
+
+    private static int expand(int quantised) {
+        return (quantised << SHIFT) | (quantised >> (BITS - SHIFT));
+    }
+
+    /**
+     * Returns the unsigned palette index nearest to the color, by a linear scan of the palette.
+     */
+    public static int nearestIndex(int red, int green, int blue) {
+        int index = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 4; i < paletteRGB.length; i++) {
+            int color = paletteRGB[i];
+            int redSum = red + ((color >> 16) & 0xFF);
+            int r = red - ((color >> 16) & 0xFF);
+            int g = green - ((color >> 8) & 0xFF);
+            int b = blue - (color & 0xFF);
+            // MapImage.getDistance, scaled by 512 to stay in integers
+            long distance = (1024L + redSum) * r * r + 2048L * g * g + (1534L - redSum) * b * b;
+            if (distance < best) {
+                best = distance;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static int cell(int red, int green, int blue) {
+        return ((red >> SHIFT) << (BITS * 2)) | ((green >> SHIFT) << BITS) | (blue >> SHIFT);
+    }
+
+    public static byte matchColor(int red, int green, int blue) {
+        return getTable()[cell(red, green, blue)];
+    }
+
+    /**
+     * Returns the map color for an ARGB pixel. Pixels that are less than half opaque are transparent.
+     */
+    public static byte matchColor(int argb) {
+        if ((argb >>> 24) < 128) {
+            return MapPalette.TRANSPARENT;
+        }
+        return getTable()[cell((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF)];
+    }
+
+    public static byte[] matchPixels(int[] pixels) {
+        byte[] lookup = getTable();
+        byte[] result = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            if ((argb >>> 24) >= 128) {
+                result[i] = lookup[cell((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF)];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts ARGB pixels to map colors with Floyd-Steinberg dithering, which spreads each pixel's color error to the pixels
+     * right of and below it, to keep gradients smooth with the limited palette. Transparent pixels neither take nor spread error.
+     */
+    public static byte[] ditherPixels(int[] pixels, int width, int height) {
+        byte[] lookup = getTable();
+        byte[] result = new byte[pixels.length];
+        // Errors (times 16) for the current and next row, per channel, with a padding pixel on each side
+        int[] current = new int[(width + 2) * 3];
+        int[] next = new int[(width + 2) * 3];
+        int[] rgb = new int[3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[y * width + x];
+                if ((argb >>> 24) < 128) {
+                    continue;
+                }
+                int errorIndex = (x + 1) * 3;
+                for (int c = 0; c < 3; c++) {
+                    int value = ((argb >> (16 - c * 8)) & 0xFF) + current[errorIndex + c] / 16;
+                    rgb[c] = value < 0 ? 0 : (value > 255 ? 255 : value);
+                }
+                int index = lookup[cell(rgb[0], rgb[1], rgb[2])] & 0xFF;
+                result[y * width + x] = (byte) index;
+                int color = paletteRGB[index];
+                for (int c = 0; c < 3; c++) {
+                    int error = rgb[c] - ((color >> (16 - c * 8)) & 0xFF);
+                    current[errorIndex + 3 + c] += error * 7;
+                    next[errorIndex - 3 + c] += error * 3;
+                    next[errorIndex + c] += error * 5;
+                    next[errorIndex + 3 + c] += error;
+                }
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+        return result;
+    }
+}
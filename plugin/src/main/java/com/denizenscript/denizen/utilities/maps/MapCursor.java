@@ -13,6 +13,8 @@ public class MapCursor extends MapObject {
     protected String directionTag;
     protected String typeTag;
     protected Map<UUID, org.bukkit.map.MapCursor> cursors = new HashMap<>();
+    protected Map<UUID, Byte> currentDirection = new HashMap<>();
+    protected Map<UUID, org.bukkit.map.MapCursor.Type> currentType = new HashMap<>();
 
     public MapCursor(String xTag, String yTag, String visibilityTag, boolean debug, String directionTag, String typeTag) {
         super(xTag, yTag, visibilityTag, debug);
@@ -33,16 +35,27 @@ public class MapCursor extends MapObject {
     }
 
     @Override
-    public void update(PlayerTag player, UUID uuid) {
-        super.update(player, uuid);
+    public boolean isPlayerSpecific() {
+        return super.isPlayerSpecific() || hasTags(directionTag) || hasTags(typeTag);
+    }
+
+    @Override
+    public boolean update(PlayerTag player, UUID uuid) {
+        UUID key = getKey(uuid);
+        boolean changed = super.update(player, uuid);
+        if (key != SHARED || !currentType.containsKey(SHARED)) {
+            changed |= updateValue(currentDirection, key, getDirection(player));
+            changed |= updateValue(currentType, key, getType(player));
+        }
         if (cursors.containsKey(uuid)) {
             org.bukkit.map.MapCursor cursor = cursors.get(uuid);
             cursor.setX((byte) getX(player, uuid));
             cursor.setY((byte) getY(player, uuid));
             cursor.setVisible(isVisibleTo(player, uuid));
-            cursor.setDirection(getDirection(player));
-            cursor.setType(getType(player));
+            cursor.setDirection(currentDirection.get(key));
+            cursor.setType(currentType.get(key));
         }
+        return changed;
     }
 
     @Override
@@ -56,8 +69,13 @@ public class MapCursor extends MapObject {
 
     @Override
     public void render(MapView mapView, MapCanvas mapCanvas, PlayerTag player, UUID uuid) {
+        UUID key = getKey(uuid);
+        if (!currentType.containsKey(key)) {
+            currentDirection.put(key, getDirection(player));
+            currentType.put(key, getType(player));
+        }
         org.bukkit.map.MapCursor cursor = new org.bukkit.map.MapCursor((byte) getX(player, uuid),
-                (byte) getY(player, uuid), getDirection(player), getType(player).getValue(),
+                (byte) getY(player, uuid), currentDirection.get(key), currentType.get(key).getValue(),
                 isVisibleTo(player, uuid));
         mapCanvas.getCursors().addCursor(cursor);
         cursors.put(uuid, cursor);
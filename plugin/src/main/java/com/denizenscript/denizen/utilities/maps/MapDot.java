@@ -4,9 +4,9 @@ import com.denizenscript.denizen.objects.ColorTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import org.bukkit.Color;
 import org.bukkit.map.MapCanvas;
-import org.bukkit.map.MapPalette;
 import org.bukkit.map.MapView;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -14,6 +14,8 @@ public class MapDot extends MapObject {
 
     protected String radiusTag;
     protected String colorTag;
+    protected Map<UUID, Integer> currentRadius = new HashMap<>();
+    protected Map<UUID, Color> currentColor = new HashMap<>();
 
     public MapDot(String xTag, String yTag, String visibilityTag, boolean debug, String radiusTag, String colorTag) {
         super(xTag, yTag, visibilityTag, debug);
@@ -21,6 +23,22 @@ public class MapDot extends MapObject {
         this.colorTag = colorTag;
     }
 
+    @Override
+    public boolean isPlayerSpecific() {
+        return super.isPlayerSpecific() || hasTags(radiusTag) || hasTags(colorTag);
+    }
+
+    @Override
+    public boolean update(PlayerTag player, UUID uuid) {
+        UUID key = getKey(uuid);
+        boolean changed = super.update(player, uuid);
+        if (key != SHARED || !currentColor.containsKey(SHARED)) {
+            changed |= updateValue(currentRadius, key, (int) Double.parseDouble(tag(radiusTag, player)));
+            changed |= updateValue(currentColor, key, ColorTag.valueOf(tag(colorTag, player)).getColor());
+        }
+        return changed;
+    }
+
     @Override
     public Map<String, Object> getSaveData() {
         Map<String, Object> data = super.getSaveData();
@@ -34,8 +52,14 @@ public class MapDot extends MapObject {
     public void render(MapView mapView, MapCanvas mapCanvas, PlayerTag player, UUID uuid) {
         int baseX = getX(player, uuid);
         int baseY = getY(player, uuid);
-        int radius = (int) Double.parseDouble(tag(radiusTag, player));
-        Color color = ColorTag.valueOf(tag(colorTag, player)).getColor();
+        UUID key = getKey(uuid);
+        if (!currentColor.containsKey(key)) {
+            currentRadius.put(key, (int) Double.parseDouble(tag(radiusTag, player)));
+            currentColor.put(key, ColorTag.valueOf(tag(colorTag, player)).getColor());
+        }
+        int radius = currentRadius.get(key);
+        Color color = currentColor.get(key);
+        byte mapColor = MapColorTable.matchColor(color.getRed(), color.getGreen(), color.getBlue());
         for (int x = -radius; x < radius; x++) {
             int finalX = baseX + x;
             if (finalX >= 128) {
@@ -47,7 +71,7 @@ public class MapDot extends MapObject {
                     continue;
                 }
                 if (((x + 0.5) * (x + 0.5)) + ((y + 0.5) * (y + 0.5)) <= (radius * radius)) {
-                    mapCanvas.setPixel(finalX, finalY, MapPalette.matchColor(color.getRed(), color.getGreen(), color.getBlue()));
+                    mapCanvas.setPixel(finalX, finalY, mapColor);
                 }
             }
         }
@@ -2,6 +2,8 @@ package com.denizenscript.denizen.utilities.maps;
 
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizen.objects.PlayerTag;
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import org.bukkit.Bukkit;
 import org.bukkit.map.MapCanvas;
 import org.bukkit.map.MapPalette;
 import org.bukkit.map.MapView;
@@ -9,8 +11,9 @@ import org.bukkit.map.MapView;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.lang.reflect.Field;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public class MapImage extends MapObject {
@@ -25,6 +28,12 @@ public class MapImage extends MapObject {
     protected String actualFile = null;
     boolean disabled = false;
 
+    // Whether to convert the image with Floyd-Steinberg dithering
+    public boolean dither = false;
+
+    // Players that the cached image has been drawn to
+    protected Set<UUID> drawnTo = new HashSet<>();
+
     public MapImage(String xTag, String yTag, String visibilityTag, boolean debug, String fileTag,
                     int width, int height) {
         this(xTag, yTag, visibilityTag, debug, fileTag, width, height, true);
@@ -55,9 +64,17 @@ public class MapImage extends MapObject {
         data.put("width", width);
         data.put("height", height);
         data.put("image", fileTag);
+        if (dither) {
+            data.put("dither", "true");
+        }
         return data;
     }
 
+    @Override
+    public boolean needsRender(UUID uuid) {
+        return useCache && !disabled && cachedImage != null && !drawnTo.contains(uuid);
+    }
+
     @Override
     public void render(MapView mapView, MapCanvas mapCanvas, PlayerTag player, UUID uuid) {
         if (actualFile == null) {
@@ -66,95 +83,116 @@ public class MapImage extends MapObject {
                 disabled = true;
                 return;
             }
-            imageIcon = new ImageIcon(actualFile);
-            image = imageIcon.getImage();
-            if (width == 0) {
-                width = image.getWidth(null);
-            }
-            if (height == 0) {
-                height = image.getHeight(null);
+            if (useCache) {
+                loadAsync();
             }
-            if (width == -1 || height == -1) {
+            else if (!loadImage()) {
                 Debug.echoError("Image loading failed (bad width/height) for image " + fileTag);
                 disabled = true;
                 return;
             }
-            disabled = false;
+            else {
+                disabled = false;
+            }
         }
         if (disabled) {
             return;
         }
         // Use custom functions to draw image to allow transparency and reduce lag intensely
         byte[] bytes;
-        if (!useCache || cachedImage == null) {
-            bytes = imageToBytes(image, width, height);
+        if (useCache) {
+            bytes = cachedImage;
             if (bytes == null) {
-                Debug.echoError("Image loading failed (bad imageToBytes) for image " + fileTag);
-                disabled = true;
+                // Still being converted on another thread
                 return;
             }
-            if (useCache) {
-                cachedImage = bytes;
-            }
         }
         else {
-            bytes = cachedImage;
+            bytes = imageToBytes(image, width, height, dither);
+            if (bytes == null) {
+                Debug.echoError("Image loading failed (bad imageToBytes) for image " + fileTag);
+                disabled = true;
+                return;
+            }
         }
         int x = getX(player, uuid);
         int y = getY(player, uuid);
-        for (int x2 = 0; x2 < width; ++x2) {
-            for (int y2 = 0; y2 < height; ++y2) {
-                byte p = bytes[y2 * width + x2];
-                if (p != MapPalette.TRANSPARENT) {
+        drawBytes(mapCanvas, bytes, width, x, y, 0, 0, width - 1, height - 1, false);
+        if (useCache) {
+            drawnTo.add(uuid);
+        }
+    }
+
+    /**
+     * Draws the pixels of an image within the given bounds (inclusive, in image coordinates) to the canvas, with the image's top left at x,y.
+     * Pixels outside the canvas are skipped, as are transparent pixels unless 'drawTransparent' is true.
+     */
+    public static void drawBytes(MapCanvas mapCanvas, byte[] bytes, int width, int x, int y, int minX, int minY, int maxX, int maxY, boolean drawTransparent) {
+        int startX = Math.max(minX, -x), endX = Math.min(maxX, 127 - x);
+        int startY = Math.max(minY, -y), endY = Math.min(maxY, 127 - y);
+        for (int y2 = startY; y2 <= endY; ++y2) {
+            int row = y2 * width;
+            for (int x2 = startX; x2 <= endX; ++x2) {
+                byte p = bytes[row + x2];
+                if (drawTransparent || p != MapPalette.TRANSPARENT) {
                     mapCanvas.setPixel(x + x2, y + y2, p);
                 }
             }
         }
     }
 
-    private static final Color[] bukkitColors;
-
-    static {
-        Color[] colors = null;
-        try {
-            Field field = MapPalette.class.getDeclaredField("colors");
-            field.setAccessible(true);
-            colors = (Color[]) field.get(null);
+    protected boolean loadImage() {
+        imageIcon = new ImageIcon(actualFile);
+        image = imageIcon.getImage();
+        if (width == 0) {
+            width = image.getWidth(null);
         }
-        catch (Exception e) {
-            Debug.echoError(e);
+        if (height == 0) {
+            height = image.getHeight(null);
         }
-        bukkitColors = colors;
+        return width != -1 && height != -1;
+    }
+
+    /**
+     * Loads and converts the image on another thread, then caches it on the main thread. Nothing is drawn until that's done.
+     */
+    protected void loadAsync() {
+        Bukkit.getScheduler().runTaskAsynchronously(DenizenAPI.getCurrentInstance(), () -> {
+            boolean loaded = loadImage();
+            byte[] bytes = loaded ? imageToBytes(image, width, height, dither) : null;
+            Bukkit.getScheduler().runTask(DenizenAPI.getCurrentInstance(), () -> {
+                if (!loaded) {
+                    Debug.echoError("Image loading failed (bad width/height) for image " + fileTag);
+                    disabled = true;
+                }
+                else if (bytes == null) {
+                    Debug.echoError("Image loading failed (bad imageToBytes) for image " + fileTag);
+                    disabled = true;
+                }
+                else {
+                    cachedImage = bytes;
+                    disabled = false;
+                }
+            });
+        });
     }
 
     public static byte[] imageToBytes(Image image, int width, int height) {
+        return imageToBytes(image, width, height, false);
+    }
+
+    public static byte[] imageToBytes(Image image, int width, int height, boolean dither) {
         BufferedImage temp = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphics = temp.createGraphics();
         graphics.drawImage(image, 0, 0, width, height, null);
         graphics.dispose();
         int[] pixels = new int[width * height];
         temp.getRGB(0, 0, width, height, pixels, 0, width);
-        byte[] result = new byte[width * height];
-        for (int i = 0; i < pixels.length; i++) {
-            result[i] = matchColor(new Color(pixels[i]));
-        }
-        return result;
+        return dither ? MapColorTable.ditherPixels(pixels, width, height) : MapColorTable.matchPixels(pixels);
     }
 
     public static byte matchColor(Color color) {
-        if (color.getAlpha() < 128) {
-            return 0;
-        }
-        int index = 0;
-        double best = -1;
-        for (int i = 4; i < bukkitColors.length; i++) {
-            double distance = getDistance(color, bukkitColors[i]);
-            if (distance < best || best == -1) {
-                best = distance;
-                index = i;
-            }
-        }
-        return (byte) (index < 128 ? index : -129 + (index - 127));
+        return MapColorTable.matchColor(color.getRGB());
     }
 
     public static double getDistance(Color c1, Color c2) {
@@ -8,10 +8,14 @@ import org.bukkit.map.MapView;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 public abstract class MapObject {
 
+    // The key that tag results are stored under for objects that aren't player-specific
+    public static final UUID SHARED = new UUID(0, 0);
+
     protected String xTag;
     protected String yTag;
     protected String visibilityTag;
@@ -22,6 +26,8 @@ public abstract class MapObject {
 
     public MapView lastMap;
 
+    public DenizenMapRenderer renderer;
+
     public boolean worldCoordinates = false;
 
     public MapObject(String xTag, String yTag, String visibilityTag, boolean debug) {
@@ -31,17 +37,68 @@ public abstract class MapObject {
         this.debug = debug;
     }
 
-    public void update(PlayerTag player, UUID uuid) {
-        currentX.put(uuid, getX(player, uuid));
-        currentY.put(uuid, getY(player, uuid));
-        currentVisibility.put(uuid, tag(visibilityTag, player).equalsIgnoreCase("true"));
+    /**
+     * Returns whether the object's tags might give different results for different players.
+     * Objects whose tags are all plain values are evaluated once and shared by every player.
+     */
+    public boolean isPlayerSpecific() {
+        return hasTags(xTag) || hasTags(yTag) || hasTags(visibilityTag);
+    }
+
+    protected static boolean hasTags(String value) {
+        return value != null && value.indexOf('<') != -1;
+    }
+
+    /**
+     * Returns the key that the player's tag results are stored under.
+     */
+    protected UUID getKey(UUID uuid) {
+        return isPlayerSpecific() ? uuid : SHARED;
+    }
+
+    /**
+     * Stores a tag result, and returns whether it differs from the previous result.
+     */
+    protected static <T> boolean updateValue(Map<UUID, T> values, UUID key, T value) {
+        return !Objects.equals(values.put(key, value), value);
+    }
+
+    /**
+     * Re-reads the object's tags for the player, and returns whether any result changed.
+     */
+    public boolean update(PlayerTag player, UUID uuid) {
+        UUID key = getKey(uuid);
+        if (key == SHARED && currentVisibility.containsKey(SHARED)) {
+            return false;
+        }
+        boolean changed = updateValue(currentX, key, (int) Double.parseDouble(tag(xTag, player)));
+        changed |= updateValue(currentY, key, (int) Double.parseDouble(tag(yTag, player)));
+        changed |= updateValue(currentVisibility, key, tag(visibilityTag, player).equalsIgnoreCase("true"));
+        return changed;
+    }
+
+    /**
+     * Returns whether the object would now draw differently for the player than it last did, other than through its tags
+     * (for example, an image that has finished loading).
+     */
+    public boolean needsRender(UUID uuid) {
+        return false;
+    }
+
+    /**
+     * Called when the player is shown a fresh canvas (for example after rejoining), so that any state about what was
+     * last drawn for them is dropped and the next render draws in full.
+     */
+    public void resetCanvas(UUID uuid) {
     }
 
     public int getX(PlayerTag player, UUID uuid) {
-        //if (!currentX.containsKey(uuid)) {
-        int x = (int) Double.parseDouble(tag(xTag, player));
-        currentX.put(uuid, x);
-        //}
+        UUID key = getKey(uuid);
+        Integer x = currentX.get(key);
+        if (x == null) {
+            x = (int) Double.parseDouble(tag(xTag, player));
+            currentX.put(key, x);
+        }
         if (worldCoordinates && lastMap != null) {
             float f = (float) (x - lastMap.getCenterX()) / (1 << (lastMap.getScale().getValue()));
             int bx = ((int) ((f * 2.0F) + 0.5D));
@@ -51,10 +108,12 @@ public abstract class MapObject {
     }
 
     public int getY(PlayerTag player, UUID uuid) {
-        //if (!currentY.containsKey(uuid)) {
-        int y = (int) Double.parseDouble(tag(yTag, player));
-        currentY.put(uuid, y);
-        //}
+        UUID key = getKey(uuid);
+        Integer y = currentY.get(key);
+        if (y == null) {
+            y = (int) Double.parseDouble(tag(yTag, player));
+            currentY.put(key, y);
+        }
         if (worldCoordinates && lastMap != null) {
             float f1 = (float) (y - lastMap.getCenterZ()) / (1 << (lastMap.getScale().getValue()));
             int by = ((int) ((f1 * 2.0F) + 0.5D));
@@ -64,10 +123,11 @@ public abstract class MapObject {
     }
 
     public boolean isVisibleTo(PlayerTag player, UUID uuid) {
-        if (!currentVisibility.containsKey(uuid)) {
-            currentVisibility.put(uuid, tag(visibilityTag, player).equalsIgnoreCase("true"));
+        UUID key = getKey(uuid);
+        if (!currentVisibility.containsKey(key)) {
+            currentVisibility.put(key, tag(visibilityTag, player).equalsIgnoreCase("true"));
         }
-        return currentVisibility.get(uuid);
+        return currentVisibility.get(key);
     }
 
     protected String tag(String arg, PlayerTag player) {
@@ -20,13 +20,22 @@ public class MapText extends MapObject {
     }
 
     @Override
-    public void update(PlayerTag player, UUID uuid) {
-        super.update(player, uuid);
-        playerTexts.put(uuid, tag(textTag, player));
+    public boolean isPlayerSpecific() {
+        return super.isPlayerSpecific() || hasTags(textTag);
+    }
+
+    @Override
+    public boolean update(PlayerTag player, UUID uuid) {
+        UUID key = getKey(uuid);
+        boolean changed = super.update(player, uuid);
+        if (key != SHARED || !playerTexts.containsKey(SHARED)) {
+            changed |= updateValue(playerTexts, key, tag(textTag, player));
+        }
+        return changed;
     }
 
     public String getText(PlayerTag player) {
-        return playerTexts.get(player.getPlayerEntity().getUniqueId());
+        return playerTexts.get(getKey(player.getPlayerEntity().getUniqueId()));
     }
 
     public void setText(String textTag) {
@@ -43,10 +52,11 @@ public class MapText extends MapObject {
 
     @Override
     public void render(MapView mapView, MapCanvas mapCanvas, PlayerTag player, UUID uuid) {
-        if (!playerTexts.containsKey(uuid)) {
-            playerTexts.put(uuid, tag(textTag, player));
+        UUID key = getKey(uuid);
+        if (!playerTexts.containsKey(key)) {
+            playerTexts.put(key, tag(textTag, player));
         }
-        mapCanvas.drawText(getX(player, uuid), getY(player, uuid), MinecraftFont.Font, getText(player));
+        mapCanvas.drawText(getX(player, uuid), getY(player, uuid), MinecraftFont.Font, playerTexts.get(key));
     }
 
 }
@@ -1,37 +1,235 @@
 package com.denizenscript.denizen.utilities.world;
 
+import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.objects.LocationTag;
-import net.citizensnpcs.api.astar.AStarMachine;
-import net.citizensnpcs.api.astar.pathfinder.*;
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
-import org.bukkit.util.Vector;
+import org.bukkit.World;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * TODO: Potentially a separate implementation?
+ * A* path finding over the walkability data in WalkabilityCache.
+ * A point is walkable if it and the block above it are passable, and the block below it is solid.
+ * Paths can step to any of the 8 horizontally adjacent points, one block up or down, without cutting corners.
  */
 public class PathFinder {
 
-    public static AStarMachine ASTAR = AStarMachine.createWithDefaultStorage();
+    public static int maxIterations = 50000;
 
+    public static int range = 100;
+
+    /**
+     * How many chunks around a missing chunk an asynchronous search requests from the main thread at once.
+     */
+    public static int asyncChunkBatchRadius = 2;
+
+    public interface ChunkSource {
+
+        WalkabilityCache.ChunkWalkability getChunk(int chunkX, int chunkZ);
+    }
+
+    private static class Node {
+
+        public final int x, y, z;
+
+        public final double cost, estimate;
+
+        public final Node parent;
+
+        public Node(int x, int y, int z, double cost, double estimate, Node parent) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.cost = cost;
+            this.estimate = estimate;
+            this.parent = parent;
+        }
+    }
+
+    private static final int[][] DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    /**
+     * Finds a path on the calling (main) thread, snapshotting chunks as needed.
+     */
     public static List<LocationTag> getPath(Location start, Location dest) {
-        VectorGoal goal = new VectorGoal(dest, 1);
-        Path plan = (Path) ASTAR.runFully(goal,
-                new VectorNode(goal, start, new ChunkBlockSource(start, 100), new MinecraftBlockExaminer()),
-                50000);
-        if (plan == null || plan.isComplete()) {
-            return new ArrayList<>();
-        }
-        else {
-            List<LocationTag> path = new ArrayList<>();
-            while (!plan.isComplete()) {
-                Vector v = plan.getCurrentVector();
-                path.add(new LocationTag(start.getWorld(), v.getX(), v.getY(), v.getZ()));
-                plan.update(null);
-            }
-            return path;
+        World world = start.getWorld();
+        NMSHandler.getChunkHelper().changeChunkServerThread(world);
+        try {
+            return findPath(start, dest, (chunkX, chunkZ) -> WalkabilityCache.load(world, chunkX, chunkZ, true));
+        }
+        finally {
+            NMSHandler.getChunkHelper().restoreServerThread(world);
+        }
+    }
+
+    /**
+     * Finds a path on another thread. Chunks that aren't cached yet are snapshotted on the main thread, a batch at a time.
+     * The future completes on the other thread.
+     */
+    public static CompletableFuture<List<LocationTag>> getPathAsync(Location start, Location dest) {
+        CompletableFuture<List<LocationTag>> result = new CompletableFuture<>();
+        World world = start.getWorld();
+        Location startCopy = start.clone(), destCopy = dest.clone();
+        Bukkit.getScheduler().runTaskAsynchronously(DenizenAPI.getCurrentInstance(), () -> {
+            try {
+                Set<Long> unavailable = new HashSet<>();
+                result.complete(findPath(startCopy, destCopy, (chunkX, chunkZ) -> {
+                    WalkabilityCache.ChunkWalkability chunk = WalkabilityCache.get(world, chunkX, chunkZ);
+                    if (chunk != null || unavailable.contains(WalkabilityCache.chunkKey(chunkX, chunkZ))) {
+                        return chunk;
+                    }
+                    return requestChunks(world, chunkX, chunkZ, unavailable);
+                }));
+            }
+            catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    private static WalkabilityCache.ChunkWalkability requestChunks(World world, int chunkX, int chunkZ, Set<Long> unavailable) {
+        try {
+            Bukkit.getScheduler().callSyncMethod(DenizenAPI.getCurrentInstance(), () -> {
+                for (int x = chunkX - asyncChunkBatchRadius; x <= chunkX + asyncChunkBatchRadius; x++) {
+                    for (int z = chunkZ - asyncChunkBatchRadius; z <= chunkZ + asyncChunkBatchRadius; z++) {
+                        // Only the chunk that's actually needed may be loaded, neighbours are only snapshotted if already loaded
+                        WalkabilityCache.load(world, x, z, x == chunkX && z == chunkZ);
+                    }
+                }
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+        }
+        catch (Exception ex) {
+            // The server is stopping, or the main thread is stalled - treat the chunk as unavailable
+        }
+        WalkabilityCache.ChunkWalkability chunk = WalkabilityCache.get(world, chunkX, chunkZ);
+        if (chunk == null) {
+            unavailable.add(WalkabilityCache.chunkKey(chunkX, chunkZ));
+        }
+        return chunk;
+    }
+
+    private static long blockKey(int x, int y, int z) {
+        return ((x & 0x3FFFFFFL) << 38) | ((z & 0x3FFFFFFL) << 12) | (y & 0xFFFL);
+    }
+
+    public static List<LocationTag> findPath(Location start, Location dest, ChunkSource source) {
+        World world = start.getWorld();
+        int startX = start.getBlockX(), startY = start.getBlockY(), startZ = start.getBlockZ();
+        int destX = dest.getBlockX(), destY = dest.getBlockY(), destZ = dest.getBlockZ();
+        PathGrid grid = new PathGrid(source);
+        Map<Long, Double> bestCost = new HashMap<>();
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingDouble(node -> node.cost + node.estimate));
+        open.add(new Node(startX, startY, startZ, 0, distance(startX, startY, startZ, destX, destY, destZ), null));
+        bestCost.put(blockKey(startX, startY, startZ), 0.0);
+        int iterations = 0;
+        while (!open.isEmpty() && iterations++ < maxIterations) {
+            Node node = open.poll();
+            Double known = bestCost.get(blockKey(node.x, node.y, node.z));
+            if (known != null && known < node.cost) {
+                continue;
+            }
+            int dx = node.x - destX, dy = node.y - destY, dz = node.z - destZ;
+            if (dx * dx + dy * dy + dz * dz <= 1) {
+                return buildPath(world, node);
+            }
+            for (int[] direction : DIRECTIONS) {
+                int x = node.x + direction[0], z = node.z + direction[1];
+                if (Math.abs(x - startX) > range || Math.abs(z - startZ) > range) {
+                    continue;
+                }
+                boolean diagonal = direction[0] != 0 && direction[1] != 0;
+                for (int step = -1; step <= 1; step++) {
+                    int y = node.y + step;
+                    if (!grid.isWalkable(x, y, z)) {
+                        continue;
+                    }
+                    // Stepping up needs room to jump, stepping down needs room to walk over the edge
+                    if (step == 1 && !grid.isPassable(node.x, node.y + 2, node.z)) {
+                        continue;
+                    }
+                    if (step == -1 && !grid.isPassable(x, node.y + 1, z)) {
+                        continue;
+                    }
+                    int clearY = Math.max(node.y, y);
+                    if (diagonal && !(grid.isPassable(x, clearY, node.z) && grid.isPassable(x, clearY + 1, node.z)
+                            && grid.isPassable(node.x, clearY, z) && grid.isPassable(node.x, clearY + 1, z))) {
+                        continue;
+                    }
+                    double cost = node.cost + Math.sqrt((diagonal ? 2 : 1) + step * step);
+                    long key = blockKey(x, y, z);
+                    Double previous = bestCost.get(key);
+                    if (previous != null && previous <= cost) {
+                        continue;
+                    }
+                    bestCost.put(key, cost);
+                    open.add(new Node(x, y, z, cost, distance(x, y, z, destX, destY, destZ), node));
+                }
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private static double distance(int x1, int y1, int z1, int x2, int y2, int z2) {
+        int dx = x1 - x2, dy = y1 - y2, dz = z1 - z2;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private static List<LocationTag> buildPath(World world, Node end) {
+        List<LocationTag> path = new ArrayList<>();
+        for (Node node = end; node != null; node = node.parent) {
+            path.add(new LocationTag(world, node.x, node.y, node.z));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static class PathGrid {
+
+        private final ChunkSource source;
+
+        private final Map<Long, WalkabilityCache.ChunkWalkability> chunks = new HashMap<>();
+
+        private long lastKey = Long.MIN_VALUE;
+
+        private WalkabilityCache.ChunkWalkability lastChunk = null;
+
+        public PathGrid(ChunkSource source) {
+            this.source = source;
+        }
+
+        public WalkabilityCache.ChunkWalkability getChunk(int x, int z) {
+            long key = WalkabilityCache.chunkKey(x >> 4, z >> 4);
+            if (key == lastKey) {
+                return lastChunk;
+            }
+            WalkabilityCache.ChunkWalkability chunk;
+            if (chunks.containsKey(key)) {
+                chunk = chunks.get(key);
+            }
+            else {
+                // Keep the chunk for the rest of the search even if the cache drops it, so the search sees one consistent state
+                chunk = source.getChunk(x >> 4, z >> 4);
+                chunks.put(key, chunk);
+            }
+            lastKey = key;
+            lastChunk = chunk;
+            return chunk;
+        }
+
+        public boolean isPassable(int x, int y, int z) {
+            WalkabilityCache.ChunkWalkability chunk = getChunk(x, z);
+            return chunk != null && chunk.isPassable(x, y, z);
+        }
+
+        public boolean isWalkable(int x, int y, int z) {
+            WalkabilityCache.ChunkWalkability chunk = getChunk(x, z);
+            return chunk != null && chunk.isPassable(x, y, z) && chunk.isPassable(x, y + 1, z) && chunk.isSolid(x, y - 1, z);
         }
     }
 }
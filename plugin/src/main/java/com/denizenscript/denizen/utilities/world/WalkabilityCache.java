@@ -0,0 +1,302 @@
+package com.denizenscript.denizen.utilities.world;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.interfaces.ChunkHelper;
+import com.denizenscript.denizen.utilities.DenizenAPI;
+import com.denizenscript.denizen.utilities.Settings;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.*;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Caches which blocks can be walked through or stood on, for path finding.
+ * Each chunk is read from a chunk snapshot (taken on the main thread), and its sections are only decoded when a search first
+ * needs them, so the cache can be read from any thread.
+ * A chunk is dropped from the cache when a block in it changes, when it unloads, or after a short time (to catch changes that fire no event).
+ */
+public class WalkabilityCache {
+
+    public static long expireMillis = 30 * 1000;
+
+    private static final boolean[] SOLID = new boolean[Material.values().length];
+
+    private static final boolean[] PASSABLE = new boolean[Material.values().length];
+
+    // Blocks that hurt entities in or on them, which paths must neither pass through nor stand on (names from every supported version)
+    private static final Set<String> HAZARDS = new HashSet<>(Arrays.asList("LAVA", "STATIONARY_LAVA", "FIRE", "SOUL_FIRE",
+            "CAMPFIRE", "SOUL_CAMPFIRE", "MAGMA", "MAGMA_BLOCK", "CACTUS", "SWEET_BERRY_BUSH", "WITHER_ROSE"));
+
+    static {
+        for (Material material : Material.values()) {
+            boolean hazard = HAZARDS.contains(material.name());
+            boolean solid = material.isBlock() && material.isSolid();
+            SOLID[material.ordinal()] = solid && !hazard;
+            PASSABLE[material.ordinal()] = !solid && !hazard;
+        }
+    }
+
+    /**
+     * Bitsets (one bit per block, indexed by (y << 8) | (z << 4) | x) of the passable and solid blocks in a 16x16x16 chunk section.
+     */
+    public static class SectionWalkability {
+
+        public static final SectionWalkability EMPTY = new SectionWalkability();
+
+        static {
+            Arrays.fill(EMPTY.passable, -1L);
+        }
+
+        public final long[] passable = new long[64];
+
+        public final long[] solid = new long[64];
+
+        public boolean isPassable(int index) {
+            return (passable[index >> 6] & (1L << index)) != 0;
+        }
+
+        public boolean isSolid(int index) {
+            return (solid[index >> 6] & (1L << index)) != 0;
+        }
+    }
+
+    public static class ChunkWalkability {
+
+        public final ChunkSnapshot snapshot;
+
+        public final long created = System.currentTimeMillis();
+
+        private final AtomicReferenceArray<SectionWalkability> sections;
+
+        public ChunkWalkability(ChunkSnapshot snapshot, int maxHeight) {
+            this.snapshot = snapshot;
+            this.sections = new AtomicReferenceArray<>(maxHeight >> 4);
+        }
+
+        public SectionWalkability getSection(int sectionY) {
+            SectionWalkability section = sections.get(sectionY);
+            if (section == null) {
+                // Another thread may decode the same section at the same time, but both results are equal
+                section = decode(sectionY);
+                sections.set(sectionY, section);
+            }
+            return section;
+        }
+
+        private SectionWalkability decode(int sectionY) {
+            if (snapshot.isSectionEmpty(sectionY)) {
+                return SectionWalkability.EMPTY;
+            }
+            SectionWalkability section = new SectionWalkability();
+            ChunkHelper chunkHelper = NMSHandler.getChunkHelper();
+            int baseY = sectionY << 4;
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        int ordinal = chunkHelper.getBlockType(snapshot, x, baseY + y, z).ordinal();
+                        int index = (y << 8) | (z << 4) | x;
+                        if (PASSABLE[ordinal]) {
+                            section.passable[index >> 6] |= 1L << index;
+                        }
+                        if (SOLID[ordinal]) {
+                            section.solid[index >> 6] |= 1L << index;
+                        }
+                    }
+                }
+            }
+            return section;
+        }
+
+        public int getHeight() {
+            return sections.length() << 4;
+        }
+
+        public boolean isPassable(int x, int y, int z) {
+            if (y < 0) {
+                return false;
+            }
+            if (y >= getHeight()) {
+                return true;
+            }
+            return getSection(y >> 4).isPassable(((y & 15) << 8) | ((z & 15) << 4) | (x & 15));
+        }
+
+        public boolean isSolid(int x, int y, int z) {
+            if (y < 0 || y >= getHeight()) {
+                return false;
+            }
+            return getSection(y >> 4).isSolid(((y & 15) << 8) | ((z & 15) << 4) | (x & 15));
+        }
+    }
+
+    private static final Map<UUID, Map<Long, ChunkWalkability>> cache = new ConcurrentHashMap<>();
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (((long) chunkX) << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the cached walkability for a chunk, or null if it isn't cached (or has expired). Safe to call from any thread.
+     */
+    public static ChunkWalkability get(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkWalkability> worldCache = cache.get(world.getUID());
+        if (worldCache == null) {
+            return null;
+        }
+        long key = chunkKey(chunkX, chunkZ);
+        ChunkWalkability chunk = worldCache.get(key);
+        if (chunk != null && System.currentTimeMillis() - chunk.created > expireMillis) {
+            worldCache.remove(key, chunk);
+            return null;
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the walkability for a chunk, snapshotting it if it isn't cached.
+     * Must be called on the main thread. Returns null if the chunk isn't loaded and either chunk auto-loading is disabled or 'allowLoad' is false.
+     */
+    public static ChunkWalkability load(World world, int chunkX, int chunkZ, boolean allowLoad) {
+        ChunkWalkability chunk = get(world, chunkX, chunkZ);
+        if (chunk != null) {
+            return chunk;
+        }
+        if (!world.isChunkLoaded(chunkX, chunkZ) && (!allowLoad || !Settings.autoLoadChunks())) {
+            return null;
+        }
+        ensureListener();
+        chunk = new ChunkWalkability(world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false), world.getMaxHeight());
+        cache.computeIfAbsent(world.getUID(), k -> new ConcurrentHashMap<>()).put(chunkKey(chunkX, chunkZ), chunk);
+        return chunk;
+    }
+
+    public static void invalidate(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkWalkability> worldCache = cache.get(world.getUID());
+        if (worldCache != null) {
+            worldCache.remove(chunkKey(chunkX, chunkZ));
+        }
+    }
+
+    public static void invalidate(Block block) {
+        invalidate(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+    }
+
+    public static void invalidate(Iterable<Block> blocks) {
+        for (Block block : blocks) {
+            invalidate(block);
+        }
+    }
+
+    public static class InvalidationListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockPlace(BlockPlaceEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockBreak(BlockBreakEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockBurn(BlockBurnEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockFade(BlockFadeEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockForm(BlockFormEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockGrow(BlockGrowEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockFromTo(BlockFromToEvent event) {
+            invalidate(event.getToBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onLeavesDecay(LeavesDecayEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onBlockExplode(BlockExplodeEvent event) {
+            invalidate(event.getBlock());
+            invalidate(event.blockList());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntityExplode(EntityExplodeEvent event) {
+            invalidate(event.blockList());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+            invalidate(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onPistonExtend(BlockPistonExtendEvent event) {
+            invalidate(event.getBlock());
+            for (Block block : event.getBlocks()) {
+                invalidate(block);
+                invalidate(block.getRelative(event.getDirection()));
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onPistonRetract(BlockPistonRetractEvent event) {
+            invalidate(event.getBlock());
+            for (Block block : event.getBlocks()) {
+                invalidate(block);
+                invalidate(block.getRelative(event.getDirection()));
+            }
+        }
+
+        @EventHandler
+        public void onChunkUnload(ChunkUnloadEvent event) {
+            invalidate(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+        }
+
+        @EventHandler
+        public void onWorldUnload(WorldUnloadEvent event) {
+            cache.remove(event.getWorld().getUID());
+        }
+    }
+
+    private static InvalidationListener listener = null;
+
+    public static void ensureListener() {
+        if (listener == null) {
+            listener = new InvalidationListener();
+            Bukkit.getPluginManager().registerEvents(listener, DenizenAPI.getCurrentInstance());
+        }
+    }
+}
@@ -5,6 +5,8 @@ import net.minecraft.server.v1_12_R1.EntityPlayer;
 import net.minecraft.server.v1_12_R1.PacketPlayOutMapChunk;
 import net.minecraft.server.v1_12_R1.PlayerChunk;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
 import org.bukkit.craftbukkit.v1_12_R1.CraftChunk;
 import org.bukkit.craftbukkit.v1_12_R1.CraftWorld;
 
@@ -29,4 +31,15 @@ public class ChunkHelperImpl implements ChunkHelper {
     public int[] getHeightMap(Chunk chunk) {
         return ((CraftChunk) chunk).getHandle().heightMap;
     }
+
+    @Override
+    public Material getBlockType(ChunkSnapshot snapshot, int x, int y, int z) {
+        Material type = Material.getMaterial(snapshot.getBlockTypeId(x, y, z));
+        return type == null ? Material.AIR : type;
+    }
+
+    @Override
+    public int getLegacyData(ChunkSnapshot snapshot, int x, int y, int z) {
+        return snapshot.getBlockData(x, y, z);
+    }
 }
@@ -10,45 +10,40 @@ public class SidebarImpl extends Sidebar {
     private static final Scoreboard dummyScoreboard = new Scoreboard();
     private static final IScoreboardCriteria dummyCriteria = new ScoreboardBaseCriteria("dummy");
 
-    private ScoreboardObjective obj1;
-    private ScoreboardObjective obj2;
+    private ScoreboardObjective obj;
 
     public SidebarImpl(Player player) {
         super(player);
-        this.obj1 = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria);
-        this.obj2 = new ScoreboardObjective(dummyScoreboard, "dummy_2", dummyCriteria);
+        this.obj = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria);
         setDisplayName(title);
     }
 
     @Override
     protected void setDisplayName(String title) {
-        if (this.obj1 != null) {
-            this.obj1.setDisplayName(title);
-            this.obj2.setDisplayName(title);
+        if (this.obj != null) {
+            this.obj.setDisplayName(title);
         }
     }
 
     @Override
-    public void sendUpdate() {
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj1, 0));
-        for (int i = 0; i < this.lines.length; i++) {
-            String line = this.lines[i];
-            if (line == null) {
-                break;
-            }
-            ScoreboardScore score = new ScoreboardScore(dummyScoreboard, this.obj1, line);
-            score.setScore(this.scores[i]);
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(score));
-        }
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, this.obj1));
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
-        ScoreboardObjective temp = this.obj2;
-        this.obj2 = this.obj1;
-        this.obj1 = temp;
+    protected void sendObjective(int mode) {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj, mode));
+    }
+
+    @Override
+    protected void sendDisplay() {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, this.obj));
+    }
+
+    @Override
+    protected void sendScore(String entry, int score) {
+        ScoreboardScore scoreboardScore = new ScoreboardScore(dummyScoreboard, this.obj, entry);
+        scoreboardScore.setScore(score);
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(scoreboardScore));
     }
 
     @Override
-    public void remove() {
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
+    protected void sendScoreRemoval(String entry) {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(entry, this.obj));
     }
 }
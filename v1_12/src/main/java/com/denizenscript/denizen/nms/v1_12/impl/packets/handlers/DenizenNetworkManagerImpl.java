@@ -3,6 +3,7 @@ package com.denizenscript.denizen.nms.v1_12.impl.packets.handlers;
 import com.denizenscript.denizen.nms.v1_12.impl.entities.EntityFakePlayerImpl;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
@@ -94,27 +95,34 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
     public static Field POS_Z_PACKENT = ReflectionHelper.getFields(PacketPlayOutEntity.class).get("d");
 
     public static Object duplo(Object a) {
-        try {
-            Class clazz = a.getClass();
-            Object reter = clazz.newInstance();
-            for (Field f : clazz.getDeclaredFields()) {
-                f.setAccessible(true);
-                f.set(reter, f.get(a));
-            }
-            Class subc = clazz;
-            while (subc.getSuperclass() != null) {
-                subc = subc.getSuperclass();
-                for (Field f : subc.getDeclaredFields()) {
-                    f.setAccessible(true);
-                    f.set(reter, f.get(a));
-                }
+        return ReflectionHelper.shallowCopy(a);
+    }
+
+    /**
+     * Writes a packet re-emitted for an attached entity without flushing it, so that all the packets re-emitted
+     * for one movement packet reach the client in a single flush.
+     */
+    private void writeAttachPacket(Packet<?> packet) {
+        oldManager.channel.write(packet).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+    }
+
+    /**
+     * Finds an attached entity, using its cached entity ID within the player's world where possible
+     * rather than searching every world for the UUID.
+     */
+    public org.bukkit.entity.Entity getAttachedEntity(UUID id) {
+        Integer cachedId = NMSHandler.getInstance().attachmentEntityIds.get(id);
+        if (cachedId != null) {
+            Entity entity = player.getWorld().getEntity(cachedId);
+            if (entity != null && entity.getUniqueID().equals(id)) {
+                return entity.getBukkitEntity();
             }
-            return reter;
         }
-        catch (Exception e) {
-            Debug.echoError(e);
-            return null;
+        org.bukkit.entity.Entity entity = Bukkit.getEntity(id);
+        if (entity != null) {
+            NMSHandler.getInstance().attachmentEntityIds.put(id, entity.getEntityId());
         }
+        return entity;
     }
 
     public void sendPacket(Packet packet) {
@@ -139,7 +147,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     List<UUID> attList = NMSHandler.getInstance().attachments2.get(e.getUniqueID());
                     if (attList != null) {
                         for (UUID att : attList) {
-                            org.bukkit.entity.Entity target = Bukkit.getEntity(att);
+                            org.bukkit.entity.Entity target = getAttachedEntity(att);
                             if (target != null) {
                                 Packet pNew = (Packet) duplo(packet);
                                 ENTITY_ID_PACKENT.setInt(pNew, target.getEntityId());
@@ -170,16 +178,18 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                                         POS_X_PACKTELENT.setDouble(newTeleportPacket, goalPosition.getX());
                                         POS_Y_PACKTELENT.setDouble(newTeleportPacket, goalPosition.getY());
                                         POS_Z_PACKTELENT.setDouble(newTeleportPacket, goalPosition.getZ());
-                                        oldManager.sendPacket(newTeleportPacket);
+                                        writeAttachPacket(newTeleportPacket);
+                                        oldManager.channel.flush();
                                         return;
                                     }
                                     POS_X_PACKENT.setInt(pNew, MathHelper.clamp(offX, Short.MIN_VALUE, Short.MAX_VALUE));
                                     POS_Y_PACKENT.setInt(pNew, MathHelper.clamp(offY, Short.MIN_VALUE, Short.MAX_VALUE));
                                     POS_Z_PACKENT.setInt(pNew, MathHelper.clamp(offZ, Short.MIN_VALUE, Short.MAX_VALUE));
                                 }
-                                oldManager.sendPacket(pNew);
+                                writeAttachPacket(pNew);
                             }
                         }
+                        oldManager.channel.flush();
                     }
                 }
             }
@@ -202,13 +212,14 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     List<UUID> attList = NMSHandler.getInstance().attachments2.get(e.getUniqueID());
                     if (attList != null) {
                         for (UUID att : attList) {
-                            org.bukkit.entity.Entity target = Bukkit.getEntity(att);
+                            org.bukkit.entity.Entity target = getAttachedEntity(att);
                             if (target != null) {
                                 Packet pNew = (Packet) duplo(packet);
                                 ENTITY_ID_PACKVELENT.setInt(pNew, target.getEntityId());
-                                oldManager.sendPacket(pNew);
+                                writeAttachPacket(pNew);
                             }
                         }
+                        oldManager.channel.flush();
                     }
                 }
             }
@@ -231,7 +242,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     List<UUID> attList = NMSHandler.getInstance().attachments2.get(e.getUniqueID());
                     if (attList != null) {
                         for (UUID att : attList) {
-                            org.bukkit.entity.Entity target = Bukkit.getEntity(att);
+                            org.bukkit.entity.Entity target = getAttachedEntity(att);
                             if (target != null) {
                                 Packet pNew = (Packet) duplo(packet);
                                 ENTITY_ID_PACKTELENT.setInt(pNew, target.getEntityId());
@@ -252,9 +263,10 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                                     resultPos.add(goalOffset);
                                 }
                                 NMSHandler.getInstance().visiblePositions.put(target.getUniqueId(), resultPos);
-                                oldManager.sendPacket(pNew);
+                                writeAttachPacket(pNew);
                             }
                         }
+                        oldManager.channel.flush();
                     }
                 }
             }
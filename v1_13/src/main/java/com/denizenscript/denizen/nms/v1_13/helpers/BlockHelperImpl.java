@@ -149,6 +149,23 @@ public class BlockHelperImpl implements BlockHelper {
         return BlockDataImpl.fromCompressedString(compressedString);
     }
 
+    @Override
+    public void setBlocksInSection(org.bukkit.World world, int chunkX, int sectionY, int chunkZ, short[] positions, BlockData[] blocks, int count) {
+        WorldServer nmsWorld = ((CraftWorld) world).getHandle();
+        int baseX = chunkX << 4, baseY = sectionY << 4, baseZ = chunkZ << 4;
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            int x = baseX + (position & 15), y = baseY + ((position >> 8) & 15), z = baseZ + ((position >> 4) & 15);
+            BlockData block = blocks[i];
+            if (block.getCompoundTag() != null) {
+                block.setBlock(world.getBlockAt(x, y, z), false);
+                continue;
+            }
+            // Flag 2: send the change to clients, but don't update neighbors.
+            nmsWorld.setTypeAndData(new BlockPosition(x, y, z), ((CraftBlockData) block.modern().data).getState(), 2);
+        }
+    }
+
     private static net.minecraft.server.v1_13_R2.Block getBlockFrom(Material material) {
         if (material == Material.FLOWER_POT) {
             return Blocks.FLOWER_POT;
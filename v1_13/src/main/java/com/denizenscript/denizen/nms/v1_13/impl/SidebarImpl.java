@@ -1,7 +1,7 @@
 package com.denizenscript.denizen.nms.v1_13.impl;
 
-import com.denizenscript.denizen.nms.abstracts.Sidebar;
 import com.denizenscript.denizen.nms.v1_13.helpers.PacketHelperImpl;
+import com.denizenscript.denizen.nms.abstracts.Sidebar;
 import net.minecraft.server.v1_13_R2.*;
 import org.bukkit.entity.Player;
 
@@ -10,48 +10,61 @@ public class SidebarImpl extends Sidebar {
     private static final Scoreboard dummyScoreboard = new Scoreboard();
     private static final IScoreboardCriteria dummyCriteria = new IScoreboardCriteria("dummy"); // what
 
-    private ScoreboardObjective obj1;
-    private ScoreboardObjective obj2;
+    private ScoreboardObjective obj;
+
+    private final ScoreboardTeam[] teams = new ScoreboardTeam[15];
 
     public SidebarImpl(Player player) {
         super(player);
         IChatBaseComponent chatComponentTitle = new ChatComponentText(title);
-        this.obj1 = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
-        this.obj2 = new ScoreboardObjective(dummyScoreboard, "dummy_2", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
+        this.obj = new ScoreboardObjective(dummyScoreboard, "dummy_1", dummyCriteria, chatComponentTitle, IScoreboardCriteria.EnumScoreboardHealthDisplay.INTEGER);
     }
 
     @Override
     protected void setDisplayName(String title) {
-        if (this.obj1 != null) {
+        if (this.obj != null) {
             IChatBaseComponent chatComponentTitle = new ChatComponentText(title);
-            this.obj1.setDisplayName(chatComponentTitle);
-            this.obj2.setDisplayName(chatComponentTitle);
+            this.obj.setDisplayName(chatComponentTitle);
         }
     }
 
     @Override
-    public void sendUpdate() {
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj1, 0));
-        for (int i = 0; i < this.lines.length; i++) {
-            String line = this.lines[i];
-            if (line == null) {
-                break;
-            }
-            ScoreboardScore score = new ScoreboardScore(dummyScoreboard, this.obj1, line);
-            score.setScore(this.scores[i]);
-            // CraftScoreboardManager setPlayerBoard
-            // new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, scoreboardscore.getObjective().getName(), scoreboardscore.getPlayerName(), scoreboardscore.getScore()));
-            PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, score.getObjective().getName(), score.getPlayerName(), score.getScore()));
-        }
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, this.obj1));
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
-        ScoreboardObjective temp = this.obj2;
-        this.obj2 = this.obj1;
-        this.obj1 = temp;
+    protected boolean useTeamLines() {
+        return true;
+    }
+
+    @Override
+    protected void sendObjective(int mode) {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj, mode));
+    }
+
+    @Override
+    protected void sendDisplay() {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardDisplayObjective(1, this.obj));
     }
 
     @Override
-    public void remove() {
-        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardObjective(this.obj2, 1));
+    protected void sendScore(String entry, int score) {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.CHANGE, this.obj.getName(), entry, score));
+    }
+
+    @Override
+    protected void sendScoreRemoval(String entry) {
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardScore(ScoreboardServer.Action.REMOVE, this.obj.getName(), entry, 0));
+    }
+
+    @Override
+    protected void sendTeam(int line, String entry, String text, int mode) {
+        ScoreboardTeam team = teams[line];
+        if (team == null) {
+            // Not registered to the scoreboard, the team only exists to build packets from
+            team = new ScoreboardTeam(dummyScoreboard, "dummy_line_" + line);
+            team.getPlayerNameSet().add(entry);
+            teams[line] = team;
+        }
+        if (text != null) {
+            team.setPrefix(new ChatComponentText(text));
+        }
+        PacketHelperImpl.sendPacket(player, new PacketPlayOutScoreboardTeam(team, mode));
     }
 }
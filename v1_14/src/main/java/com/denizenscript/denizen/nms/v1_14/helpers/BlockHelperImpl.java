@@ -169,6 +169,29 @@ public class BlockHelperImpl implements BlockHelper {
         return BlockDataImpl.fromCompressedString(compressedString);
     }
 
+    @Override
+    public void setBlocksInSection(org.bukkit.World world, int chunkX, int sectionY, int chunkZ, short[] positions, BlockData[] blocks, int count) {
+        WorldServer nmsWorld = ((CraftWorld) world).getHandle();
+        Chunk chunk = nmsWorld.getChunkAt(chunkX, chunkZ);
+        ChunkProviderServer provider = nmsWorld.getChunkProvider();
+        LightEngineThreaded lightEngine = provider.getLightEngine();
+        int baseX = chunkX << 4, baseY = sectionY << 4, baseZ = chunkZ << 4;
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            int x = baseX + (position & 15), y = baseY + ((position >> 8) & 15), z = baseZ + ((position >> 4) & 15);
+            BlockData block = blocks[i];
+            if (block.getCompoundTag() != null) {
+                block.setBlock(world.getBlockAt(x, y, z), false);
+                continue;
+            }
+            BlockPosition blockPos = new BlockPosition(x, y, z);
+            if (chunk.setType(blockPos, ((CraftBlockData) block.modern().data).getState(), false) != null) {
+                lightEngine.a(blockPos);
+                provider.flagDirty(blockPos);
+            }
+        }
+    }
+
     private static net.minecraft.server.v1_14_R1.Block getBlockFrom(Material material) {
         if (material == Material.FLOWER_POT) {
             return Blocks.FLOWER_POT;
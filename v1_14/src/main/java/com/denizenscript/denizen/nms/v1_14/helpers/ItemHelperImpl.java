@@ -8,6 +8,8 @@ import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.properties.Property;
 import com.denizenscript.denizen.nms.interfaces.ItemHelper;
 import com.denizenscript.denizen.nms.util.PlayerProfile;
+import com.denizenscript.denizen.nms.util.ReflectionHelper;
+import com.denizenscript.denizen.utilities.debugging.Debug;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import net.minecraft.server.v1_14_R1.*;
 import org.bukkit.Bukkit;
@@ -28,10 +30,33 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
+import java.lang.reflect.Field;
 import java.util.*;
 
 public class ItemHelperImpl extends ItemHelper {
 
+    public static final Field CRAFT_ITEM_STACK_HANDLE = ReflectionHelper.getFields(CraftItemStack.class).get("handle");
+
+    /**
+     * Returns the item's NBT compound without copying it, or null if it has none.
+     * Only server-backed (CraftItemStack) items can be read without copying, others are converted first.
+     */
+    public static NBTTagCompound getNMSTag(ItemStack itemStack) {
+        net.minecraft.server.v1_14_R1.ItemStack nmsItemStack = null;
+        if (itemStack instanceof CraftItemStack) {
+            try {
+                nmsItemStack = (net.minecraft.server.v1_14_R1.ItemStack) CRAFT_ITEM_STACK_HANDLE.get(itemStack);
+            }
+            catch (IllegalAccessException ex) {
+                Debug.echoError(ex);
+            }
+        }
+        else {
+            nmsItemStack = CraftItemStack.asNMSCopy(itemStack);
+        }
+        return nmsItemStack == null ? null : nmsItemStack.getTag();
+    }
+
     public static IRecipe<?> getNMSRecipe(NamespacedKey key) {
         MinecraftKey nmsKey = CraftNamespacedKey.toMinecraft(key);
         for (Object2ObjectLinkedOpenHashMap<MinecraftKey, IRecipe<?>> recipeMap : ((CraftServer) Bukkit.getServer()).getServer().getCraftingManager().recipes.values()) {
@@ -219,6 +244,21 @@ public class ItemHelperImpl extends ItemHelper {
         return new CompoundTagImpl(new HashMap<>());
     }
 
+    @Override
+    public String getNbtString(ItemStack itemStack, String key) {
+        NBTTagCompound tag = getNMSTag(itemStack);
+        if (tag == null || !tag.hasKeyOfType(key, 8)) {
+            return null;
+        }
+        String value = tag.getString(key);
+        return value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public Object getNbtIdentity(ItemStack itemStack) {
+        return itemStack instanceof CraftItemStack ? getNMSTag(itemStack) : null;
+    }
+
     @Override
     public ItemStack setNbtData(ItemStack itemStack, CompoundTag compoundTag) {
         net.minecraft.server.v1_14_R1.ItemStack nmsItemStack = CraftItemStack.asNMSCopy(itemStack);
@@ -1,7 +1,6 @@
 package com.denizenscript.denizen.nms.v1_14.impl.network.handlers;
 
 import com.denizenscript.denizen.nms.util.ReflectionHelper;
-import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizen.utilities.debugging.Debug;
 import io.netty.buffer.Unpooled;
@@ -9,6 +8,8 @@ import net.minecraft.server.v1_14_R1.*;
 import org.bukkit.craftbukkit.v1_14_R1.block.data.CraftBlockData;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -18,32 +19,26 @@ public class FakeBlockHelper {
     public static Field DATA_MAPCHUNK = ReflectionHelper.getFields(PacketPlayOutMapChunk.class).get("e");
     public static Field BLOCKENTITIES_MAPCHUNK = ReflectionHelper.getFields(PacketPlayOutMapChunk.class).get("f");
 
+    public static final int MAX_PALETTE_WIDTH = 8;
+
     public static IBlockData getNMSState(FakeBlock block) {
         return ((CraftBlockData) block.material.getModernData().data).getState();
     }
 
-    public static boolean anyBlocksInSection(List<FakeBlock> blocks, int y) {
-        int minY = y << 4;
-        int maxY = (y << 4) + 16;
-        for (FakeBlock block : blocks) {
-            int blockY = block.location.getBlockY();
-            if (blockY >= minY && blockY < maxY) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static int indexInPalette(IBlockData data) {
         return ChunkSection.GLOBAL_PALETTE.a(data);
     }
 
+    public static int globalPaletteWidth() {
+        return MathHelper.d(Block.REGISTRY_ID.a());
+    }
+
     public static int blockArrayIndex(int x, int y, int z) {
         return y * (16 * 16) + z * 16 + x;
     }
 
-    public static int getPaletteSubId(int[] palette, int id) {
-        for (int i = 0; i < palette.length; i++) {
+    public static int getPaletteSubId(int[] palette, int paletteLen, int id) {
+        for (int i = 0; i < paletteLen; i++) {
             if (palette[i] == id) {
                 return i;
             }
@@ -51,7 +46,87 @@ public class FakeBlockHelper {
         return -1;
     }
 
-    public static void handleMapChunkPacket(PacketPlayOutMapChunk packet, List<FakeBlock> blocks) {
+    /**
+     * Skips over one chunk section in the serialized chunk data, without decoding its block array.
+     */
+    public static void skipSection(PacketDataSerializer serial) {
+        serial.readShort();
+        int width = serial.readUnsignedByte();
+        if (width <= MAX_PALETTE_WIDTH) {
+            int paletteLen = serial.i(); // readVarInt
+            for (int p = 0; p < paletteLen; p++) {
+                serial.i();
+            }
+        }
+        int dataLen = serial.i();
+        serial.skipBytes(dataLen * 8);
+    }
+
+    /**
+     * Reads one chunk section, applies the fake blocks within it, and writes it to the output.
+     * If the section palette outgrows the maximum palette width, the section is converted to use the global palette.
+     */
+    public static void rewriteSection(PacketDataSerializer serial, PacketDataSerializer outputSerial, List<FakeBlock> blocks) {
+        int blockCount = serial.readShort();
+        int width = serial.readUnsignedByte();
+        int[] palette = null;
+        int paletteLen = 0;
+        if (width <= MAX_PALETTE_WIDTH) {
+            paletteLen = serial.i(); // readVarInt
+            palette = new int[paletteLen + blocks.size()];
+            for (int p = 0; p < paletteLen; p++) {
+                palette[p] = serial.i();
+            }
+        }
+        int dataLen = serial.i();
+        long[] blockListHelper = new long[dataLen];
+        for (int i = 0; i < blockListHelper.length; i++) {
+            blockListHelper[i] = serial.readLong();
+        }
+        DataBits bits = new DataBits(width, 4096, blockListHelper);
+        for (FakeBlock block : blocks) {
+            int blockIndex = blockArrayIndex(block.location.getBlockX() & 15, block.location.getBlockY() & 15, block.location.getBlockZ() & 15);
+            int globalPaletteIndex = indexInPalette(getNMSState(block));
+            if (palette == null) {
+                bits.a(blockIndex, globalPaletteIndex);
+                continue;
+            }
+            int subPaletteId = getPaletteSubId(palette, paletteLen, globalPaletteIndex);
+            if (subPaletteId == -1) {
+                subPaletteId = paletteLen;
+                palette[paletteLen++] = globalPaletteIndex;
+                int newWidth = Math.max(4, MathHelper.d(paletteLen));
+                if (newWidth > width) {
+                    boolean toGlobal = newWidth > MAX_PALETTE_WIDTH;
+                    if (toGlobal) {
+                        newWidth = globalPaletteWidth();
+                    }
+                    DataBits newBits = new DataBits(newWidth, 4096);
+                    for (int i = 0; i < bits.b(); i++) {
+                        newBits.a(i, toGlobal ? palette[bits.a(i)] : bits.a(i));
+                    }
+                    bits = newBits;
+                    width = newWidth;
+                    if (toGlobal) {
+                        palette = null;
+                        subPaletteId = globalPaletteIndex;
+                    }
+                }
+            }
+            bits.a(blockIndex, subPaletteId);
+        }
+        outputSerial.writeShort(blockCount);
+        outputSerial.writeByte(width);
+        if (palette != null) {
+            outputSerial.d(paletteLen); // writeVarInt
+            for (int p = 0; p < paletteLen; p++) {
+                outputSerial.d(palette[p]);
+            }
+        }
+        outputSerial.a(bits.a()); // writeLongs
+    }
+
+    public static void handleMapChunkPacket(PacketPlayOutMapChunk packet, FakeBlock.ChunkBlocks blocks) {
         try {
             // TODO: properly update HeightMap?
             int bitmask = BITMASK_MAPCHUNK.getInt(packet);
@@ -60,103 +135,42 @@ public class FakeBlockHelper {
             PacketDataSerializer outputSerial = new PacketDataSerializer(Unpooled.buffer(data.length));
             boolean isFull = packet.f();
             List<NBTTagCompound> blockEntities = (List<NBTTagCompound>) BLOCKENTITIES_MAPCHUNK.get(packet);
+            List<FakeBlock> allBlocks = blocks.getAll();
+            HashSet<Long> fakeKeys = new HashSet<>(allBlocks.size() * 2);
+            for (FakeBlock block : allBlocks) {
+                fakeKeys.add(block.key);
+            }
             ListIterator<NBTTagCompound> iterator = blockEntities.listIterator();
             while (iterator.hasNext()) {
                 NBTTagCompound blockEnt = iterator.next();
-                int x = blockEnt.getInt("x");
-                int y = blockEnt.getInt("y");
-                int z = blockEnt.getInt("z");
-                for (FakeBlock block : blocks) {
-                    LocationTag loc = block.location;
-                    if (loc.getBlockX() == x && loc.getBlockY() == y && loc.getBlockZ() == z) {
-                        iterator.remove();
-                        break;
-                    }
+                if (fakeKeys.contains(FakeBlock.blockKey(blockEnt.getInt("x"), blockEnt.getInt("y"), blockEnt.getInt("z")))) {
+                    iterator.remove();
                 }
             }
-            for (FakeBlock block : blocks) {
-                LocationTag loc = block.location;
+            for (FakeBlock block : allBlocks) {
                 NBTTagCompound newCompound = new NBTTagCompound();
-                newCompound.setInt("x", loc.getBlockX());
-                newCompound.setInt("y", loc.getBlockY());
-                newCompound.setInt("z", loc.getBlockZ());
+                newCompound.setInt("x", block.location.getBlockX());
+                newCompound.setInt("y", block.location.getBlockY());
+                newCompound.setInt("z", block.location.getBlockZ());
                 newCompound.setString("id", block.material.getMaterial().getKey().toString());
                 blockEntities.add(newCompound);
             }
             for (int y = 0; y < 16; y++) {
                 if ((bitmask & (1 << y)) != 0) {
-                    int blockCount = serial.readShort();
-                    int width = serial.readUnsignedByte();
-                    int paletteLen = serial.i(); // readVarInt
-                    int[] palette = new int[paletteLen];
-                    for (int p = 0; p < paletteLen; p++) {
-                        palette[p] = serial.i();
-                    }
-                    int dataLen = serial.i();
-                    long[] blockListHelper = new long[dataLen];
-                    for (int i = 0; i < blockListHelper.length; i++) {
-                        blockListHelper[i] = serial.readLong();
-                    }
-                    outputSerial.writeShort(blockCount);
-                    if (!anyBlocksInSection(blocks, y)) {
-                        outputSerial.writeByte(width);
-                        outputSerial.d(paletteLen); // writeVarInt
-                        for (int p = 0; p < paletteLen; p++) {
-                            outputSerial.d(palette[p]);
-                        }
-                        outputSerial.a(blockListHelper); // writeLongs
+                    if (!blocks.hasSection(y)) {
+                        int start = serial.readerIndex();
+                        skipSection(serial);
+                        outputSerial.writeBytes(data, start, serial.readerIndex() - start);
                         continue;
                     }
-                    DataBits bits = new DataBits(width, 4096, blockListHelper);
-                    int minY = y << 4;
-                    int maxY = (y << 4) + 16;
-                    for (FakeBlock block : blocks) {
-                        int blockY = block.location.getBlockY();
-                        if (blockY >= minY && blockY < maxY) {
-                            int blockX = block.location.getBlockX();
-                            int blockZ = block.location.getBlockZ();
-                            blockX -= (blockX >> 4) * 16;
-                            blockY -= (blockY >> 4) * 16;
-                            blockZ -= (blockZ >> 4) * 16;
-                            int blockIndex = blockArrayIndex(blockX, blockY, blockZ);
-                            IBlockData replacementData = getNMSState(block);
-                            int globalPaletteIndex = indexInPalette(replacementData);
-                            int subPaletteId = getPaletteSubId(palette, globalPaletteIndex);
-                            if (subPaletteId == -1) {
-                                int[] newPalette = new int[paletteLen + 1];
-                                for (int p = 0; p < paletteLen; p++) {
-                                    newPalette[p] = palette[p];
-                                }
-                                newPalette[paletteLen] = globalPaletteIndex;
-                                subPaletteId = paletteLen;
-                                paletteLen++;
-                                palette = newPalette;
-                                int newWdith = MathHelper.d(paletteLen);
-                                if (newWdith > width) {
-                                    DataBits newBits = new DataBits(newWdith, 4096);
-                                    for (int i = 0; i < bits.b(); i++) {
-                                        newBits.a(i, bits.a(i));
-                                    }
-                                    bits = newBits;
-                                    width = newWdith;
-                                }
-                            }
-                            bits.a(blockIndex, subPaletteId);
-                        }
-                    }
-                    outputSerial.writeByte(width);
-                    outputSerial.d(paletteLen);
-                    for (int p = 0; p < palette.length; p++) {
-                        outputSerial.d(palette[p]);
-                    }
-                    outputSerial.a(bits.a());
+                    rewriteSection(serial, outputSerial, blocks.sections[y]);
                 }
             }
             if (isFull) {
                 // biomes
                 outputSerial.writeBytes(serial, 256 * 4);
             }
-            byte[] outputBytes = outputSerial.array();
+            byte[] outputBytes = Arrays.copyOf(outputSerial.array(), outputSerial.writerIndex());
             DATA_MAPCHUNK.set(packet, outputBytes);
         }
         catch (Exception ex) {
@@ -11,6 +11,7 @@ import com.denizenscript.denizen.nms.interfaces.CustomEntityHelper;
 import com.denizenscript.denizen.nms.interfaces.FakeArrow;
 import com.denizenscript.denizen.nms.interfaces.FakePlayer;
 import com.denizenscript.denizen.nms.interfaces.ItemProjectile;
+import com.denizenscript.denizen.nms.util.PacketEntityFlags;
 import com.denizenscript.denizen.nms.util.PlayerProfile;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.minecraft.server.v1_15_R1.PlayerInteractManager;
@@ -119,6 +120,7 @@ public class CustomEntityHelperImpl implements CustomEntityHelper {
 
         fakePlayer.setPositionRotation(location.getX(), location.getY(), location.getZ(),
                 location.getYaw(), location.getPitch());
+        PacketEntityFlags.global.add(fakePlayer.getId(), PacketEntityFlags.FAKE_PLAYER);
         CraftFakePlayerImpl craftFakePlayer = fakePlayer.getBukkitEntity();
         craftFakePlayer.fullName = fullName;
         if (prefix != null) {
@@ -3,9 +3,12 @@ package com.denizenscript.denizen.nms.v1_15.helpers;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.util.ReflectionHelper;
 import com.denizenscript.denizen.nms.v1_15.impl.jnbt.CompoundTagImpl;
+import com.denizenscript.denizen.nms.v1_15.impl.network.handlers.DenizenNetworkManagerImpl;
 import com.denizenscript.denizen.nms.interfaces.PacketHelper;
 import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.nms.util.jnbt.JNBTListTag;
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.minecraft.server.v1_15_R1.*;
 import org.bukkit.Bukkit;
 import org.bukkit.DyeColor;
@@ -14,6 +17,7 @@ import org.bukkit.block.banner.Pattern;
 import org.bukkit.craftbukkit.v1_15_R1.CraftEquipmentSlot;
 import org.bukkit.craftbukkit.v1_15_R1.CraftServer;
 import org.bukkit.craftbukkit.v1_15_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_15_R1.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_15_R1.entity.CraftEntity;
 import org.bukkit.craftbukkit.v1_15_R1.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_15_R1.inventory.CraftItemStack;
@@ -244,6 +248,36 @@ public class PacketHelperImpl implements PacketHelper {
         sendPacket(player, new PacketPlayOutCamera(((CraftEntity) entity).getHandle()));
     }
 
+    @Override
+    public void sendMultiBlockChange(Player player, int chunkX, int chunkZ, short[] positions, MaterialTag[] materials, int count) {
+        Chunk chunk = ((CraftWorld) player.getWorld()).getHandle().getChunkIfLoaded(chunkX, chunkZ);
+        if (chunk == null) {
+            return;
+        }
+        PacketPlayOutMultiBlockChange packet = new PacketPlayOutMultiBlockChange();
+        PacketPlayOutMultiBlockChange.MultiBlockChangeInfo[] changes = new PacketPlayOutMultiBlockChange.MultiBlockChangeInfo[count];
+        for (int i = 0; i < count; i++) {
+            short position = positions[i];
+            IBlockData state;
+            if (materials[i] == null) {
+                state = chunk.getType(new BlockPosition((chunkX << 4) + ((position >> 12) & 15), position & 255, (chunkZ << 4) + ((position >> 8) & 15)));
+            }
+            else {
+                state = ((CraftBlockData) materials[i].getModernData().data).getState();
+            }
+            changes[i] = packet.new MultiBlockChangeInfo(position, state);
+        }
+        try {
+            DenizenNetworkManagerImpl.CHUNKCOORD_MULTIBLOCKCHANGE.set(packet, new ChunkCoordIntPair(chunkX, chunkZ));
+            DenizenNetworkManagerImpl.INFOARRAY_MULTIBLOCKCHANGE.set(packet, changes);
+        }
+        catch (IllegalAccessException ex) {
+            Debug.echoError(ex);
+            return;
+        }
+        sendPacket(player, packet);
+    }
+
     public static void sendPacket(Player player, Packet packet) {
         ((CraftPlayer) player).getHandle().playerConnection.sendPacket(packet);
     }
@@ -4,15 +4,16 @@ import com.denizenscript.denizen.nms.v1_15.impl.ProfileEditorImpl;
 import com.denizenscript.denizen.nms.v1_15.impl.network.packets.*;
 import com.denizenscript.denizen.nms.v1_15.impl.blocks.BlockLightImpl;
 import com.denizenscript.denizen.nms.v1_15.impl.entities.EntityFakePlayerImpl;
-import com.denizenscript.denizen.nms.interfaces.packets.PacketOutSpawnEntity;
-import com.denizenscript.denizen.objects.LocationTag;
-import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizen.utilities.packets.DenizenPacketHandler;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.util.IntFlagMap;
+import com.denizenscript.denizen.nms.util.PacketEntityFlags;
+import com.denizenscript.denizen.nms.util.PacketFeatures;
 import com.denizenscript.denizen.nms.util.ReflectionHelper;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import net.minecraft.server.v1_15_R1.*;
@@ -25,8 +26,10 @@ import javax.crypto.SecretKey;
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DenizenNetworkManagerImpl extends NetworkManager {
 
@@ -34,6 +37,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
     public final DenizenPacketListenerImpl packetListener;
     public final EntityPlayer player;
     public final DenizenPacketHandler packetHandler;
+    public final IntFlagMap entityFlags;
 
     public DenizenNetworkManagerImpl(EntityPlayer entityPlayer, NetworkManager oldManager, DenizenPacketHandler packetHandler) {
         super(getProtocolDirection(oldManager));
@@ -43,6 +47,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
         oldManager.setPacketListener(packetListener);
         this.player = this.packetListener.player;
         this.packetHandler = packetHandler;
+        this.entityFlags = PacketEntityFlags.forPlayer(entityPlayer.getUniqueID());
     }
 
     public static void setNetworkManager(Player player, DenizenPacketHandler packetHandler) {
@@ -107,27 +112,128 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
     public static Field BLOCKDATA_BLOCKBREAK = ReflectionHelper.getFields(PacketPlayOutBlockBreak.class).get("d");
 
     public static Object duplo(Object a) {
-        try {
-            Class clazz = a.getClass();
-            Object reter = clazz.newInstance();
-            for (Field f : clazz.getDeclaredFields()) {
-                f.setAccessible(true);
-                f.set(reter, f.get(a));
+        return ReflectionHelper.shallowCopy(a);
+    }
+
+    /**
+     * Finds an attached entity, using its cached entity ID within the player's world where possible
+     * rather than searching every world for the UUID.
+     */
+    public org.bukkit.entity.Entity getAttachedEntity(UUID id) {
+        Integer cachedId = NMSHandler.getInstance().attachmentEntityIds.get(id);
+        if (cachedId != null) {
+            Entity entity = player.getWorld().getEntity(cachedId);
+            if (entity != null && entity.getUniqueID().equals(id)) {
+                return entity.getBukkitEntity();
             }
-            Class subc = clazz;
-            while (subc.getSuperclass() != null) {
-                subc = subc.getSuperclass();
-                for (Field f : subc.getDeclaredFields()) {
-                    f.setAccessible(true);
-                    f.set(reter, f.get(a));
-                }
+        }
+        org.bukkit.entity.Entity entity = Bukkit.getEntity(id);
+        if (entity != null) {
+            NMSHandler.getInstance().attachmentEntityIds.put(id, entity.getEntityId());
+        }
+        return entity;
+    }
+
+    /**
+     * Processes an outgoing packet, and returns true if the packet should not be sent.
+     */
+    @FunctionalInterface
+    public interface PacketInterceptor {
+        boolean process(DenizenNetworkManagerImpl manager, Packet<?> packet);
+    }
+
+    public static class InterceptorRegistration {
+
+        public final Class<?> packetClass;
+
+        public final PacketFeatures.Feature feature;
+
+        public final PacketInterceptor interceptor;
+
+        public InterceptorRegistration(Class<?> packetClass, PacketFeatures.Feature feature, PacketInterceptor interceptor) {
+            this.packetClass = packetClass;
+            this.feature = feature;
+            this.interceptor = interceptor;
+        }
+    }
+
+    /**
+     * The interceptors that apply to each packet class, for one version of the active feature set.
+     */
+    public static class InterceptorTable {
+
+        public final int version;
+
+        public final ConcurrentHashMap<Class<?>, PacketInterceptor[]> byClass = new ConcurrentHashMap<>();
+
+        public InterceptorTable(int version) {
+            this.version = version;
+        }
+    }
+
+    public static final List<InterceptorRegistration> interceptorRegistrations = new ArrayList<>();
+
+    private static volatile InterceptorTable interceptorTable = new InterceptorTable(-1);
+
+    /**
+     * Registers an interceptor for the given packet classes (and their subclasses), in order of processing.
+     * If a feature is given, the interceptor only runs while that feature is active.
+     */
+    public static void registerInterceptor(PacketFeatures.Feature feature, PacketInterceptor interceptor, Class<?>... packetClasses) {
+        for (Class<?> packetClass : packetClasses) {
+            interceptorRegistrations.add(new InterceptorRegistration(packetClass, feature, interceptor));
+        }
+        interceptorTable = new InterceptorTable(-1);
+    }
+
+    static {
+        registerInterceptor(PacketFeatures.Feature.ATTACHMENTS, DenizenNetworkManagerImpl::processAttachToForPacket,
+                PacketPlayOutEntity.class, PacketPlayOutEntityVelocity.class, PacketPlayOutEntityTeleport.class);
+        registerInterceptor(PacketFeatures.Feature.HIDDEN_ENTITIES, DenizenNetworkManagerImpl::processHiddenEntitiesForPacket,
+                PacketPlayOutNamedEntitySpawn.class, PacketPlayOutSpawnEntity.class, PacketPlayOutSpawnEntityLiving.class,
+                PacketPlayOutSpawnEntityPainting.class, PacketPlayOutSpawnEntityExperienceOrb.class,
+                PacketPlayOutEntity.class, PacketPlayOutEntityVelocity.class, PacketPlayOutEntityTeleport.class);
+        registerInterceptor(null, DenizenNetworkManagerImpl::processFakePlayerSpawnForPacket, PacketPlayOutNamedEntitySpawn.class);
+        registerInterceptor(null, DenizenNetworkManagerImpl::processPacketHandlerForPacket, PacketPlayOutChat.class, PacketPlayOutEntityMetadata.class);
+        registerInterceptor(null, DenizenNetworkManagerImpl::processMirrorForPacket, PacketPlayOutPlayerInfo.class);
+        registerInterceptor(PacketFeatures.Feature.FAKE_BLOCKS, (manager, packet) -> {
+            manager.processShowFakeForPacket(packet);
+            return false;
+        }, PacketPlayOutMapChunk.class, PacketPlayOutMultiBlockChange.class, PacketPlayOutBlockChange.class, PacketPlayOutBlockBreak.class);
+        registerInterceptor(PacketFeatures.Feature.BLOCK_LIGHTS, (manager, packet) -> {
+            manager.processBlockLightForPacket(packet);
+            return false;
+        }, PacketPlayOutLightUpdate.class, PacketPlayOutBlockChange.class);
+    }
+
+    private static PacketInterceptor[] buildInterceptors(Class<?> packetClass) {
+        List<PacketInterceptor> result = new ArrayList<>();
+        for (InterceptorRegistration registration : interceptorRegistrations) {
+            if ((registration.feature == null || PacketFeatures.isActive(registration.feature))
+                    && registration.packetClass.isAssignableFrom(packetClass) && !result.contains(registration.interceptor)) {
+                result.add(registration.interceptor);
             }
-            return reter;
         }
-        catch (Exception e) {
-            Debug.echoError(e);
-            return null;
+        return result.toArray(new PacketInterceptor[0]);
+    }
+
+    /**
+     * Returns the interceptors that currently apply to the given packet class.
+     * Results are cached per class, and the cache is replaced whenever the set of active features changes.
+     */
+    public static PacketInterceptor[] getInterceptors(Class<?> packetClass) {
+        InterceptorTable table = interceptorTable;
+        int version = PacketFeatures.version;
+        if (table.version != version) {
+            table = new InterceptorTable(version);
+            interceptorTable = table;
+        }
+        PacketInterceptor[] result = table.byClass.get(packetClass);
+        if (result == null) {
+            result = buildInterceptors(packetClass);
+            table.byClass.put(packetClass, result);
         }
+        return result;
     }
 
     @Override
@@ -140,15 +246,11 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
         if (NMSHandler.debugPackets) {
             Debug.log("Packet: " + packet.getClass().getCanonicalName() + " sent to " + player.getName());
         }
-        if (processAttachToForPacket(packet)
-            || processHiddenEntitiesForPacket(packet)
-            || processPacketHandlerForPacket(packet)
-            || processMirrorForPacket(packet)) {
-            return;
+        for (PacketInterceptor interceptor : getInterceptors(packet.getClass())) {
+            if (interceptor.process(this, packet)) {
+                return;
+            }
         }
-        processMirrorForPacket(packet);
-        processShowFakeForPacket(packet);
-        processBlockLightForPacket(packet);
         oldManager.sendPacket(packet, genericfuturelistener);
     }
 
@@ -157,10 +259,21 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
         return attached != null && !attached.equals(player.getUniqueID());
     }
 
+    /**
+     * Writes a packet re-emitted for an attached entity without flushing it, so that all the packets re-emitted
+     * for one movement packet reach the client in a single flush.
+     */
+    private void writeAttachPacket(Packet<?> packet) {
+        oldManager.channel.write(packet).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+    }
+
     public boolean processAttachToForPacket(Packet<?> packet) {
         try {
             if (packet instanceof PacketPlayOutEntity) {
                 int ider = ENTITY_ID_PACKENT.getInt(packet);
+                if ((PacketEntityFlags.global.get(ider) & (PacketEntityFlags.ATTACHED | PacketEntityFlags.ATTACHED_TO)) == 0) {
+                    return false;
+                }
                 Entity e = player.getWorld().getEntity(ider);
                 if (e == null) {
                     return false;
@@ -168,7 +281,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                 List<UUID> attList = NMSHandler.getInstance().attachments2.get(e.getUniqueID());
                 if (attList != null) {
                     for (UUID att : attList) {
-                        org.bukkit.entity.Entity target = Bukkit.getEntity(att);
+                        org.bukkit.entity.Entity target = getAttachedEntity(att);
                         if (target != null) {
                             Packet pNew = (Packet) duplo(packet);
                             ENTITY_ID_PACKENT.setInt(pNew, target.getEntityId());
@@ -199,25 +312,29 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                                     POS_X_PACKTELENT.setDouble(newTeleportPacket, goalPosition.getX());
                                     POS_Y_PACKTELENT.setDouble(newTeleportPacket, goalPosition.getY());
                                     POS_Z_PACKTELENT.setDouble(newTeleportPacket, goalPosition.getZ());
-                                    oldManager.sendPacket(newTeleportPacket);
+                                    writeAttachPacket(newTeleportPacket);
                                 }
                                 else {
                                     POS_X_PACKENT.setShort(pNew, (short) MathHelper.clamp(offX, Short.MIN_VALUE, Short.MAX_VALUE));
                                     POS_Y_PACKENT.setShort(pNew, (short) MathHelper.clamp(offY, Short.MIN_VALUE, Short.MAX_VALUE));
                                     POS_Z_PACKENT.setShort(pNew, (short) MathHelper.clamp(offZ, Short.MIN_VALUE, Short.MAX_VALUE));
-                                    oldManager.sendPacket(pNew);
+                                    writeAttachPacket(pNew);
                                 }
                             }
                             else {
-                                oldManager.sendPacket(pNew);
+                                writeAttachPacket(pNew);
                             }
                         }
                     }
+                    oldManager.channel.flush();
                 }
                 return shouldSendAttachOriginal(e);
             }
             else if (packet instanceof PacketPlayOutEntityVelocity) {
                 int ider = ENTITY_ID_PACKVELENT.getInt(packet);
+                if ((PacketEntityFlags.global.get(ider) & (PacketEntityFlags.ATTACHED | PacketEntityFlags.ATTACHED_TO)) == 0) {
+                    return false;
+                }
                 Entity e = player.getWorld().getEntity(ider);
                 if (e == null) {
                     return false;
@@ -225,18 +342,22 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                 List<UUID> attList = NMSHandler.getInstance().attachments2.get(e.getUniqueID());
                 if (attList != null) {
                     for (UUID att : attList) {
-                        org.bukkit.entity.Entity target = Bukkit.getEntity(att);
+                        org.bukkit.entity.Entity target = getAttachedEntity(att);
                         if (target != null) {
                             Packet pNew = (Packet) duplo(packet);
                             ENTITY_ID_PACKVELENT.setInt(pNew, target.getEntityId());
-                            oldManager.sendPacket(pNew);
+                            writeAttachPacket(pNew);
                         }
                     }
+                    oldManager.channel.flush();
                 }
                 return shouldSendAttachOriginal(e);
             }
             else if (packet instanceof PacketPlayOutEntityTeleport) {
                 int ider = ENTITY_ID_PACKTELENT.getInt(packet);
+                if ((PacketEntityFlags.global.get(ider) & (PacketEntityFlags.ATTACHED | PacketEntityFlags.ATTACHED_TO)) == 0) {
+                    return false;
+                }
                 Entity e = player.getWorld().getEntity(ider);
                 if (e == null) {
                     return false;
@@ -244,7 +365,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                 List<UUID> attList = NMSHandler.getInstance().attachments2.get(e.getUniqueID());
                 if (attList != null) {
                     for (UUID att : attList) {
-                        org.bukkit.entity.Entity target = Bukkit.getEntity(att);
+                        org.bukkit.entity.Entity target = getAttachedEntity(att);
                         if (target != null) {
                             Packet pNew = (Packet) duplo(packet);
                             ENTITY_ID_PACKTELENT.setInt(pNew, target.getEntityId());
@@ -265,9 +386,10 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                                 resultPos.add(goalOffset);
                             }
                             NMSHandler.getInstance().visiblePositions.put(target.getUniqueId(), resultPos);
-                            oldManager.sendPacket(pNew);
+                            writeAttachPacket(pNew);
                         }
                     }
+                    oldManager.channel.flush();
                 }
                 return shouldSendAttachOriginal(e);
             }
@@ -278,8 +400,13 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
         return false;
     }
 
-    public boolean isHidden(Entity entity) {
-        return entity != null && NMSHandler.getEntityHelper().isHidden(player.getBukkitEntity(), entity.getBukkitEntity().getUniqueId());
+    public boolean isHidden(int entityId) {
+        return PacketEntityFlags.isHidden(PacketEntityFlags.global.get(entityId), entityFlags.get(entityId));
+    }
+
+    public static int getSpawnedEntityId(Packet<?> packet) {
+        Integer entityId = ReflectionHelper.getFieldValue(packet.getClass(), "a", packet);
+        return entityId != null ? entityId : -1;
     }
 
     public boolean processHiddenEntitiesForPacket(Packet<?> packet) {
@@ -289,33 +416,29 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     || packet instanceof PacketPlayOutSpawnEntityLiving
                     || packet instanceof PacketPlayOutSpawnEntityPainting
                     || packet instanceof PacketPlayOutSpawnEntityExperienceOrb) {
-                PacketOutSpawnEntity spawnEntity = new PacketOutSpawnEntityImpl(player, packet);
-                Entity entity = player.getWorld().getEntity(spawnEntity.getEntityId());
-                if (isHidden(entity)) {
-                    return true;
-                }
-                processFakePlayerSpawn(entity);
+                return isHidden(getSpawnedEntityId(packet));
             }
             if (packet instanceof PacketPlayOutEntity) {
-                int ider = ENTITY_ID_PACKENT.getInt(packet);
-                Entity e = player.getWorld().getEntity(ider);
-                if (isHidden(e)) {
-                    return true;
-                }
+                return isHidden(ENTITY_ID_PACKENT.getInt(packet));
             }
             else if (packet instanceof PacketPlayOutEntityVelocity) {
-                int ider = ENTITY_ID_PACKVELENT.getInt(packet);
-                Entity e = player.getWorld().getEntity(ider);
-                if (isHidden(e)) {
-                    return true;
-                }
+                return isHidden(ENTITY_ID_PACKVELENT.getInt(packet));
             }
             else if (packet instanceof PacketPlayOutEntityTeleport) {
-                int ider = ENTITY_ID_PACKTELENT.getInt(packet);
-                Entity e = player.getWorld().getEntity(ider);
-                if (isHidden(e)) {
-                    return true;
-                }
+                return isHidden(ENTITY_ID_PACKTELENT.getInt(packet));
+            }
+        }
+        catch (Exception ex) {
+            Debug.echoError(ex);
+        }
+        return false;
+    }
+
+    public boolean processFakePlayerSpawnForPacket(Packet<?> packet) {
+        try {
+            int entityId = getSpawnedEntityId(packet);
+            if ((PacketEntityFlags.global.get(entityId) & PacketEntityFlags.FAKE_PLAYER) != 0) {
+                processFakePlayerSpawn(player.getWorld().getEntity(entityId));
             }
         }
         catch (Exception ex) {
@@ -363,8 +486,7 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                 }
                 int chunkX = CHUNKX_MAPCHUNK.getInt(packet);
                 int chunkZ = CHUNKZ_MAPCHUNK.getInt(packet);
-                ChunkCoordinate chunkCoord = new ChunkCoordinate(chunkX, chunkZ, player.getWorld().getWorld().getName());
-                List<FakeBlock> blocks = FakeBlock.getFakeBlocksFor(player.getUniqueID(), chunkCoord);
+                FakeBlock.ChunkBlocks blocks = map.getChunk(player.getWorld().getWorld().getName(), chunkX, chunkZ);
                 if (blocks == null) {
                     return;
                 }
@@ -376,21 +498,17 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
                     return;
                 }
                 ChunkCoordIntPair coord = (ChunkCoordIntPair) CHUNKCOORD_MULTIBLOCKCHANGE.get(packet);
-                ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.x, coord.z, player.getWorld().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                String worldName = player.getWorld().getWorld().getName();
+                if (map.getChunk(worldName, coord.x, coord.z) == null) {
                     return;
                 }
-                LocationTag location = new LocationTag(player.getWorld().getWorld(), 0, 0, 0);
                 PacketPlayOutMultiBlockChange.MultiBlockChangeInfo[] changeArr = (PacketPlayOutMultiBlockChange.MultiBlockChangeInfo[]) INFOARRAY_MULTIBLOCKCHANGE.get(packet);
                 for (int i = 0; i < changeArr.length; i++) {
                     short blockInd = changeArr[i].b();
-                    int x = blockInd & 0xF0;
-                    int y = (blockInd & 0x00FF) >> 8;
-                    int z = (blockInd & 0X0F) >> 4;
-                    location.setX((coord.x << 4) + x);
-                    location.setY(y);
-                    location.setZ((coord.z << 4) + z);
-                    FakeBlock block = map.byLocation.get(location);
+                    int x = (blockInd >> 12) & 15;
+                    int y = blockInd & 255;
+                    int z = (blockInd >> 8) & 15;
+                    FakeBlock block = map.get(worldName, (coord.x << 4) + x, y, (coord.z << 4) + z);
                     if (block != null) {
                         changeArr[i] = ((PacketPlayOutMultiBlockChange) packet).new MultiBlockChangeInfo(blockInd, FakeBlockHelper.getNMSState(block));
                     }
@@ -398,16 +516,14 @@ public class DenizenNetworkManagerImpl extends NetworkManager {
             }
             else if (packet instanceof PacketPlayOutBlockChange) {
                 BlockPosition pos = (BlockPosition) BLOCKPOS_BLOCKCHANGE.get(packet);
-                LocationTag loc = new LocationTag(player.getWorld().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUniqueID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUniqueID(), player.getWorld().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     ((PacketPlayOutBlockChange) packet).block = FakeBlockHelper.getNMSState(block);
                 }
             }
             else if (packet instanceof PacketPlayOutBlockBreak) {
                 BlockPosition pos = (BlockPosition) BLOCKPOS_BLOCKBREAK.get(packet);
-                LocationTag loc = new LocationTag(player.getWorld().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUniqueID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUniqueID(), player.getWorld().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     BLOCKDATA_BLOCKBREAK.set(packet, FakeBlockHelper.getNMSState(block));
                 }